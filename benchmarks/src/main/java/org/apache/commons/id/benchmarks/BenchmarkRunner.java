@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs the benchmarks with 1, 2, 4, ... up to N threads, together with the
+ * GC profiler reporting the allocation rate, and writes the results of each
+ * thread count to <code>jmh-result-&lt;threads&gt;.csv</code>.</p>
+ * <p>Usage: <code>BenchmarkRunner [maxThreads [includeRegexp]]</code>. The
+ * maximum defaults to the number of available processors and all benchmarks
+ * are included by default.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * <p>Private constructor, use main.</p>
+     */
+    private BenchmarkRunner() {
+        super();
+    }
+
+    /**
+     * <p>Runs the benchmarks for each thread count.</p>
+     *
+     * @param args the optional maximum number of threads and benchmark regexp.
+     * @throws RunnerException if a benchmark fails.
+     */
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0
+            ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        String include = args.length > 1 ? args[1] : BenchmarkRunner.class.getPackage().getName();
+        int threads = 1;
+        while (true) {
+            Options options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .result("jmh-result-" + threads + ".csv")
+                .resultFormat(org.openjdk.jmh.results.format.ResultFormatType.CSV)
+                .build();
+            new Runner(options).run();
+            if (threads == maxThreads) {
+                break;
+            }
+            threads = Math.min(threads * 2, maxThreads);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.id.DecoderException;
+import org.apache.commons.id.DigestUtils;
+import org.apache.commons.id.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Throughput of the hexadecimal and digest utilities on UUID sized input.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private byte[] bytes;
+
+    private char[] hex;
+
+    private byte[] name;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[] {
+            (byte) 0xf8, 0x1d, 0x4f, (byte) 0xae, 0x7d, (byte) 0xec, 0x11, (byte) 0xd0,
+            (byte) 0xa7, 0x65, 0x00, (byte) 0xa0, (byte) 0xc9, 0x1e, 0x6b, (byte) 0xf6};
+        hex = Hex.encodeHex(bytes);
+        name = "http://commons.apache.org/sandbox/id/".getBytes();
+    }
+
+    @Benchmark
+    public char[] encodeHex() {
+        return Hex.encodeHex(bytes);
+    }
+
+    @Benchmark
+    public byte[] decodeHex() throws DecoderException {
+        return Hex.decodeHex(hex);
+    }
+
+    @Benchmark
+    public byte[] md5() {
+        return DigestUtils.md5(name);
+    }
+
+    @Benchmark
+    public byte[] sha() {
+        return DigestUtils.sha(name);
+    }
+}
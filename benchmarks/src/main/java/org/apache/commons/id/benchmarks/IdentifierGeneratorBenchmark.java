@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.id.CompositeIdentifierGenerator;
+import org.apache.commons.id.StringIdentifierGenerator;
+import org.apache.commons.id.random.SessionIdGenerator;
+import org.apache.commons.id.serial.AlphanumericGenerator;
+import org.apache.commons.id.serial.LongGenerator;
+import org.apache.commons.id.serial.NumericGenerator;
+import org.apache.commons.id.serial.PrefixedAlphanumericGenerator;
+import org.apache.commons.id.serial.PrefixedLeftPaddedNumericGenerator;
+import org.apache.commons.id.serial.PrefixedNumericGenerator;
+import org.apache.commons.id.serial.TimeBasedAlphanumericIdentifierGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Throughput of the serial, random and composite identifier generators.
+ * All generators are shared by the benchmark threads, so multi-threaded runs
+ * measure their contention.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdentifierGeneratorBenchmark {
+
+    private LongGenerator longGenerator;
+
+    private NumericGenerator numeric;
+
+    private AlphanumericGenerator alphanumeric;
+
+    private PrefixedNumericGenerator prefixedNumeric;
+
+    private PrefixedAlphanumericGenerator prefixedAlphanumeric;
+
+    private PrefixedLeftPaddedNumericGenerator prefixedLeftPaddedNumeric;
+
+    private TimeBasedAlphanumericIdentifierGenerator timeBased;
+
+    private SessionIdGenerator sessionId;
+
+    private StringIdentifierGenerator composite;
+
+    /**
+     * <p>Creates wrapping generators, so that no benchmark runs out of identifiers.</p>
+     */
+    @Setup
+    public void setUp() {
+        longGenerator = new LongGenerator(true, 0);
+        numeric = new NumericGenerator(true, 0);
+        alphanumeric = new AlphanumericGenerator(true);
+        prefixedNumeric = new PrefixedNumericGenerator("id-", true, 0);
+        prefixedAlphanumeric = new PrefixedAlphanumericGenerator("id-", true, 15);
+        prefixedLeftPaddedNumeric = new PrefixedLeftPaddedNumericGenerator("id-", true, 15);
+        // a wide postfix, so the benchmark does not exhaust a millisecond
+        timeBased = new TimeBasedAlphanumericIdentifierGenerator(6);
+        sessionId = new SessionIdGenerator();
+        composite = CompositeIdentifierGenerator.getInstance(new StringIdentifierGenerator[] {
+            new PrefixedNumericGenerator("node-", true, 0), new AlphanumericGenerator(true)});
+    }
+
+    @Benchmark
+    public Long longGenerator() {
+        return longGenerator.nextLongIdentifier();
+    }
+
+    @Benchmark
+    public String numeric() {
+        return numeric.nextStringIdentifier();
+    }
+
+    @Benchmark
+    public String alphanumeric() {
+        return alphanumeric.nextStringIdentifier();
+    }
+
+    @Benchmark
+    public String prefixedNumeric() {
+        return prefixedNumeric.nextStringIdentifier();
+    }
+
+    @Benchmark
+    public String prefixedAlphanumeric() {
+        return prefixedAlphanumeric.nextStringIdentifier();
+    }
+
+    @Benchmark
+    public String prefixedLeftPaddedNumeric() {
+        return prefixedLeftPaddedNumeric.nextStringIdentifier();
+    }
+
+    @Benchmark
+    public String timeBasedAlphanumeric() {
+        return timeBased.nextStringIdentifier();
+    }
+
+    @Benchmark
+    public String sessionId() {
+        return sessionId.nextStringIdentifier();
+    }
+
+    @Benchmark
+    public String composite() {
+        return composite.nextStringIdentifier();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.id.uuid.NodeManagerImpl;
+import org.apache.commons.id.uuid.UUID;
+import org.apache.commons.id.uuid.VersionOneGenerator;
+import org.apache.commons.id.uuid.clock.Clock;
+import org.apache.commons.id.uuid.clock.SystemClockImpl;
+import org.apache.commons.id.uuid.state.ReadOnlyResourceStateImpl;
+import org.apache.commons.id.uuid.state.StateHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Cold start cost of the version one generator: the time to the first UUID
+ * in a new JVM, including class loading and locating the implementations.
+ * Each fork measures a single call.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    /**
+     * <p>Points the version one generator at the node configuration of the benchmarks.</p>
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty(ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY, "uuid-benchmark.state");
+    }
+
+    /**
+     * <p>The first UUID of the singleton, which locates its implementations.</p>
+     *
+     * @return the first UUID.
+     */
+    @Benchmark
+    public UUID firstTimeUUID() {
+        return UUID.timeUUID();
+    }
+
+    /**
+     * <p>The first UUID of a generator configured explicitly.</p>
+     *
+     * @return the first UUID.
+     */
+    @Benchmark
+    public UUID firstConfiguredUUID() {
+        StateHelper.setImplementation(Clock.class, SystemClockImpl.class);
+        return VersionOneGenerator.newInstance(new NodeManagerImpl(new ReadOnlyResourceStateImpl())).nextUUID();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.id.uuid.UUID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Throughput of formatting, parsing and binary encoding of UUID's. Each
+ * benchmark thread owns its buffers.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UUIDCodecBenchmark {
+
+    private UUID uuid;
+
+    private String string;
+
+    private String urn;
+
+    private char[] chars;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        string = "f81d4fae-7dec-11d0-a765-00a0c91e6bf6";
+        urn = "urn:uuid:" + string;
+        uuid = new UUID(string);
+        chars = new char[UUID.UUID_FORMATTED_LENGTH];
+        bytes = uuid.getRawBytes();
+    }
+
+    @Benchmark
+    public String toStringFormat() {
+        return uuid.toString();
+    }
+
+    @Benchmark
+    public String toUrn() {
+        return uuid.toUrn();
+    }
+
+    @Benchmark
+    public char[] formatToChars() {
+        uuid.formatTo(chars, 0);
+        return chars;
+    }
+
+    @Benchmark
+    public UUID fromString() {
+        return UUID.fromString(string);
+    }
+
+    @Benchmark
+    public UUID fromUrn() {
+        return UUID.fromString(urn);
+    }
+
+    @Benchmark
+    public byte[] getRawBytes() {
+        return uuid.getRawBytes();
+    }
+
+    @Benchmark
+    public byte[] writeToBytes() {
+        uuid.writeTo(bytes, 0);
+        return bytes;
+    }
+
+    @Benchmark
+    public UUID readFromBytes() {
+        return UUID.readFrom(bytes, 0);
+    }
+}
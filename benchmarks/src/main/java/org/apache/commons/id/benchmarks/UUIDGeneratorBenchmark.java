@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.id.uuid.UUID;
+import org.apache.commons.id.uuid.VersionFourGenerator;
+import org.apache.commons.id.uuid.VersionOneGenerator;
+import org.apache.commons.id.uuid.VersionSevenGenerator;
+import org.apache.commons.id.uuid.VersionSixGenerator;
+import org.apache.commons.id.uuid.state.ReadOnlyResourceStateImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Throughput of the UUID generators, including name based UUID's.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UUIDGeneratorBenchmark {
+
+    /** The name to derive name based UUID's from */
+    private static final String NAME = "http://commons.apache.org/sandbox/id/";
+
+    /** The version one generator */
+    private VersionOneGenerator versionOne;
+
+    /** The version four generator */
+    private VersionFourGenerator versionFour;
+
+    /** The version six generator */
+    private VersionSixGenerator versionSix;
+
+    /** The version seven generator */
+    private VersionSevenGenerator versionSeven;
+
+    /** The namespace of name based UUID's */
+    private UUID namespace;
+
+    /**
+     * <p>Points the version one generator at the node configuration of the benchmarks.</p>
+     */
+    @Setup
+    public void setUp() {
+        System.setProperty(ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY, "uuid-benchmark.state");
+        versionOne = VersionOneGenerator.getInstance();
+        versionFour = VersionFourGenerator.getInstance();
+        versionSix = VersionSixGenerator.getInstance();
+        versionSeven = VersionSevenGenerator.getInstance();
+        namespace = new UUID("6ba7b810-9dad-11d1-80b4-00c04fd430c8");
+    }
+
+    @Benchmark
+    public UUID versionOne() {
+        return versionOne.nextUUID();
+    }
+
+    @Benchmark
+    public UUID versionFour() {
+        return versionFour.nextUUID();
+    }
+
+    @Benchmark
+    public Object versionFourSecure() {
+        return versionFour.nextIdentifier(true);
+    }
+
+    @Benchmark
+    public UUID versionSix() {
+        return versionSix.nextUUID();
+    }
+
+    @Benchmark
+    public UUID versionSeven() {
+        return versionSeven.nextUUID();
+    }
+
+    @Benchmark
+    public UUID nameMD5() {
+        return UUID.nameUUIDFromString(NAME, namespace, UUID.MD5_ENCODING);
+    }
+
+    @Benchmark
+    public UUID nameSHA1() {
+        return UUID.nameUUIDFromString(NAME, namespace, UUID.SHA1_ENCODING);
+    }
+}
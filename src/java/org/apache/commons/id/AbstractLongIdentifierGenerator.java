@@ -62,4 +62,26 @@ public abstract class AbstractLongIdentifierGenerator implements LongIdentifierG
     }
 
     public abstract Long nextLongIdentifier();
+
+    /**
+     * Gets the next identifiers in the sequence.
+     *
+     * <p>The default implementation calls {@link #nextLongIdentifier()} for
+     * each identifier. Implementations that can reserve a range of identifiers
+     * at once should override this method.</p>
+     *
+     * @param count the number of identifiers to get
+     * @return an array of the next <code>count</code> identifiers in sequence
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public long[] nextLongIdentifiers(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count must not be negative");
+        }
+        long[] identifiers = new long[count];
+        for (int i = 0; i < count; i++) {
+            identifiers[i] = nextLongIdentifier().longValue();
+        }
+        return identifiers;
+    }
 }
@@ -67,6 +67,28 @@ public abstract class AbstractStringIdentifierGenerator implements StringIdentif
 
     public abstract String nextStringIdentifier();
 
+    /**
+     * Gets the next identifiers in the sequence.
+     *
+     * <p>The default implementation calls {@link #nextStringIdentifier()} for
+     * each identifier. Implementations that can reserve a range of identifiers
+     * at once should override this method.</p>
+     *
+     * @param count the number of identifiers to get
+     * @return an array of the next <code>count</code> identifiers in sequence
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public String[] nextStringIdentifiers(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count must not be negative");
+        }
+        String[] identifiers = new String[count];
+        for (int i = 0; i < count; i++) {
+            identifiers[i] = nextStringIdentifier();
+        }
+        return identifiers;
+    }
+
     /**
      * Returns the maximum length (number or characters) for an identifier
      * from this sequence.
@@ -25,10 +25,42 @@ import java.security.NoSuchAlgorithmException;
  * Operations to simplifiy common {@link java.security.MessageDigest} tasks.  This
  * class is thread safe.
  *
+ * <p>The MD5 and SHA digests used by this class are confined to the calling
+ * thread and reused, rather than looked up from the security providers for
+ * every call.</p>
+ *
  * @author Apache Software Foundation
  */
 public class DigestUtils {
 
+    /** The MD5 digest of each thread. */
+    private static final ThreadLocal MD5_DIGESTS = new DigestThreadLocal("MD5");
+
+    /** The SHA digest of each thread. */
+    private static final ThreadLocal SHA_DIGESTS = new DigestThreadLocal("SHA");
+
+    /**
+     * Holds a digest of one algorithm for each thread.
+     */
+    private static final class DigestThreadLocal extends ThreadLocal {
+        /** The MessageDigest algorithm name. */
+        private final String algorithm;
+
+        /**
+         * Constructor.
+         *
+         * @param algorithm The MessageDigest algorithm name.
+         */
+        DigestThreadLocal(String algorithm) {
+            super();
+            this.algorithm = algorithm;
+        }
+
+        protected Object initialValue() {
+            return getDigest(algorithm);
+        }
+    }
+
     /**
      * Returns a MessageDigest for the given <code>algorithm</code>.
      *
@@ -44,6 +76,62 @@ public class DigestUtils {
         }
     }
 
+    /**
+     * Returns a reset MessageDigest for the given <code>algorithm</code> which is
+     * confined to the calling thread. MD5 and SHA (SHA-1) digests are reused by
+     * later calls from the same thread, so the digest must not be handed to
+     * other threads nor kept across calls to this class.
+     *
+     * @param algorithm The MessageDigest algorithm name.
+     * @return A digest instance for use by the calling thread.
+     * @throws RuntimeException when a {@link java.security.NoSuchAlgorithmException} is caught,
+     */
+    public static MessageDigest getThreadDigest(String algorithm) {
+        MessageDigest digest;
+        if ("MD5".equals(algorithm)) {
+            digest = (MessageDigest) MD5_DIGESTS.get();
+        } else if ("SHA".equals(algorithm) || "SHA-1".equals(algorithm) || "SHA1".equals(algorithm)) {
+            digest = (MessageDigest) SHA_DIGESTS.get();
+        } else {
+            return getDigest(algorithm);
+        }
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Returns a new MessageDigest for the given <code>algorithm</code> which has
+     * already been updated with <code>prefix</code>. Copies of the prepared digest
+     * made with {@link #copy(MessageDigest)} digest data following the prefix
+     * without hashing the prefix again.
+     *
+     * @param algorithm The MessageDigest algorithm name.
+     * @param prefix The data every digest starts with.
+     * @return A digest instance updated with the prefix.
+     * @throws RuntimeException when a {@link java.security.NoSuchAlgorithmException} is caught,
+     */
+    public static MessageDigest prepare(String algorithm, byte[] prefix) {
+        MessageDigest digest = getDigest(algorithm);
+        digest.update(prefix);
+        return digest;
+    }
+
+    /**
+     * Returns a copy of a MessageDigest in its current state, typically one
+     * returned by {@link #prepare(String, byte[])}.
+     *
+     * @param digest The digest to copy.
+     * @return An independent digest instance in the same state.
+     * @throws RuntimeException when the digest implementation cannot be cloned.
+     */
+    public static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(digest.getAlgorithm() + " digest cannot be copied");
+        }
+    }
+
     /**
      * Returns an MD5 MessageDigest.
      *
@@ -51,7 +139,7 @@ public class DigestUtils {
      * @throws RuntimeException when a {@link java.security.NoSuchAlgorithmException} is caught,
      */
     private static MessageDigest getMd5Digest() {
-        return getDigest("MD5");
+        return getThreadDigest("MD5");
     }
 
     /**
@@ -61,7 +149,7 @@ public class DigestUtils {
      * @throws RuntimeException when a {@link java.security.NoSuchAlgorithmException} is caught,
      */
     private static MessageDigest getShaDigest() {
-        return getDigest("SHA");
+        return getThreadDigest("SHA");
     }
 
     /**
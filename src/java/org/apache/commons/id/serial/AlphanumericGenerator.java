@@ -154,6 +154,36 @@ public class AlphanumericGenerator extends AbstractStringIdentifierGenerator imp
     }
 
     public synchronized String nextStringIdentifier() {
+        increment();
+        return new String(count);
+    }
+
+    /**
+     * Gets the next identifiers in the sequence, holding the lock of this
+     * generator once for all of them.
+     *
+     * @param count the number of identifiers to get
+     * @return an array of the next <code>count</code> identifiers in sequence
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public String[] nextStringIdentifiers(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count must not be negative");
+        }
+        String[] identifiers = new String[count];
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                increment();
+                identifiers[i] = new String(this.count);
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Increments the counter to the next identifier in the sequence.
+     */
+    private void increment() {
         for (int i = count.length - 1; i >= 0; i--) {
             switch (count[i]) {
                 case Z_CHAR:  // z
@@ -175,6 +205,5 @@ public class AlphanumericGenerator extends AbstractStringIdentifierGenerator imp
                     break;
             }
         }
-        return new String(count);
     }
 }
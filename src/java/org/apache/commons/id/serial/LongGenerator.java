@@ -95,4 +95,35 @@ public class LongGenerator extends AbstractLongIdentifierGenerator implements Se
         }
         return new Long(value);
     }
+
+    /**
+     * Gets the next identifiers in the sequence, reserving them all at once.
+     *
+     * <p>If the sequence does not wrap and fewer than <code>count</code>
+     * identifiers are left, an {@link IllegalStateException} is thrown and
+     * no identifier is used up.</p>
+     *
+     * @param count the number of identifiers to get
+     * @return an array of the next <code>count</code> identifiers in sequence
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public long[] nextLongIdentifiers(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count must not be negative");
+        }
+        long first = 0;
+        synchronized (this) {
+            if (!wrapping && this.count > Long.MAX_VALUE - count) {
+                throw new IllegalStateException
+                ("The maximum number of identifiers has been reached");
+            }
+            first = this.count;
+            this.count += count;
+        }
+        long[] identifiers = new long[count];
+        for (int i = 0; i < count; i++) {
+            identifiers[i] = first + i;
+        }
+        return identifiers;
+    }
 }
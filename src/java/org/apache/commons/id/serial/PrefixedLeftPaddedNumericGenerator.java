@@ -129,7 +129,41 @@ public class PrefixedLeftPaddedNumericGenerator extends AbstractStringIdentifier
         this.wrap = wrap;
     }
 
-    public String nextStringIdentifier() {
+    public synchronized String nextStringIdentifier() {
+        increment();
+        StringBuffer sb = new StringBuffer(prefix);
+        sb.append(count);
+        return sb.toString();
+    }
+
+    /**
+     * Gets the next identifiers in the sequence, holding the lock of this
+     * generator once for all of them.
+     *
+     * @param count the number of identifiers to get
+     * @return an array of the next <code>count</code> identifiers in sequence
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public String[] nextStringIdentifiers(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count must not be negative");
+        }
+        String[] identifiers = new String[count];
+        synchronized (this) {
+            for (int i = 0; i < count; i++) {
+                increment();
+                StringBuffer sb = new StringBuffer(prefix);
+                sb.append(this.count);
+                identifiers[i] = sb.toString();
+            }
+        }
+        return identifiers;
+    }
+
+    /**
+     * Increments the counter to the next identifier in the sequence.
+     */
+    private void increment() {
         for (int i = count.length - 1; i >= 0; i--) {
             switch (count[i]) {
                 case NINE_CHAR:  // 9
@@ -146,9 +180,5 @@ public class PrefixedLeftPaddedNumericGenerator extends AbstractStringIdentifier
                     break;
             }
         }
-
-        StringBuffer sb = new StringBuffer(prefix);
-        sb.append(count);
-        return sb.toString();
     }
 }
@@ -75,4 +75,21 @@ public class PrefixedNumericGenerator extends NumericGenerator {
         sb.append(super.nextStringIdentifier());
         return sb.toString();
     }
+
+    /**
+     * Gets the next identifiers in the sequence, reserving them all at once.
+     *
+     * @param count the number of identifiers to get
+     * @return an array of the next <code>count</code> identifiers in sequence
+     * @throws IllegalArgumentException if the count is negative
+     */
+    public String[] nextStringIdentifiers(int count) {
+        String[] identifiers = super.nextStringIdentifiers(count);
+        for (int i = 0; i < identifiers.length; i++) {
+            StringBuffer sb = new StringBuffer(prefix);
+            sb.append(identifiers[i]);
+            identifiers[i] = sb.toString();
+        }
+        return identifiers;
+    }
 }
@@ -83,6 +83,38 @@ public final class Bytes {
         return b;
     }
 
+    /**
+     * Writes a long into 8 bytes of the array starting at <code>offset</code>.
+     * No check is performed on the array length.
+     *
+     * @param n The number to convert.
+     * @param b The array to fill.
+     * @param offset The index of the first byte to write.
+     * @return A byte[].
+     */
+    public static byte[] toBytes(long n, byte[] b, int offset) {
+        for (int i = offset + 7; i >= offset; i--) {
+            b[i] = (byte) (n);
+            n >>>= 8;
+        }
+        return b;
+    }
+
+    /**
+     * Build a long from 8 bytes of the array starting at <code>offset</code>.
+     *
+     * @param b The byte[] to convert.
+     * @param offset The index of the first byte to read.
+     * @return A long.
+     */
+    public static long toLong(byte[] b, int offset) {
+        long n = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            n = (n << 8) | (b[i] & 0xFF);
+        }
+        return n;
+    }
+
     /**
      * Build a long from first 8 bytes of the array.
      *
@@ -62,6 +62,18 @@ public interface Constants {
     String URN_PREFIX = "urn:uuid:";
 
 
+    //** Binary layout constants
+    /** Binary layout of the 16 bytes in network (big endian) order as specified by RFC 4122 */
+    int LAYOUT_BIG_ENDIAN = 0;
+
+    /** Binary layout of the 16 bytes in reverse (little endian) order */
+    int LAYOUT_LITTLE_ENDIAN = 1;
+
+    /** Binary layout of Microsoft GUIDs: time_low, time_mid and time_hi_and_version
+     *  in little endian order, the remaining 8 bytes in network order */
+    int LAYOUT_MIXED_ENDIAN = 2;
+
+
     //** UUID Variant Constants
     /** UUID variant bits described in the IETF Draft MSB order,
      *  this is the "Reserved, NCS backward compatibility field" 0 x x with unknown bits as 0*/
@@ -96,6 +108,12 @@ public interface Constants {
     /** Version five constant for UUID version five - identical to version 3 */
     int VERSION_FIVE = 3;
 
+    /** Version six constant for UUID version six - the time-based version with the timestamp reordered to sort first */
+    int VERSION_SIX = 6;
+
+    /** Version seven constant for UUID version seven - Unix epoch milliseconds followed by random bits */
+    int VERSION_SEVEN = 7;
+
     /** Constants that correspond to the encoding being used, a la 
      * http://www.ietf.org/internet-drafts/draft-mealling-uuid-urn-04.txt.
      * Current legal values are "MD5" and "SHA1"
@@ -104,8 +122,8 @@ public interface Constants {
     String SHA1_ENCODING = "SHA1";
 
     //** Exception message constants
-    /** Message indicating this is not a version one UUID */
-    String WRONG_VAR_VER_MSG = "Not a ietf variant 2 or version 1 (time-based UUID)";
+    /** Message indicating this is not a version one or version six UUID */
+    String WRONG_VAR_VER_MSG = "Not a ietf variant 2 or version 1 or 6 (time-based UUID)";
 
     // ** Array positions and lengths of UUID fields ** //
     /** Byte length of time low field */
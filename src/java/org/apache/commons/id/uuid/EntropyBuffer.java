@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid;
+
+import java.util.Random;
+
+/**
+ * <p>A block of random bytes owned by a single thread, refilled from a
+ * <code>SecureRandom</code> with one call per block rather than one call per
+ * UUID. The <code>SecureRandom</code> is replaced by a freshly seeded instance
+ * after a configurable number of bytes has been drawn from it.</p>
+ * <p>Instances are not thread safe.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ *
+ */
+final class EntropyBuffer {
+
+    /** The random bytes, consumed from the start */
+    private final byte[] block;
+
+    /** The number of bytes drawn from a SecureRandom before it is replaced, 0 for never */
+    private final long reseedInterval;
+
+    /** The index of the next unused byte in the block */
+    private int position;
+
+    /** The number of bytes drawn from the current SecureRandom */
+    private long drawn;
+
+    /** The random generator filling the block */
+    private Random random;
+
+    /**
+     * <p>Constructs a new, empty EntropyBuffer.</p>
+     *
+     * @param blockSize the number of bytes drawn at once, a positive multiple of 8.
+     * @param reseedInterval the number of bytes drawn from a SecureRandom before it is replaced, 0 for never.
+     */
+    EntropyBuffer(int blockSize, long reseedInterval) {
+        super();
+        this.block = new byte[blockSize];
+        this.reseedInterval = reseedInterval;
+        this.position = blockSize;
+    }
+
+    /**
+     * <p>Returns the next 8 random bytes of the block, refilling it when used up.</p>
+     *
+     * @return the next 8 random bytes of the block.
+     */
+    long nextLong() {
+        if (position == block.length) {
+            refill();
+        }
+        long value = Bytes.toLong(block, position);
+        position += 8;
+        return value;
+    }
+
+    /**
+     * <p>Refills the block, first replacing the random generator if it is due for reseeding.</p>
+     */
+    private void refill() {
+        if (random == null || (reseedInterval > 0 && drawn >= reseedInterval)) {
+            random = VersionFourGenerator.newSecureRandom();
+            if (random == null) {
+                //Fail back to default PRNG/Random
+                random = new Random();
+            }
+            drawn = 0;
+        }
+        random.nextBytes(block);
+        drawn += block.length;
+        position = 0;
+    }
+}
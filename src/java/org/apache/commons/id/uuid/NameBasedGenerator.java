@@ -0,0 +1,797 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.id.DigestUtils;
+
+/**
+ * <p>Class is responsible for deriving name-based UUID's within one namespace.
+ * The namespace, digest algorithm and charset are fixed when the generator is
+ * constructed, so deriving a UUID only digests the namespace and name bytes.</p>
+ * <p>Names are encoded in chunks into a buffer of the calling thread rather than
+ * into a new array, and UTF-8 names are encoded without a <code>CharsetEncoder</code>.
+ * Apart from the returned UUID, deriving a UUID allocates no memory. The UUID's are
+ * stamped as RFC 4122 specifies, version 3 for MD5 and version 5 for SHA-1. MD5
+ * UUID's are the same as those returned by
+ * {@link UUID#nameUUIDFromString(String, UUID, String)} when the platform default
+ * charset is the generator's charset; SHA-1 ones differ in their version, which
+ * <code>nameUUIDFromString</code> sets to 3 for both encodings.</p>
+ * <p>The bulk methods derive the UUID's of many names in parallel on a
+ * <code>ForkJoinPool</code>, by default one with a thread per processor, and return
+ * them in the order of the names.</p>
+ * <p>Instances are thread safe.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ *
+ */
+public final class NameBasedGenerator implements Constants {
+
+    /** The default charset of names, UTF-8. */
+    public static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    /** Size of the buffer names are encoded into before they are digested. */
+    private static final int CHUNK_SIZE = 1024;
+
+    /** Number of names a fork-join task derives without splitting. */
+    private static final int TASK_SIZE = 1024;
+
+    /** Number of names read ahead from an iterator. */
+    private static final int BATCH_SIZE = 16 * 1024;
+
+    /** Initial size of the buffer lines are read into from a channel. */
+    private static final int LINE_BUFFER_SIZE = 1024 * 1024;
+
+    /** The pool deriving bulk UUID's, created when first needed unless set. */
+    private static ForkJoinPool pool;
+
+    /** The RFC 4122 version of name-based UUID's digested with SHA-1. */
+    private static final int SHA1_VERSION = 5;
+
+    /** The replacement of characters the UTF-8 encoding cannot encode, '?' like <code>String.getBytes</code>. */
+    private static final byte REPLACEMENT = (byte) '?';
+
+    /** The buffers of each thread. */
+    private static final ThreadLocal SCRATCH = new ThreadLocal() {
+        protected Object initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /** The namespace of the derived UUID's. */
+    private final UUID namespace;
+
+    /** The bytes of the namespace UUID. */
+    private final byte[] namespaceBytes;
+
+    /** The MD5_ENCODING or SHA1_ENCODING encoding. */
+    private final String encoding;
+
+    /** The MessageDigest algorithm name of the encoding. */
+    private final String algorithm;
+
+    /** The version of the UUID's, 3 for MD5 or 5 for SHA-1. */
+    private final int version;
+
+    /** The charset of names. */
+    private final Charset charset;
+
+    /** The encoders of each thread, when the charset is not UTF-8. */
+    private final ThreadLocal encoders;
+
+    /**
+     * <p>Constructs a generator of name-based UUID's encoding names as UTF-8.</p>
+     *
+     * @param namespace the namespace UUID.
+     * @param encoding the <code>UUID.MD5_ENCODING</code> or <code>UUID.SHA1_ENCODING</code> encoding.
+     * @throws IllegalArgumentException if the namespace is null or the encoding is not supported.
+     */
+    public NameBasedGenerator(UUID namespace, String encoding) {
+        this(namespace, encoding, DEFAULT_CHARSET);
+    }
+
+    /**
+     * <p>Constructs a generator of name-based UUID's.</p>
+     *
+     * @param namespace the namespace UUID.
+     * @param encoding the <code>UUID.MD5_ENCODING</code> or <code>UUID.SHA1_ENCODING</code> encoding.
+     * @param charset the charset names are encoded with.
+     * @throws IllegalArgumentException if an argument is null or the encoding is not supported.
+     */
+    public NameBasedGenerator(UUID namespace, String encoding, final Charset charset) {
+        super();
+        if (namespace == null || encoding == null || charset == null) {
+            throw new IllegalArgumentException("Namespace, encoding and charset must not be null");
+        }
+        if (encoding.equals(UUID.MD5_ENCODING)) {
+            this.algorithm = "MD5";
+            this.version = VERSION_THREE;
+        } else if (encoding.equals(UUID.SHA1_ENCODING)) {
+            this.algorithm = "SHA";
+            //Not VERSION_FIVE, which is 3 for nameUUIDFromString
+            this.version = SHA1_VERSION;
+        } else {
+            throw new IllegalArgumentException("Unsupported encoding " + encoding);
+        }
+        this.namespace = namespace;
+        this.namespaceBytes = namespace.getRawBytes();
+        this.encoding = encoding;
+        this.charset = charset;
+        if (DEFAULT_CHARSET.equals(charset)) {
+            this.encoders = null;
+        } else {
+            this.encoders = new ThreadLocal() {
+                protected Object initialValue() {
+                    return charset.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                }
+            };
+        }
+    }
+
+    /**
+     * <p>Sets the pool deriving the UUID's of the bulk methods. Setting <code>null</code>
+     * restores the default pool with one thread per processor.</p>
+     *
+     * @param forkJoinPool the pool used by the bulk methods.
+     */
+    public static synchronized void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        pool = forkJoinPool;
+    }
+
+    /**
+     * <p>Returns the pool deriving the UUID's of the bulk methods.</p>
+     *
+     * @return the pool used by the bulk methods.
+     */
+    private static synchronized ForkJoinPool forkJoinPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+
+    /**
+     * <p>Returns the namespace of the derived UUID's.</p>
+     *
+     * @return the namespace UUID.
+     */
+    public UUID getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * <p>Returns the encoding of the derived UUID's.</p>
+     *
+     * @return the <code>UUID.MD5_ENCODING</code> or <code>UUID.SHA1_ENCODING</code> encoding.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * <p>Returns the charset names are encoded with.</p>
+     *
+     * @return the charset of names.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * <p>Returns the UUID of a name in the namespace.</p>
+     *
+     * @param name the name, encoded with the generator's charset.
+     * @return the name-based UUID.
+     */
+    public UUID uuidFor(CharSequence name) {
+        Scratch scratch = (Scratch) SCRATCH.get();
+        MessageDigest digest = startDigest();
+        update(digest, name, scratch);
+        return UUID.fromDigest(digest, scratch.digest, version);
+    }
+
+    /**
+     * <p>Returns the UUID of a name, given as bytes, in the namespace.</p>
+     *
+     * @param name the array holding the name.
+     * @param offset the index of the first byte of the name.
+     * @param length the number of bytes of the name.
+     * @return the name-based UUID.
+     * @throws IllegalArgumentException if the array does not hold <code>length</code> bytes at
+     * <code>offset</code>.
+     */
+    public UUID uuidFor(byte[] name, int offset, int length) {
+        if (offset < 0 || length < 0 || name.length - offset < length) {
+            throw new IllegalArgumentException("Array does not hold " + length + " bytes at offset " + offset);
+        }
+        MessageDigest digest = startDigest();
+        digest.update(name, offset, length);
+        return UUID.fromDigest(digest, ((Scratch) SCRATCH.get()).digest, version);
+    }
+
+    /**
+     * <p>Returns the UUID of a name, given as the remaining bytes of a buffer, in the
+     * namespace. The position of the buffer is advanced to its limit.</p>
+     *
+     * @param name the buffer holding the name.
+     * @return the name-based UUID.
+     */
+    public UUID uuidFor(ByteBuffer name) {
+        MessageDigest digest = startDigest();
+        digest.update(name);
+        return UUID.fromDigest(digest, ((Scratch) SCRATCH.get()).digest, version);
+    }
+
+    /**
+     * <p>Returns the UUID's of names in the namespace, derived in parallel.</p>
+     *
+     * @param names the names, encoded with the generator's charset.
+     * @return the name-based UUID's, in the order of the names.
+     */
+    public UUID[] uuidsFor(CharSequence[] names) {
+        long[] mostSigBits = new long[names.length];
+        long[] leastSigBits = new long[names.length];
+        uuidsFor(names, mostSigBits, leastSigBits, 0, names.length);
+        return UUID.toUUIDs(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * <p>Derives the UUID's of names in the namespace in parallel, storing the UUID of the name
+     * at each index at the same index of two arrays of most and least significant bits.</p>
+     *
+     * @param names the names, encoded with the generator's charset.
+     * @param mostSigBits the array receiving the most significant bits.
+     * @param leastSigBits the array receiving the least significant bits.
+     * @param offset the index of the first name.
+     * @param length the number of names.
+     * @throws IllegalArgumentException if any array does not hold <code>length</code> elements at
+     * <code>offset</code>.
+     */
+    public void uuidsFor(CharSequence[] names, long[] mostSigBits, long[] leastSigBits, int offset, int length) {
+        UUID.checkRange(mostSigBits, leastSigBits, offset, length);
+        if (names.length - offset < length) {
+            throw new IllegalArgumentException("Array does not hold " + length + " names at offset " + offset);
+        }
+        derive(new NameTask(names, mostSigBits, leastSigBits, offset, offset + length));
+    }
+
+    /**
+     * <p>Returns an iterator over the UUID's of the names of another iterator. Names are read
+     * ahead in batches, and the UUID's of the next batch are derived in parallel while the
+     * current batch is iterated. The returned iterator is not thread safe.</p>
+     *
+     * @param names an iterator over <code>CharSequence</code> names.
+     * @return an iterator over the name-based UUID's, in the order of the names.
+     */
+    public Iterator uuidsFor(Iterator names) {
+        return new BulkIterator(names);
+    }
+
+    /**
+     * <p>Derives the UUID's of the newline delimited names read from a channel in parallel, and
+     * writes them in the order of the names, 16 big-endian bytes per UUID, to another channel.
+     * The bytes of each line, without the line terminator (<code>"\n"</code> or
+     * <code>"\r\n"</code>), are the name, so the input must be encoded with the generator's
+     * charset. Empty lines are the empty name, but an empty last line is ignored.</p>
+     *
+     * <p>The channels must be in blocking mode, as the names are read until the input ends;
+     * a non-blocking channel would be polled without pause while it has no bytes ready.</p>
+     *
+     * @param lines the channel of newline delimited names.
+     * @param out the channel receiving the UUID's.
+     * @return the number of UUID's written.
+     * @throws IllegalArgumentException if a channel is in non-blocking mode.
+     * @throws IOException if reading or writing a channel fails.
+     */
+    public long uuidsFor(ReadableByteChannel lines, WritableByteChannel out) throws IOException {
+        if (isNonBlocking(lines) || isNonBlocking(out)) {
+            throw new IllegalArgumentException("Channels must be in blocking mode");
+        }
+        ByteBuffer in = ByteBuffer.allocate(LINE_BUFFER_SIZE);
+        int[] starts = new int[BATCH_SIZE];
+        int[] ends = new int[BATCH_SIZE];
+        ByteBuffer uuids = ByteBuffer.allocate(BATCH_SIZE * UUID_BYTE_LENGTH);
+        long written = 0;
+        boolean eof = false;
+        while (!eof) {
+            eof = lines.read(in) == -1;
+            if (!eof && in.hasRemaining()) {
+                continue;
+            }
+            byte[] text = in.array();
+            int limit = in.position();
+            int count = 0;
+            int start = 0;
+            for (int i = 0; i < limit; i++) {
+                if (text[i] == '\n') {
+                    if (count == starts.length) {
+                        starts = grow(starts);
+                        ends = grow(ends);
+                    }
+                    starts[count] = start;
+                    ends[count++] = i > start && text[i - 1] == '\r' ? i - 1 : i;
+                    start = i + 1;
+                }
+            }
+            if (eof && start < limit) {
+                if (count == starts.length) {
+                    starts = grow(starts);
+                    ends = grow(ends);
+                }
+                starts[count] = start;
+                ends[count++] = text[limit - 1] == '\r' ? limit - 1 : limit;
+                start = limit;
+            }
+            if (uuids.capacity() < count * UUID_BYTE_LENGTH) {
+                uuids = ByteBuffer.allocate(starts.length * UUID_BYTE_LENGTH);
+            }
+            derive(new LineTask(text, starts, ends, uuids.array(), 0, count));
+            uuids.clear();
+            uuids.limit(count * UUID_BYTE_LENGTH);
+            while (uuids.hasRemaining()) {
+                out.write(uuids);
+            }
+            written += count;
+            //keep the incomplete last line, growing the buffer if the line fills it
+            in.limit(limit);
+            in.position(start);
+            if (start == 0 && limit == in.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+                larger.put(in);
+                in = larger;
+            } else {
+                in.compact();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * <p>Returns whether a channel is a selectable channel in non-blocking mode.</p>
+     *
+     * @param channel the channel.
+     * @return whether the channel is in non-blocking mode.
+     */
+    private static boolean isNonBlocking(Object channel) {
+        return channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking();
+    }
+
+    /**
+     * <p>Runs a derivation task, on the fork-join pool unless it is too small to split.</p>
+     *
+     * @param task the derivation task.
+     */
+    private void derive(RangeTask task) {
+        if (task.to - task.from <= TASK_SIZE) {
+            task.deriveRange();
+        } else {
+            forkJoinPool().invoke(task);
+        }
+    }
+
+    /**
+     * <p>Returns a copy of an array with twice the length.</p>
+     *
+     * @param array the array to grow.
+     * @return the larger array.
+     */
+    private static int[] grow(int[] array) {
+        int[] larger = new int[array.length * 2];
+        System.arraycopy(array, 0, larger, 0, array.length);
+        return larger;
+    }
+
+    /**
+     * <p>Updates a digest with a name encoded with the generator's charset.</p>
+     *
+     * @param digest the digest to update.
+     * @param name the name.
+     * @param scratch the buffers of the calling thread.
+     */
+    private void update(MessageDigest digest, CharSequence name, Scratch scratch) {
+        if (encoders == null) {
+            updateUTF8(digest, name, scratch.chunk);
+        } else {
+            update(digest, name, (CharsetEncoder) encoders.get(), scratch.chunkBuffer);
+        }
+    }
+
+    /**
+     * <p>Returns the digest of the calling thread, updated with the namespace.</p>
+     *
+     * @return the digest to update with the name.
+     */
+    private MessageDigest startDigest() {
+        MessageDigest digest = DigestUtils.getThreadDigest(algorithm);
+        digest.update(namespaceBytes);
+        return digest;
+    }
+
+    /**
+     * <p>Updates a digest with a name encoded as UTF-8, one chunk at a time. Unpaired
+     * surrogates are replaced with '?'.</p>
+     *
+     * @param digest the digest to update.
+     * @param name the name.
+     * @param chunk the buffer the name is encoded into.
+     */
+    private static void updateUTF8(MessageDigest digest, CharSequence name, byte[] chunk) {
+        int length = name.length();
+        int pos = 0;
+        //leaves room for the four bytes of the largest code point
+        int limit = chunk.length - 4;
+        for (int i = 0; i < length; i++) {
+            if (pos > limit) {
+                digest.update(chunk, 0, pos);
+                pos = 0;
+            }
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                chunk[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                chunk[pos++] = (byte) (0xC0 | (c >> 6));
+                chunk[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(name.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, name.charAt(++i));
+                chunk[pos++] = (byte) (0xF0 | (cp >> 18));
+                chunk[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                chunk[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                chunk[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                chunk[pos++] = REPLACEMENT;
+            } else {
+                chunk[pos++] = (byte) (0xE0 | (c >> 12));
+                chunk[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                chunk[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        digest.update(chunk, 0, pos);
+    }
+
+    /**
+     * <p>Updates a digest with a name encoded by a charset encoder, one chunk at a time.</p>
+     *
+     * @param digest the digest to update.
+     * @param name the name.
+     * @param encoder the encoder of the calling thread.
+     * @param chunk the buffer the name is encoded into.
+     */
+    private static void update(MessageDigest digest, CharSequence name, CharsetEncoder encoder, ByteBuffer chunk) {
+        CharBuffer in = CharBuffer.wrap(name);
+        encoder.reset();
+        chunk.clear();
+        CoderResult result;
+        do {
+            result = encoder.encode(in, chunk, true);
+            if (result.isOverflow()) {
+                digest.update(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+        } while (result.isOverflow());
+        while (encoder.flush(chunk).isOverflow()) {
+            digest.update(chunk.array(), 0, chunk.position());
+            chunk.clear();
+        }
+        digest.update(chunk.array(), 0, chunk.position());
+    }
+
+    /**
+     * <p>A task deriving the UUID's of a range of names, splitting the range among
+     * the threads of the pool.</p>
+     */
+    private abstract static class RangeTask extends RecursiveAction {
+        /** Serial version UID, tasks are never serialized. */
+        private static final long serialVersionUID = 1L;
+
+        /** The index of the first name. */
+        final int from;
+
+        /** The index after the last name. */
+        final int to;
+
+        /**
+         * Constructor.
+         *
+         * @param from the index of the first name.
+         * @param to the index after the last name.
+         */
+        RangeTask(int from, int to) {
+            super();
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        protected void compute() {
+            if (to - from <= TASK_SIZE) {
+                deriveRange();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(split(from, middle), split(middle, to));
+            }
+        }
+
+        /**
+         * <p>Returns a task deriving part of the range.</p>
+         *
+         * @param first the index of the first name.
+         * @param end the index after the last name.
+         * @return the task deriving the part of the range.
+         */
+        abstract RangeTask split(int first, int end);
+
+        /**
+         * <p>Derives the UUID's of the whole range on the calling thread.</p>
+         */
+        abstract void deriveRange();
+    }
+
+    /**
+     * <p>Derives the UUID's of an array of names into arrays of bits.</p>
+     */
+    private final class NameTask extends RangeTask {
+        /** Serial version UID, tasks are never serialized. */
+        private static final long serialVersionUID = 1L;
+
+        /** The names. */
+        private final CharSequence[] names;
+
+        /** The array receiving the most significant bits. */
+        private final long[] mostSigBits;
+
+        /** The array receiving the least significant bits. */
+        private final long[] leastSigBits;
+
+        /**
+         * Constructor.
+         *
+         * @param names the names.
+         * @param mostSigBits the array receiving the most significant bits.
+         * @param leastSigBits the array receiving the least significant bits.
+         * @param from the index of the first name.
+         * @param to the index after the last name.
+         */
+        NameTask(CharSequence[] names, long[] mostSigBits, long[] leastSigBits, int from, int to) {
+            super(from, to);
+            this.names = names;
+            this.mostSigBits = mostSigBits;
+            this.leastSigBits = leastSigBits;
+        }
+
+        RangeTask split(int first, int end) {
+            return new NameTask(names, mostSigBits, leastSigBits, first, end);
+        }
+
+        void deriveRange() {
+            Scratch scratch = (Scratch) SCRATCH.get();
+            for (int i = from; i < to; i++) {
+                MessageDigest digest = startDigest();
+                update(digest, names[i], scratch);
+                UUID.finishDigest(digest, scratch.digest);
+                mostSigBits[i] = UUID.nameMostSigBits(scratch.digest, version);
+                leastSigBits[i] = UUID.nameLeastSigBits(scratch.digest);
+            }
+        }
+    }
+
+    /**
+     * <p>Derives the UUID's of lines of bytes into an array of big-endian UUID bytes.</p>
+     */
+    private final class LineTask extends RangeTask {
+        /** Serial version UID, tasks are never serialized. */
+        private static final long serialVersionUID = 1L;
+
+        /** The bytes holding the lines. */
+        private final byte[] text;
+
+        /** The index of the first byte of each line. */
+        private final int[] starts;
+
+        /** The index after the last byte of each line. */
+        private final int[] ends;
+
+        /** The array receiving 16 bytes for the UUID of each line. */
+        private final byte[] uuids;
+
+        /**
+         * Constructor.
+         *
+         * @param text the bytes holding the lines.
+         * @param starts the index of the first byte of each line.
+         * @param ends the index after the last byte of each line.
+         * @param uuids the array receiving the UUID bytes.
+         * @param from the index of the first line.
+         * @param to the index after the last line.
+         */
+        LineTask(byte[] text, int[] starts, int[] ends, byte[] uuids, int from, int to) {
+            super(from, to);
+            this.text = text;
+            this.starts = starts;
+            this.ends = ends;
+            this.uuids = uuids;
+        }
+
+        RangeTask split(int first, int end) {
+            return new LineTask(text, starts, ends, uuids, first, end);
+        }
+
+        void deriveRange() {
+            byte[] digestBytes = ((Scratch) SCRATCH.get()).digest;
+            for (int i = from; i < to; i++) {
+                MessageDigest digest = startDigest();
+                digest.update(text, starts[i], ends[i] - starts[i]);
+                UUID.finishDigest(digest, digestBytes);
+                putLong(uuids, i * UUID_BYTE_LENGTH, UUID.nameMostSigBits(digestBytes, version));
+                putLong(uuids, i * UUID_BYTE_LENGTH + 8, UUID.nameLeastSigBits(digestBytes));
+            }
+        }
+
+        /**
+         * <p>Stores a long as 8 big-endian bytes.</p>
+         *
+         * @param b the array receiving the bytes.
+         * @param offset the index of the first byte.
+         * @param value the long to store.
+         */
+        private void putLong(byte[] b, int offset, long value) {
+            for (int i = 7; i >= 0; i--) {
+                b[offset + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * <p>Iterates over the UUID's of the names of another iterator, deriving the next
+     * batch of UUID's while the current batch is iterated.</p>
+     */
+    private final class BulkIterator implements Iterator {
+        /** The iterator over the names. */
+        private final Iterator names;
+
+        /** The batch being iterated. */
+        private Batch current = new Batch();
+
+        /** The batch being derived. */
+        private Batch next = new Batch();
+
+        /** The index of the next UUID of the current batch. */
+        private int position;
+
+        /** Whether the first batch has been submitted. */
+        private boolean started;
+
+        /**
+         * Constructor.
+         *
+         * @param names the iterator over the names.
+         */
+        BulkIterator(Iterator names) {
+            super();
+            this.names = names;
+        }
+
+        /**
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            if (position < current.count) {
+                return true;
+            }
+            if (!started) {
+                next.submit(names);
+                started = true;
+            }
+            if (next.count == 0) {
+                return false;
+            }
+            next.task.join();
+            Batch swap = current;
+            current = next;
+            next = swap;
+            position = 0;
+            next.submit(names);
+            return true;
+        }
+
+        /**
+         * @see java.util.Iterator#next()
+         */
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int i = position++;
+            return new UUID(current.mostSigBits[i], current.leastSigBits[i]);
+        }
+
+        /**
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * <p>A batch of names read from an iterator and their UUID's.</p>
+     */
+    private final class Batch {
+        /** The names. */
+        final CharSequence[] names = new CharSequence[BATCH_SIZE];
+
+        /** The most significant bits of the UUID's. */
+        final long[] mostSigBits = new long[BATCH_SIZE];
+
+        /** The least significant bits of the UUID's. */
+        final long[] leastSigBits = new long[BATCH_SIZE];
+
+        /** The number of names. */
+        int count;
+
+        /** The task deriving the UUID's. */
+        ForkJoinTask task;
+
+        /**
+         * <p>Reads the next batch of names and submits the derivation of their UUID's.</p>
+         *
+         * @param iterator the iterator over the names.
+         */
+        void submit(Iterator iterator) {
+            count = 0;
+            while (count < BATCH_SIZE && iterator.hasNext()) {
+                names[count++] = (CharSequence) iterator.next();
+            }
+            task = count == 0 ? null : forkJoinPool().submit(new NameTask(names, mostSigBits, leastSigBits, 0, count));
+        }
+    }
+
+    /**
+     * <p>The buffers of a thread.</p>
+     */
+    private static final class Scratch {
+        /** The buffer names are encoded into. */
+        final byte[] chunk = new byte[CHUNK_SIZE];
+
+        /** The chunk, for charset encoders. */
+        final ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+
+        /** The buffer receiving the digest. */
+        final byte[] digest = new byte[UUID.MAX_DIGEST_LENGTH];
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Class is a bounded cache of name-based UUID's, so that deriving the UUID of a
+ * frequently used name does not digest the name again. Entries are keyed on the
+ * namespace, encoding, charset and name, so one cache may serve several namespaces.</p>
+ * <p>The cache is split into stripes locked independently, each evicting its least
+ * recently used entry once full, so eviction is least recently used within a stripe.
+ * The hit, miss and eviction counts are kept per stripe and summed when read.</p>
+ * <p>Instances are thread safe.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ *
+ */
+public final class NameBasedUUIDCache {
+
+    /** The maximum number of stripes. */
+    private static final int MAX_STRIPES = 64;
+
+    /** The stripes of the cache. */
+    private final Stripe[] stripes;
+
+    /** The mask selecting a stripe from a hash code. */
+    private final int mask;
+
+    /** The maximum number of entries of the cache. */
+    private final int maximumSize;
+
+    /**
+     * <p>Constructs a cache holding at most <code>maximumSize</code> UUID's.</p>
+     *
+     * @param maximumSize the maximum number of cached UUID's.
+     * @throws IllegalArgumentException if <code>maximumSize</code> is less than 1.
+     */
+    public NameBasedUUIDCache(int maximumSize) {
+        super();
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be at least 1");
+        }
+        int count = 1;
+        int target = Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors() * 4);
+        while (count < target && count * 2 <= maximumSize) {
+            count *= 2;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(maximumSize / count);
+        }
+        this.mask = count - 1;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * <p>Returns the UUID of a name in a namespace, as returned by
+     * {@link UUID#nameUUIDFromString(String, UUID, String)}.</p>
+     *
+     * @param name the name, encoded with the platform default charset.
+     * @param namespace the namespace UUID.
+     * @param encoding the <code>UUID.MD5_ENCODING</code> or <code>UUID.SHA1_ENCODING</code> encoding.
+     * @return the name-based UUID.
+     */
+    public UUID uuidFor(String name, UUID namespace, String encoding) {
+        Key key = new Key(namespace, encoding, null, name);
+        Stripe stripe = stripeFor(key);
+        UUID uuid = stripe.get(key);
+        if (uuid == null) {
+            uuid = UUID.nameUUIDFromString(name, namespace, encoding);
+            stripe.put(key, uuid);
+        }
+        return uuid;
+    }
+
+    /**
+     * <p>Returns the UUID of a name in the namespace of a generator, as returned by
+     * {@link NameBasedGenerator#uuidFor(CharSequence)}.</p>
+     *
+     * @param generator the generator of the namespace.
+     * @param name the name, encoded with the generator's charset.
+     * @return the name-based UUID.
+     */
+    public UUID uuidFor(NameBasedGenerator generator, CharSequence name) {
+        String value = name.toString();
+        Key key = new Key(generator.getNamespace(), generator.getEncoding(), generator.getCharset(), value);
+        Stripe stripe = stripeFor(key);
+        UUID uuid = stripe.get(key);
+        if (uuid == null) {
+            uuid = generator.uuidFor(value);
+            stripe.put(key, uuid);
+        }
+        return uuid;
+    }
+
+    /**
+     * <p>Returns the maximum number of cached UUID's.</p>
+     *
+     * @return the maximum number of cached UUID's.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * <p>Returns the number of cached UUID's.</p>
+     *
+     * @return the number of cached UUID's.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                size += stripes[i].size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * <p>Returns the number of lookups answered from the cache.</p>
+     *
+     * @return the number of cache hits.
+     */
+    public long getHitCount() {
+        long count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                count += stripes[i].hits;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>Returns the number of lookups that derived the UUID.</p>
+     *
+     * @return the number of cache misses.
+     */
+    public long getMissCount() {
+        long count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                count += stripes[i].misses;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>Returns the number of UUID's evicted to make room for others.</p>
+     *
+     * @return the number of evictions.
+     */
+    public long getEvictionCount() {
+        long count = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                count += stripes[i].evictions;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>Removes all cached UUID's. The counts are kept.</p>
+     */
+    public void clear() {
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                stripes[i].clear();
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the stripe of a key.</p>
+     *
+     * @param key the key.
+     * @return the stripe holding the key.
+     */
+    private Stripe stripeFor(Key key) {
+        int h = key.hashCode();
+        //spread the high bits, which the stripe mask would ignore
+        h ^= (h >>> 16) ^ (h >>> 8);
+        return stripes[h & mask];
+    }
+
+    /**
+     * <p>A stripe of the cache, a map in access order evicting its eldest entry once full.</p>
+     */
+    private static final class Stripe extends LinkedHashMap {
+        /** Serial version UID, stripes are never serialized. */
+        private static final long serialVersionUID = 1L;
+
+        /** The maximum number of entries of the stripe. */
+        private final int capacity;
+
+        /** The number of hits, guarded by the stripe. */
+        long hits;
+
+        /** The number of misses, guarded by the stripe. */
+        long misses;
+
+        /** The number of evictions, guarded by the stripe. */
+        long evictions;
+
+        /**
+         * Constructor.
+         *
+         * @param capacity the maximum number of entries of the stripe.
+         */
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        /**
+         * <p>Returns the UUID of a key, counting the hit or miss.</p>
+         *
+         * @param key the key.
+         * @return the cached UUID, or null.
+         */
+        synchronized UUID get(Key key) {
+            UUID uuid = (UUID) super.get(key);
+            if (uuid == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return uuid;
+        }
+
+        /**
+         * <p>Caches the UUID of a key.</p>
+         *
+         * @param key the key.
+         * @param uuid the UUID of the key.
+         */
+        synchronized void put(Key key, UUID uuid) {
+            super.put(key, uuid);
+        }
+
+        /**
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            if (size() > capacity) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * <p>The key of a cached UUID.</p>
+     */
+    private static final class Key {
+        /** The namespace UUID. */
+        private final UUID namespace;
+
+        /** The encoding. */
+        private final String encoding;
+
+        /** The charset, or null for the platform default charset. */
+        private final Charset charset;
+
+        /** The name. */
+        private final String name;
+
+        /** The hash code. */
+        private final int hash;
+
+        /**
+         * Constructor.
+         *
+         * @param namespace the namespace UUID.
+         * @param encoding the encoding.
+         * @param charset the charset, or null for the platform default charset.
+         * @param name the name.
+         */
+        Key(UUID namespace, String encoding, Charset charset, String name) {
+            super();
+            this.namespace = namespace;
+            this.encoding = encoding;
+            this.charset = charset;
+            this.name = name;
+            this.hash = (name.hashCode() * 31 + namespace.hashCode()) * 31 + encoding.hashCode();
+        }
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                && name.equals(other.name)
+                && namespace.equals(other.namespace)
+                && encoding.equals(other.encoding)
+                && (charset == null ? other.charset == null : charset.equals(other.charset));
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
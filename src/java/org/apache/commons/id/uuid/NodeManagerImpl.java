@@ -17,8 +17,11 @@
 package org.apache.commons.id.uuid;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.id.uuid.clock.Clock;
 import org.apache.commons.id.uuid.state.Node;
@@ -29,35 +32,124 @@ import org.apache.commons.id.uuid.state.StateHelper;
  * <p>Class is responsible for managing the <code>Node</code>s identified for
  * this system (JVM instance), as well as the state management for the
  * <code>Node</code>s.</p>
+ * <p>State is stored write-behind as a reservation: rather than the last
+ * timestamps, a watermark one reservation period ahead of the clock is stored
+ * for all <code>Node</code>s, and timestamps are issued freely below it. A
+ * background daemon thread wakes once per flush interval and stores a new
+ * watermark once the issued timestamps are within half a reservation of the
+ * current one, so generating a UUID does not wait on stable storage and state
+ * is written about once per reservation period. Should timestamps come within
+ * a quarter of a reservation of the watermark before the flusher renews it,
+ * <code>currentNode</code> renews it first. After a restart the
+ * <code>Node</code>s resume above the stored watermark, keeping their clock
+ * sequence. The watermark is only as durable as the <code>State</code> stores
+ * it: a <code>ReadWriteFileStateImpl</code> forcing writes at an interval may
+ * lose the watermarks stored within the last interval if the system crashes,
+ * and one never forcing writes any of them.</p>
+ * <p>The flush interval is the <code>State</code>'s synch interval, unless set
+ * with the <code>FLUSH_INTERVAL_KEY</code> system property or
+ * {@link #setFlushInterval(long)}. The reservation defaults to ten flush
+ * intervals, unless set with the <code>RESERVATION_KEY</code> system property or
+ * {@link #setReservation(long)}. Nothing is stored and no thread is started
+ * while the flush interval is <code>Long.MAX_VALUE</code>, as for read-only
+ * state. While the flusher runs, a shutdown hook stores the state when the JVM
+ * exits; a manager no longer used before then should be stopped with
+ * {@link #shutdown()}, which also removes the hook. Managers are not
+ * finalized.</p>
+ * <p>Without sharding all threads generate from the current <code>Node</code>,
+ * moving on to the next only when it is over clocked. With a number of stripes
+ * set, through the <code>STRIPES_KEY</code> system property or
+ * {@link #setStripes(int)}, each thread is assigned one of that many
+ * <code>Node</code>s, round robin, so timestamps are issued from independent
+ * counters and throughput is no longer bounded by a single node. The stripes
+ * take the <code>Node</code>s of the <code>State</code> first, then random
+ * multicast node identifiers with new clock sequences, which are not stored.</p>
  *
  * @author Commons-Id team
  * @version $Revision: 480488 $ $Date: 2006-11-29 00:57:26 -0800 (Wed, 29 Nov 2006) $
  *
  */
 public final class NodeManagerImpl implements NodeManager {
+    /** The system property key of the flush interval in milliseconds. */
+    public static final String FLUSH_INTERVAL_KEY = NodeManagerImpl.class.getName() + ".flushInterval";
+    /** The system property key of the reservation in milliseconds. */
+    public static final String RESERVATION_KEY = NodeManagerImpl.class.getName() + ".reservation";
+    /** The longest reservation in milliseconds, one day. */
+    public static final long MAX_RESERVATION = 24L * 60 * 60 * 1000;
+    /** The system property key of the number of node stripes. */
+    public static final String STRIPES_KEY = NodeManagerImpl.class.getName() + ".stripes";
+    /** The largest number of node stripes. */
+    public static final int MAX_STRIPES = 1024;
+    /** The longest wait of the flusher in milliseconds, keeping nanosecond deadlines in range. */
+    private static final long MAX_WAIT_MILLIS = Long.MAX_VALUE / 4000000L;
+    /** The default reservation in flush intervals. */
+    private static final long DEFAULT_RESERVATION_INTERVALS = 10;
     /** Reference to the State implementation to use for loading and storing */
     private State nodeState;
     /** The current array index for the Node in use. */
-    private int currentNodeIndex = 0;
+    private volatile int currentNodeIndex = 0;
     /** Flag indicating the node state has been initialized. */
-    private boolean isInit = false;
+    private volatile boolean isInit = false;
     /** Set that references all instances. */
     private Set nodesSet;
     /** Array of the Nodes */
     private Node[] allNodes;
-    /** UUID timestamp of last call to State.store */
-    private long lastUUIDTimeStored = 0;
+    /** Last timestamp of each Node at the last call to State.store, guarded by the flush lock */
+    private long[] storedTimestamps;
+    /** Milliseconds between stores, 0 until set or initialized. */
+    private volatile long flushInterval = 0;
+    /** Milliseconds reserved ahead of the clock by each store, 0 for the default. */
+    private volatile long reservation = 0;
+    /** The stored watermark, 0 when none, written under the flush lock. */
+    private volatile long watermark = 0;
+    /** Last timestamp at which currentNode renews the watermark. */
+    private volatile long renewAt = Long.MAX_VALUE;
+    /** Number of node stripes, 0 when not sharding, -1 until set or initialized. */
+    private int stripes = -1;
+    /** The Node of each stripe, null when not sharding. */
+    private volatile Node[] stripeNodes;
+    /** The stripe index assigned to the next thread. */
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    /** The stripe index of each thread. */
+    private final ThreadLocal threadStripe = new ThreadLocal() {
+        protected Object initialValue() {
+            return new int[] {nextStripe.getAndIncrement() & Integer.MAX_VALUE};
+        }
+    };
+    /** Lock serializing stores and signalling the flusher. */
+    private final Object flushLock = new Object();
+    /** The background thread storing state, null when not running. */
+    private Flusher flusher;
+    /** The shutdown hook storing state on exit, null when not registered. */
+    private Thread shutdownHook;
     /** Single instance of this class */
     //private NodeManagerImpl instance;
 
-    /** Constructor for class. */
+    /** Constructor for class, using the <code>State</code> implementation located by <code>StateHelper</code>. */
     public NodeManagerImpl() {
         super();
     }
 
+    /**
+     * <p>Constructor for class, using the given <code>State</code> implementation
+     * rather than looking one up.</p>
+     *
+     * @param state the <code>State</code> implementation, loaded by <code>init</code>.
+     * @throws IllegalArgumentException if <code>state</code> is null.
+     */
+    public NodeManagerImpl(State state) {
+        super();
+        if (state == null) {
+            throw new IllegalArgumentException("State must not be null");
+        }
+        nodeState = state;
+    }
+
     /** Initialization */
-    public void init() {
-        nodeState = StateHelper.getStateImpl();
+    public synchronized void init() {
+        if (nodeState == null) {
+            nodeState = StateHelper.getStateImpl();
+        }
         try {
             nodeState.load();
         } catch (Exception ex) {
@@ -70,8 +162,320 @@ public final class NodeManagerImpl implements NodeManager {
         while (it.hasNext()) {
             allNodes[i++] = (Node) it.next();
         }
+        storedTimestamps = new long[allNodes.length];
+        for (i = 0; i < allNodes.length; i++) {
+            storedTimestamps[i] = allNodes[i].getLastTimestamp();
+            //The stored timestamp may be a watermark reserved by an earlier run
+            allNodes[i].resumeAfter(storedTimestamps[i]);
+        }
+        if (flushInterval == 0) {
+            long interval = getLongProperty(FLUSH_INTERVAL_KEY, Long.MAX_VALUE);
+            flushInterval = interval == 0 ? nodeState.getSynchInterval() : interval;
+        }
+        if (reservation == 0) {
+            reservation = getLongProperty(RESERVATION_KEY, MAX_RESERVATION);
+        }
+        if (stripes < 0) {
+            stripes = (int) getLongProperty(STRIPES_KEY, MAX_STRIPES);
+        }
+        initStripes();
         isInit = true;
+        resetReservation();
+        startFlusher();
+    }
+
+    /**
+     * <p>Returns the positive value of a system property.</p>
+     *
+     * @param key the system property key.
+     * @param max the largest value allowed.
+     * @return the value of the property, or 0 if it is not set.
+     * @throws IllegalStateException if the value is not a number from 1 to <code>max</code>.
+     */
+    private static long getLongProperty(String key, long max) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            long l = Long.parseLong(value);
+            if (l > 0 && l <= max) {
+                return l;
+            }
+        } catch (NumberFormatException nfe) {
+            //Reported below
+        }
+        throw new IllegalStateException("Invalid " + key + ": " + value);
+    }
+
+    /**
+     * <p>Sets the number of milliseconds between stores of the node state, starting
+     * the background flusher if it is not running. <code>Long.MAX_VALUE</code> stops
+     * it.</p>
+     *
+     * @param millis the flush interval in milliseconds.
+     * @throws IllegalArgumentException if <code>millis</code> is not positive.
+     */
+    public synchronized void setFlushInterval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive");
+        }
+        flushInterval = millis;
+        if (flusher != null) {
+            //Wake the running flusher to wait for the new interval
+            synchronized (flushLock) {
+                flushLock.notifyAll();
+            }
+        }
+        if (isInit) {
+            resetReservation();
+            startFlusher();
+        }
+    }
+
+    /**
+     * <p>Sets the number of milliseconds each store of the node state reserves
+     * ahead of the clock. It should be shorter than the time the JVM takes to
+     * restart.</p>
+     *
+     * @param millis the reservation in milliseconds.
+     * @throws IllegalArgumentException if <code>millis</code> is not positive or
+     * more than <code>MAX_RESERVATION</code>.
+     */
+    public synchronized void setReservation(long millis) {
+        if (millis <= 0 || millis > MAX_RESERVATION) {
+            throw new IllegalArgumentException("Reservation must be from 1 to " + MAX_RESERVATION + " milliseconds");
+        }
+        reservation = millis;
+        if (isInit) {
+            resetReservation();
+        }
+    }
+
+    /**
+     * <p>Sets the number of node stripes threads are assigned to, 0 to generate
+     * from the current node in all threads.</p>
+     *
+     * @param count the number of node stripes.
+     * @throws IllegalArgumentException if <code>count</code> is negative or more
+     * than <code>MAX_STRIPES</code>.
+     */
+    public synchronized void setStripes(int count) {
+        if (count < 0 || count > MAX_STRIPES) {
+            throw new IllegalArgumentException("Stripes must be from 0 to " + MAX_STRIPES);
+        }
+        stripes = count;
+        if (isInit) {
+            initStripes();
+        }
     }
+
+    /**
+     * <p>Returns the number of node stripes threads are assigned to.</p>
+     *
+     * @return the number of node stripes, 0 when not sharding.
+     */
+    public synchronized int getStripes() {
+        return stripes < 0 ? 0 : stripes;
+    }
+
+    /**
+     * <p>Assigns a <code>Node</code> to each stripe, the loaded ones first and
+     * then new ones with random node identifiers.</p>
+     */
+    private void initStripes() {
+        if (stripes <= 0) {
+            stripeNodes = null;
+            return;
+        }
+        Node[] nodes = new Node[stripes];
+        int i = 0;
+        for (; i < nodes.length && i < allNodes.length; i++) {
+            nodes[i] = allNodes[i];
+        }
+        Set ids = new HashSet(nodesSet);
+        while (i < nodes.length) {
+            Node node = new Node(StateHelper.randomNodeIdentifier());
+            if (ids.add(node)) {
+                nodes[i++] = node;
+            }
+        }
+        stripeNodes = nodes;
+    }
+
+    /**
+     * <p>Returns the number of milliseconds each store of the node state reserves
+     * ahead of the clock.</p>
+     *
+     * @return the reservation in milliseconds, <code>Long.MAX_VALUE</code> when
+     * state is not stored.
+     */
+    public long getReservation() {
+        long interval = flushInterval;
+        if (interval == 0 || interval == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        if (reservation != 0) {
+            return reservation;
+        }
+        if (interval >= MAX_RESERVATION / DEFAULT_RESERVATION_INTERVALS) {
+            return MAX_RESERVATION;
+        }
+        return interval * DEFAULT_RESERVATION_INTERVALS;
+    }
+
+    /**
+     * <p>Discards the stored watermark, so that the next timestamp issued through
+     * <code>currentNode</code> first stores a new one.</p>
+     */
+    private void resetReservation() {
+        synchronized (flushLock) {
+            watermark = 0;
+            renewAt = getReservation() == Long.MAX_VALUE ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * <p>Stores a new watermark, one reservation ahead of the clock and of the
+     * timestamps issued, unless the issued timestamps are still more than a
+     * fraction of a reservation below the stored watermark. The watermark only
+     * moves once the <code>State</code> has stored it.</p>
+     *
+     * @param fraction the fraction of the reservation, as its divisor.
+     * @throws RuntimeException if the <code>State</code> implementation fails to store.
+     */
+    private void renew(int fraction) {
+        synchronized (flushLock) {
+            long window = getReservation();
+            if (window == Long.MAX_VALUE) {
+                renewAt = Long.MAX_VALUE;
+                return;
+            }
+            window *= Clock.INTERVALS_PER_MILLI;
+            long last = 0;
+            for (int i = 0; i < allNodes.length; i++) {
+                last = Math.max(last, allNodes[i].getLastTimestamp());
+            }
+            if (watermark != 0 && last < watermark - window / fraction) {
+                return;
+            }
+            long now = (System.currentTimeMillis() + Clock.GREGORIAN_CHANGE_OFFSET) * Clock.INTERVALS_PER_MILLI;
+            long next = Math.max(now, last) + window;
+            nodeState.store(nodesSet, next);
+            watermark = next;
+            renewAt = next - window / 4;
+        }
+    }
+
+    /**
+     * <p>Returns the number of milliseconds between stores of the node state.</p>
+     *
+     * @return the flush interval in milliseconds, 0 until initialized or set.
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * <p>Starts the background flusher unless it is running or the interval is
+     * unbounded, and registers the shutdown hook.</p>
+     */
+    private synchronized void startFlusher() {
+        if (flusher == null && flushInterval < Long.MAX_VALUE) {
+            flusher = new Flusher();
+            flusher.start();
+            if (shutdownHook == null) {
+                shutdownHook = new Thread("commons-id-uuid-state-shutdown") {
+                    public void run() {
+                        try {
+                            shutdown();
+                        } catch (IOException ioe) {
+                            //Nothing left to report to on exit
+                        }
+                    }
+                };
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+        }
+    }
+
+    /**
+     * <p>Removes the shutdown hook, unless it is not registered or the JVM is
+     * already exiting.</p>
+     */
+    private synchronized void removeShutdownHook() {
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ise) {
+                //The JVM is exiting, the hook is running or ran
+            }
+            shutdownHook = null;
+        }
+    }
+
+    /**
+     * <p>Stores the node state now if a timestamp was issued since the last store.</p>
+     *
+     * @return true if the state was stored.
+     * @throws IOException if the <code>State</code> implementation fails to store.
+     */
+    public boolean flush() throws IOException {
+        if (!isInit) {
+            initOnce();
+        }
+        synchronized (flushLock) {
+            long[] timestamps = new long[allNodes.length];
+            boolean issued = false;
+            for (int i = 0; i < allNodes.length; i++) {
+                timestamps[i] = allNodes[i].getLastTimestamp();
+                issued |= timestamps[i] != storedTimestamps[i];
+            }
+            if (!issued) {
+                return false;
+            }
+            nodeState.store(nodesSet);
+            storedTimestamps = timestamps;
+            //The stored timestamps are no longer a watermark
+            resetReservation();
+            return true;
+        }
+    }
+
+    /**
+     * <p>Stops the background flusher, removes the shutdown hook and stores any
+     * state not yet stored. Callers done with a manager should call this method,
+     * rather than rely on the JVM exiting.</p>
+     *
+     * @throws IOException if the <code>State</code> implementation fails to store.
+     */
+    public void shutdown() throws IOException {
+        Flusher stopped;
+        synchronized (this) {
+            stopped = flusher;
+            flusher = null;
+            removeShutdownHook();
+        }
+        if (stopped != null) {
+            stopped.running = false;
+            synchronized (flushLock) {
+                flushLock.notifyAll();
+            }
+        }
+        if (isInit) {
+            flush();
+        }
+    }
+
+    /**
+     * <p>Initializes the node state unless another thread already did.</p>
+     */
+    private synchronized void initOnce() {
+        if (!isInit) {
+            init();
+        }
+    }
+
     /*
      * <p>Returns the singleton instance of this class.</p>
      *
@@ -85,86 +489,146 @@ public final class NodeManagerImpl implements NodeManager {
     }
     */
     /**
-     * <p>Returns the current node in use for uuid generation. Calls to this
-     * method also signal the NodeManagerImpl when to store uuid state information.
-     * </p>
+     * <p>Returns the current node in use for uuid generation, that of the
+     * calling thread's stripe when sharding. Calls to this method store a new
+     * watermark only if the timestamps of a stored node came close to the
+     * stored one before the background flusher renewed it. Should that store
+     * fail, the node is still returned while its timestamps remain below the
+     * stored watermark, and the store is retried on the next call.</p>
      *
      * @return the current node in use for uuid generation.
+     * @throws RuntimeException if the <code>State</code> implementation fails to
+     * store a new watermark and the node has reached the stored one.
      */
     public Node currentNode() {
         if (!isInit) {
-            init();
+            initOnce();
         }
-        // See if we need to store state information.
-        if ((lastUUIDTimeStored + nodeState.getSynchInterval()) > (findMaxTimestamp() / Clock.INTERVALS_PER_MILLI)) {
+        Node[] nodes = stripeNodes;
+        Node node;
+        boolean stored = true;
+        if (nodes != null) {
+            int index = ((int[]) threadStripe.get())[0] % nodes.length;
+            node = nodes[index];
+            //Stripes past the loaded nodes have random identifiers, never stored
+            stored = index < allNodes.length;
+        } else {
+            node = allNodes[currentNodeIndex];
+        }
+        if (stored && node.getLastTimestamp() >= renewAt) {
             try {
-                nodeState.store(nodesSet);
-            } catch (IOException ioe) {
-               //@TODO add listener and send notify
+                renew(4);
+            } catch (RuntimeException re) {
+                //Timestamps below the stored watermark are still reserved
+                if (node.getLastTimestamp() + Clock.INTERVALS_PER_MILLI >= watermark) {
+                    throw re;
+                }
             }
         }
-        return allNodes[currentNodeIndex];
+        return node;
     }
 
     /**
-     * <p>Returns the next available <code>Node</code> for uuid generation.</p>
+     * <p>Returns the next available <code>Node</code> for uuid generation. When
+     * sharding, only the calling thread moves on to the next stripe.</p>
      *
      * @return the next available <code>Node</code> for uuid generation.
      */
     public Node nextAvailableNode() {
         if (!isInit) {
-            init();
-        }
-        currentNodeIndex++;
-        if (currentNodeIndex >= allNodes.length) {
-            currentNodeIndex = 0;
-        }
-        return currentNode();
-    }
-
-    /**
-     * <p>Returns the maximum uuid timestamp generated from all <code>Node</code>s</p>
-     *
-     * @return maximum uuid timestamp generated from all <code>Node</code>s.
-     */
-    private long findMaxTimestamp() {
-        if (!isInit) {
-            init();
+            initOnce();
         }
-        long max = 0;
-        for (int i = 0; i < allNodes.length; i++) {
-            if (allNodes[i] != null && allNodes[i].getLastTimestamp() > max) {
-                max = allNodes[i].getLastTimestamp();
+        Node[] nodes = stripeNodes;
+        if (nodes != null) {
+            int[] stripe = (int[]) threadStripe.get();
+            stripe[0] = (stripe[0] % nodes.length + 1) % nodes.length;
+        } else {
+            synchronized (this) {
+                currentNodeIndex++;
+                if (currentNodeIndex >= allNodes.length) {
+                    currentNodeIndex = 0;
+                }
             }
         }
-        return max;
+        return currentNode();
     }
 
     /**
-     * <p>Locks a node for use by a generator.</p>
+     * <p>Locks a node for use by a generator. Nodes need no locking per UUID:
+     * within this process a <code>Node</code> issues timestamps without locking,
+     * and across processes sharing a state file the <code>State</code> leases
+     * the nodes for the lifetime of the process, see
+     * <code>MappedFileStateImpl</code>.</p>
      *
      * @param node the Node to lock.
      */
     public void lockNode(Node node) {
-        //Not implemented in this version.
+        //Nodes are leased for the lifetime of the State.
     }
 
     /**
      * <p>Releases a node locked by a generator.</p>
      *
      * @param node the Node to release.
+     * @see #lockNode(Node)
      */
     public void releaseNode(Node node) {
-        //Not implemented in this version.
+        //Nodes are leased for the lifetime of the State.
     }
 
     /**
-     * <p>Asks the State implementation to store.</p>
-     *
-     * @see Object#finalize
+     * <p>The background thread storing the node state once per flush interval.</p>
      */
-    protected void finalize() throws Throwable {
-        nodeState.store(nodesSet);
-        super.finalize();
+    private final class Flusher extends Thread {
+        /** Cleared to stop the thread. */
+        volatile boolean running = true;
+
+        /** Constructor. */
+        Flusher() {
+            super("commons-id-uuid-state-flusher");
+            setDaemon(true);
+        }
+
+        /**
+         * @see java.lang.Thread#run()
+         */
+        public void run() {
+            while (running) {
+                long interval = flushInterval;
+                if (interval == Long.MAX_VALUE) {
+                    break;
+                }
+                long deadline = System.nanoTime() + Math.min(interval, MAX_WAIT_MILLIS) * 1000000L;
+                try {
+                    synchronized (flushLock) {
+                        //Wakeups only end the wait once stopped or the interval changed
+                        long remaining = deadline - System.nanoTime();
+                        while (running && interval == flushInterval && remaining > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(flushLock, remaining);
+                            remaining = deadline - System.nanoTime();
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                if (!running) {
+                    break;
+                }
+                if (interval != flushInterval) {
+                    continue;
+                }
+                try {
+                    renew(2);
+                } catch (RuntimeException re) {
+                    //Keep renewing, the next store may succeed
+                }
+            }
+            synchronized (NodeManagerImpl.this) {
+                if (flusher == this) {
+                    flusher = null;
+                    removeShutdownHook();
+                }
+            }
+        }
     }
 }
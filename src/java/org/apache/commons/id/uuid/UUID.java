@@ -16,14 +16,17 @@
  */
 package org.apache.commons.id.uuid;
 
-import org.apache.commons.id.DecoderException;
 import org.apache.commons.id.DigestUtils;
-import org.apache.commons.id.Hex;
 
 import java.io.DataInput;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.StringTokenizer;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.MessageDigest;
 
 
 /**
@@ -39,30 +42,69 @@ import java.util.StringTokenizer;
 
 public class UUID implements Constants, Serializable, Comparable {
 	
-	/** byte array to store 128-bits composing this UUID */
-	private byte[] rawBytes = new byte[UUID_BYTE_LENGTH];
+	/** Mask flipping the sign bit of every byte but the first, used to compare bytes as signed values */
+	private static final long SIGNED_BYTES_MASK = 0x0080808080808080L;
 	
-	/** Holds node identifier for this UUID */
-	private Long node = null;
+	/** Values of the hexadecimal digit characters indexed by character, -1 for all other characters */
+	private static final byte[] HEX_VALUES = new byte['f' + 1];
 	
-	/** Holds timestamp for this UUID */
-	private long timestamp = -1;
+	static {
+		for (int i = 0; i < HEX_VALUES.length; i++) {
+			HEX_VALUES[i] = -1;
+		}
+		for (int i = 0; i < 10; i++) {
+			HEX_VALUES['0' + i] = (byte) i;
+		}
+		for (int i = 0; i < 6; i++) {
+			HEX_VALUES['a' + i] = (byte) (10 + i);
+			HEX_VALUES['A' + i] = (byte) (10 + i);
+		}
+	}
+	
+	/** Length of the longest name-based digest (SHA-1) */
+	static final int MAX_DIGEST_LENGTH = 20;
+	
+	/** Buffer of each thread receiving the namespace bytes and the name-based digest */
+	private static final ThreadLocal DIGEST_SCRATCH = new ThreadLocal() {
+		protected Object initialValue() {
+			return new byte[MAX_DIGEST_LENGTH];
+		}
+	};
 	
-	/** Holds the clock sequence field */
-	private Short clockSq = null;
+	/** The lower case hexadecimal digits */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 	
-	/** Holds the version field of this UUID */
-	private int version = -1;
+	/** The two hexadecimal characters of every byte value, indexed by twice the unsigned byte value */
+	private static final char[] HEX_PAIRS = new char[512];
+	
+	/** Shift of the nibble written at each position of the string format, from the most or least significant bits */
+	private static final int[] NIBBLE_SHIFTS = new int[UUID_FORMATTED_LENGTH];
+	
+	static {
+		for (int i = 0; i < 256; i++) {
+			HEX_PAIRS[i << 1] = HEX_DIGITS[i >>> 4];
+			HEX_PAIRS[(i << 1) + 1] = HEX_DIGITS[i & 0x0F];
+		}
+		int shift = 60;
+		for (int i = 0; i < UUID_FORMATTED_LENGTH; i++) {
+			if (i == FORMAT_POSITION3) {
+				shift = 60;
+			} else if (i != FORMAT_POSITION1 && i != FORMAT_POSITION2 && i != FORMAT_POSITION4) {
+				NIBBLE_SHIFTS[i] = shift;
+				shift -= 4;
+			}
+		}
+	}
 	
-	/** Holds the variant field of this UUID */
-	private int variant = -1;
+	/** The most significant 64 bits (bytes 0 to 7) of this UUID */
+	private final long mostSigBits;
 	
-	/** Holds the internal string value of the UUID */
-	private String stringValue = null;
+	/** The least significant 64 bits (bytes 8 to 15) of this UUID */
+	private final long leastSigBits;
 	
 	/** Constructs a nil UUID */
 	public UUID() {
-		super();
+		this(0L, 0L);
 	}
 	
 	/**
@@ -87,8 +129,7 @@ public class UUID implements Constants, Serializable, Comparable {
 	 * @param copyFrom the UUID to copy to create this UUID.
 	 */
 	public UUID(UUID copyFrom) {
-		super();
-		rawBytes = copyFrom.getRawBytes();
+		this(copyFrom.mostSigBits, copyFrom.leastSigBits);
 	}
 	
 	/**
@@ -102,8 +143,8 @@ public class UUID implements Constants, Serializable, Comparable {
 		if (byteArray.length != UUID_BYTE_LENGTH) {
 			throw new IllegalArgumentException("UUID must be contructed using a 16 byte array.");
 		}
-		// UUID must be immutable so a copy is used.
-		System.arraycopy(byteArray, 0, rawBytes, 0, UUID_BYTE_LENGTH);
+		mostSigBits = Bytes.toLong(byteArray, 0);
+		leastSigBits = Bytes.toLong(byteArray, 8);
 	}
 	
 	/**
@@ -114,7 +155,8 @@ public class UUID implements Constants, Serializable, Comparable {
 	 */
 	public UUID(DataInput input) throws IOException {
 		super();
-		input.readFully(rawBytes, 0, UUID_BYTE_LENGTH);
+		mostSigBits = input.readLong();
+		leastSigBits = input.readLong();
 	}
 	
 	/**
@@ -124,7 +166,73 @@ public class UUID implements Constants, Serializable, Comparable {
 	 * @param leastSignificant - the least significant 8 bytes of the uuid to be constructed.
 	 */
 	public UUID(long mostSignificant, long leastSignificant) {
-		rawBytes = Bytes.append(Bytes.toBytes(mostSignificant), Bytes.toBytes(leastSignificant));
+		super();
+		mostSigBits = mostSignificant;
+		leastSigBits = leastSignificant;
+	}
+	
+	/**
+	 * <p>Reads a UUID from the next 16 bytes of a buffer in network byte order, regardless of the byte order
+	 * set on the buffer.</p>
+	 *
+	 * @param buf the buffer to read from, its position is advanced by 16.
+	 * @return the UUID read.
+	 * @throws BufferUnderflowException if fewer than 16 bytes remain in the buffer.
+	 */
+	public static UUID readFrom(ByteBuffer buf) {
+		return readFrom(buf, LAYOUT_BIG_ENDIAN);
+	}
+	
+	/**
+	 * <p>Reads a UUID from the next 16 bytes of a buffer in the given binary layout, regardless of the byte
+	 * order set on the buffer.</p>
+	 *
+	 * @param buf the buffer to read from, its position is advanced by 16.
+	 * @param layout one of LAYOUT_BIG_ENDIAN, LAYOUT_LITTLE_ENDIAN or LAYOUT_MIXED_ENDIAN.
+	 * @return the UUID read.
+	 * @throws BufferUnderflowException if fewer than 16 bytes remain in the buffer.
+	 * @throws IllegalArgumentException if the layout is unknown.
+	 */
+	public static UUID readFrom(ByteBuffer buf, int layout) {
+		if (buf.remaining() < UUID_BYTE_LENGTH) {
+			throw new BufferUnderflowException();
+		}
+		checkLayout(layout);
+		long first = buf.getLong();
+		long second = buf.getLong();
+		if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+			first = Long.reverseBytes(first);
+			second = Long.reverseBytes(second);
+		}
+		return fromLayout(first, second, layout);
+	}
+	
+	/**
+	 * <p>Reads a UUID from 16 bytes of an array in network byte order.</p>
+	 *
+	 * @param bytes the array to read from.
+	 * @param offset the index of the first byte to read.
+	 * @return the UUID read.
+	 * @throws IllegalArgumentException if fewer than 16 bytes are available at <code>offset</code>.
+	 */
+	public static UUID readFrom(byte[] bytes, int offset) {
+		return readFrom(bytes, offset, LAYOUT_BIG_ENDIAN);
+	}
+	
+	/**
+	 * <p>Reads a UUID from 16 bytes of an array in the given binary layout.</p>
+	 *
+	 * @param bytes the array to read from.
+	 * @param offset the index of the first byte to read.
+	 * @param layout one of LAYOUT_BIG_ENDIAN, LAYOUT_LITTLE_ENDIAN or LAYOUT_MIXED_ENDIAN.
+	 * @return the UUID read.
+	 * @throws IllegalArgumentException if fewer than 16 bytes are available at <code>offset</code> or the
+	 * layout is unknown.
+	 */
+	public static UUID readFrom(byte[] bytes, int offset, int layout) {
+		checkRange(bytes, offset);
+		checkLayout(layout);
+		return fromLayout(Bytes.toLong(bytes, offset), Bytes.toLong(bytes, offset + 8), layout);
 	}
 	
 	/**
@@ -140,6 +248,8 @@ public class UUID implements Constants, Serializable, Comparable {
 	
 	/**
 	 *  <p>Parses a string for a UUID.</p>
+	 *  <p>The string is validated and decoded in a single pass straight into the two 64-bit halves of the UUID;
+	 *  an optional prefix ending with a colon such as <code>urn:uuid:</code> is skipped.</p>
 	 *
 	 *  @param uuidString the UUID formatted String to parse.
 	 *  @throws UUIDFormatException the String must be a properly formatted UUID String.
@@ -147,47 +257,66 @@ public class UUID implements Constants, Serializable, Comparable {
 	 */
 	public static UUID fromString(String uuidString)
 	throws UUIDFormatException {
-		String leanString = uuidString.toLowerCase();
-		UUID tmpUUID = null;
+		int start = 0;
+		int length = uuidString.length();
 		
 		//Handle prefixed UUIDs
 		// e.g. urn:uuid:f81d4fae-7dec-11d0-a765-00a0c91e6bf6
-		int pos = uuidString.lastIndexOf(":");
-		if (pos > 1) {
-			leanString = uuidString.substring(++pos, uuidString.length());
+		if (length != UUID_FORMATTED_LENGTH) {
+			int pos = uuidString.lastIndexOf(':');
+			if (pos > 1) {
+				start = pos + 1;
+			}
 		}
 		
 		//Check for 36 char length
-		if (leanString.length() != UUID_FORMATTED_LENGTH) {
+		if (length - start != UUID_FORMATTED_LENGTH) {
 			throw new UUIDFormatException(uuidString);
 		}
 		
-		//Check for 5 fields
-		StringTokenizer tok = new StringTokenizer(leanString, "-");
-		if ( tok.countTokens() != TOKENS_IN_UUID ) {
+		//Check the 4 separators between the 5 fields
+		if (uuidString.charAt(start + FORMAT_POSITION1) != '-'
+			|| uuidString.charAt(start + FORMAT_POSITION2) != '-'
+			|| uuidString.charAt(start + FORMAT_POSITION3) != '-'
+			|| uuidString.charAt(start + FORMAT_POSITION4) != '-') {
 			throw new UUIDFormatException(uuidString);
 		}
 		
-		//Remove the "-" from the formatted string and test token sizes
-		StringBuffer buf = new StringBuffer(UUID_UNFORMATTED_LENGTH);
-		String token = null;
-		int count = 0;
-		while (tok.hasMoreTokens()) {
-			token = tok.nextToken();
-			if (token.length() != TOKEN_LENGTHS[count++]) {
-				throw new UUIDFormatException(uuidString);
+		//Decode the hex digits of each field, any invalid digit sets the sign bit of the check value
+		long msb = 0;
+		long lsb = 0;
+		int check = 0;
+		int digit;
+		for (int i = start, end = start + FORMAT_POSITION3; i < end; i++) {
+			if (i == start + FORMAT_POSITION1 || i == start + FORMAT_POSITION2) {
+				continue;
 			}
-			buf.append(token);
+			digit = hexDigit(uuidString.charAt(i));
+			check |= digit;
+			msb = (msb << 4) | digit;
 		}
-		
-		//Create from the hex value
-		try {
-			char[] chars = buf.toString().toCharArray();
-			tmpUUID = new UUID(Hex.decodeHex(chars));
-		} catch (DecoderException de) {
-			throw new UUIDFormatException(uuidString + ": " + de.getMessage());
+		for (int i = start + FORMAT_POSITION3 + 1, end = start + UUID_FORMATTED_LENGTH; i < end; i++) {
+			if (i == start + FORMAT_POSITION4) {
+				continue;
+			}
+			digit = hexDigit(uuidString.charAt(i));
+			check |= digit;
+			lsb = (lsb << 4) | digit;
+		}
+		if (check < 0) {
+			throw new UUIDFormatException(uuidString + ": illegal hexadecimal character");
 		}
-		return tmpUUID;
+		return new UUID(msb, lsb);
+	}
+	
+	/**
+	 * <p>Returns the value of a hexadecimal character, or -1 if it is not a hexadecimal digit.</p>
+	 *
+	 * @param ch the character to decode.
+	 * @return the value of the hexadecimal digit, or -1.
+	 */
+	private static int hexDigit(char ch) {
+		return ch < HEX_VALUES.length ? HEX_VALUES[ch] : -1;
 	}
 	
 	/**
@@ -196,20 +325,9 @@ public class UUID implements Constants, Serializable, Comparable {
 	 * @return a string representation of the UUID formatted according to the specification.
 	 */
 	public String toString() {
-		//set string value if not set
-		if (stringValue == null) {
-			StringBuffer buf = new StringBuffer(new String(Hex.encodeHex(rawBytes)));
-			while (buf.length() != UUID_UNFORMATTED_LENGTH) {
-				buf.insert(0, "0");
-			}
-			buf.ensureCapacity(UUID_FORMATTED_LENGTH);
-			buf.insert(FORMAT_POSITION1, '-');
-			buf.insert(FORMAT_POSITION2, '-');
-			buf.insert(FORMAT_POSITION3, '-');
-			buf.insert(FORMAT_POSITION4, '-');
-			stringValue = buf.toString();
-		}
-		return stringValue;
+		char[] chars = new char[UUID_FORMATTED_LENGTH];
+		formatTo(chars, 0);
+		return new String(chars);
 	}
 	
 	/**
@@ -219,7 +337,75 @@ public class UUID implements Constants, Serializable, Comparable {
 	 * @return Returns the urn string representation of the UUID
 	 */
 	public String toUrn() {
-		return URN_PREFIX + this.toString();
+		char[] chars = new char[URN_PREFIX.length() + UUID_FORMATTED_LENGTH];
+		URN_PREFIX.getChars(0, URN_PREFIX.length(), chars, 0);
+		formatTo(chars, URN_PREFIX.length());
+		return new String(chars);
+	}
+	
+	/**
+	 * <p>Writes the 36 character string representation of the UUID into a char array.</p>
+	 *
+	 * @param dst the array to write to.
+	 * @param off the index in <code>dst</code> of the first character to write.
+	 * @return the index in <code>dst</code> following the last character written.
+	 * @throws IllegalArgumentException if <code>dst</code> has not room for 36 characters at <code>off</code>.
+	 */
+	public int formatTo(char[] dst, int off) {
+		if (off < 0 || dst.length - off < UUID_FORMATTED_LENGTH) {
+			throw new IllegalArgumentException("UUID must be formatted to 36 chars.");
+		}
+		int pos = formatHex(mostSigBits, 56, 4, dst, off);
+		dst[pos++] = '-';
+		pos = formatHex(mostSigBits, 24, 2, dst, pos);
+		dst[pos++] = '-';
+		pos = formatHex(mostSigBits, 8, 2, dst, pos);
+		dst[pos++] = '-';
+		pos = formatHex(leastSigBits, 56, 2, dst, pos);
+		dst[pos++] = '-';
+		return formatHex(leastSigBits, 40, 6, dst, pos);
+	}
+	
+	/**
+	 * <p>Appends the 36 character string representation of the UUID, without creating a String.</p>
+	 *
+	 * @param out the Appendable to write to.
+	 * @throws IOException if <code>out</code> throws an IOException.
+	 */
+	public void formatTo(Appendable out) throws IOException {
+		for (int i = 0; i < UUID_FORMATTED_LENGTH; i++) {
+			long bits = i < FORMAT_POSITION3 ? mostSigBits : leastSigBits;
+			switch (i) {
+				case FORMAT_POSITION1 :
+				case FORMAT_POSITION2 :
+				case FORMAT_POSITION3 :
+				case FORMAT_POSITION4 :
+					out.append('-');
+					break;
+				default :
+					out.append(HEX_DIGITS[(int) (bits >>> NIBBLE_SHIFTS[i]) & 0x0F]);
+					break;
+			}
+		}
+	}
+	
+	/**
+	 * <p>Writes bytes of a long as pairs of hexadecimal characters, most significant byte first.</p>
+	 *
+	 * @param bits the long holding the bytes.
+	 * @param shift the shift of the first byte to write.
+	 * @param count the number of bytes to write.
+	 * @param dst the array to write to.
+	 * @param pos the index of the first character to write.
+	 * @return the index following the last character written.
+	 */
+	private static int formatHex(long bits, int shift, int count, char[] dst, int pos) {
+		for (int i = 0; i < count; i++, shift -= 8) {
+			int pair = ((int) (bits >>> shift) & 0xFF) << 1;
+			dst[pos++] = HEX_PAIRS[pair];
+			dst[pos++] = HEX_PAIRS[pair + 1];
+		}
+		return pos;
 	}
 	
 	/**
@@ -232,7 +418,8 @@ public class UUID implements Constants, Serializable, Comparable {
 		if (!(obj instanceof UUID)) {
 			return false;
 		}
-		return Bytes.areEqual( ((UUID) obj).getRawBytes(), rawBytes);
+		UUID other = (UUID) obj;
+		return mostSigBits == other.mostSigBits && leastSigBits == other.leastSigBits;
 	}
 	
 	/**
@@ -243,8 +430,12 @@ public class UUID implements Constants, Serializable, Comparable {
 	public int hashCode() {
 		int iConstant = 37;
 		int iTotal = 17;
-		for (int i = 0; i < rawBytes.length; i++) {
-			iTotal = iTotal * iConstant + rawBytes[i];
+		//Same value as hashing the 16 raw bytes in order
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			iTotal = iTotal * iConstant + (byte) (mostSigBits >>> shift);
+		}
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			iTotal = iTotal * iConstant + (byte) (leastSigBits >>> shift);
 		}
 		return iTotal;
 	}
@@ -258,7 +449,29 @@ public class UUID implements Constants, Serializable, Comparable {
 		if (!(compareTo instanceof UUID)) {
 			throw new ClassCastException();
 		}
-		return (Bytes.compareTo(rawBytes, ((UUID) compareTo).getRawBytes()));
+		UUID other = (UUID) compareTo;
+		//Orders the same as Bytes.compareTo on the raw bytes, which compares signed bytes
+		int cmp = compareSignedBytes(mostSigBits, other.mostSigBits);
+		if (cmp == 0) {
+			cmp = compareSignedBytes(leastSigBits, other.leastSigBits);
+		}
+		return cmp;
+	}
+	
+	/**
+	 * <p>Compares the 8 bytes packed in two longs lexicographically as signed bytes.</p>
+	 *
+	 * @param lhs - left hand value in the comparison operation.
+	 * @param rhs - right hand value in the comparison operation.
+	 * @return -1, 0 or +1 as <code>lhs</code> is less than, equal to, or greater than <code>rhs</code>.
+	 */
+	private static int compareSignedBytes(long lhs, long rhs) {
+		lhs ^= SIGNED_BYTES_MASK;
+		rhs ^= SIGNED_BYTES_MASK;
+		if (lhs == rhs) {
+			return 0;
+		}
+		return lhs < rhs ? -1 : +1;
 	}
 	
 	/**
@@ -270,14 +483,10 @@ public class UUID implements Constants, Serializable, Comparable {
 	 */
 	public int clockSequence() throws UnsupportedOperationException {
 		//if variant is not mealling leach salz throw unsupported operation exception
-		if (variant() != VARIANT_IETF_DRAFT || version() != VERSION_ONE) {
+		if (!isTimeBased()) {
 			throw new UnsupportedOperationException(WRONG_VAR_VER_MSG);
 		}
-		if (clockSq == null) {
-			byte[] b = {((byte) (rawBytes[8] & 0x3F)), rawBytes[9]};
-			clockSq = new Short(Bytes.toShort(b));
-		}
-		return clockSq.intValue();
+		return (int) ((leastSigBits >>> 48) & 0x3FFF);
 	}
 	
 	/**
@@ -288,15 +497,14 @@ public class UUID implements Constants, Serializable, Comparable {
 	 *   <li>VERSION_THREE - Name based UUID with MD5 hashing.</li>
 	 *   <li>VERSION_FOUR - Random based UUID.</li>
 	 *   <li>VERSION_FIVE - Name based UUID with SHA-1 hashing.</li>
+	 *   <li>VERSION_SIX - Time-based UUID with the timestamp stored most significant bits first.</li>
+	 *   <li>VERSION_SEVEN - Unix epoch millisecond timestamp followed by random bits.</li>
 	 * </ul>
 	 * </p>
 	 * @return the version of the UUID.
 	 */
 	public int version() {
-		if (version == -1) {
-			version = ((rawBytes[6] >>> 4) & 0x0F);
-		}
-		return version;
+		return (int) ((mostSigBits >>> 12) & 0x0F);
 	}
 	
 	/**
@@ -309,18 +517,14 @@ public class UUID implements Constants, Serializable, Comparable {
 	 * @see UUID#VARIANT_FUTURE
 	 */
 	public int variant() {
-		if (variant == -1) {
-			if ((rawBytes[8] & 0x80) == 0x0) {
-				variant = VARIANT_NCS_COMPAT;
-			} else if ((rawBytes[8] & 0x40) == 0x0) {
-				variant = VARIANT_IETF_DRAFT;
-			} else if ((rawBytes[8] & 0x20) == 0x0) {
-				variant = VARIANT_MS;
-			} else {
-				variant = VARIANT_FUTURE;
-			}
+		if (leastSigBits >= 0) {
+			return VARIANT_NCS_COMPAT;
+		} else if ((leastSigBits & 0x4000000000000000L) == 0) {
+			return VARIANT_IETF_DRAFT;
+		} else if ((leastSigBits & 0x2000000000000000L) == 0) {
+			return VARIANT_MS;
 		}
-		return variant;
+		return VARIANT_FUTURE;
 	}
 	
 	/**
@@ -332,15 +536,10 @@ public class UUID implements Constants, Serializable, Comparable {
 	 */
 	public long node() throws UnsupportedOperationException {
 		//if variant is not mealling leach salz throw unsupported operation exception
-		if (variant() != VARIANT_IETF_DRAFT || version() != VERSION_ONE) {
+		if (!isTimeBased()) {
 			throw new UnsupportedOperationException(WRONG_VAR_VER_MSG);
 		}
-		if (node == null) {
-			byte[] b = new byte[8];
-			System.arraycopy(rawBytes, 10, b, 2, 6);
-			node = new Long((Bytes.toLong(b) & 0xFFFFFFFFFFFFL));
-		}
-		return node.longValue();
+		return leastSigBits & 0xFFFFFFFFFFFFL;
 	}
 	
 	/**
@@ -352,29 +551,26 @@ public class UUID implements Constants, Serializable, Comparable {
 	 */
 	public long timestamp() throws UnsupportedOperationException {
 		//if variant is not mealling leach salz throw unsupported operation exception
-		if (variant() != VARIANT_IETF_DRAFT || version() != VERSION_ONE) {
+		if (!isTimeBased()) {
 			throw new UnsupportedOperationException(WRONG_VAR_VER_MSG);
 		}
-		if (timestamp == -1) {
-			byte[] longVal = new byte[8];
-			System.arraycopy(rawBytes, TIME_HI_START_POS, longVal, TIME_HI_TS_POS, TIME_HI_BYTE_LEN);
-			System.arraycopy(rawBytes, TIME_MID_START_POS, longVal, TIME_MID_TS_POS, TIME_MID_BYTE_LEN);
-			System.arraycopy(rawBytes, TIME_LOW_START_POS, longVal, TIME_LOW_TS_POS, TIME_LOW_BYTE_LEN);
-			longVal[TIME_HI_TS_POS] &= 0x0F;
-			timestamp = Bytes.toLong(longVal);
+		if (version() == VERSION_SIX) {
+			return ((mostSigBits >>> 16) << 12) | (mostSigBits & 0x0FFFL);
 		}
-		return timestamp;
+		long timeLow = mostSigBits >>> 32;
+		long timeMid = (mostSigBits >>> 16) & 0xFFFFL;
+		long timeHi = mostSigBits & 0x0FFFL;
+		return (timeHi << 48) | (timeMid << 32) | timeLow;
 	}
 	
 	/**
-	 * <p>Returns the least significant bits stored in the uuid's internal structure.</p>
+	 * <p>Returns whether this is an IETF variant, time-based (version 1 or 6) UUID.</p>
 	 *
-	 * @return the least significant bits stored in the uuid's internal structure.
+	 * @return whether this UUID holds a timestamp, clock sequence and node identifier.
 	 */
-	long getLeastSignificantBits()  {
-		byte[] lsb = new byte[8];
-		System.arraycopy(rawBytes, 8, lsb, 0, 8);
-		return Bytes.toLong(lsb);
+	private boolean isTimeBased() {
+		int version = version();
+		return variant() == VARIANT_IETF_DRAFT && (version == VERSION_ONE || version == VERSION_SIX);
 	}
 	
 	/**
@@ -382,10 +578,17 @@ public class UUID implements Constants, Serializable, Comparable {
 	 *
 	 * @return the least significant bits stored in the uuid's internal structure.
 	 */
-	long getMostSignificantBits()  {
-		byte[] msb = new byte[8];
-		System.arraycopy(rawBytes, 0, msb, 0, 8);
-		return Bytes.toLong(msb);
+	public long getLeastSignificantBits()  {
+		return leastSigBits;
+	}
+	
+	/**
+	 * <p>Returns the most significant bits stored in the uuid's internal structure.</p>
+	 *
+	 * @return the most significant bits stored in the uuid's internal structure.
+	 */
+	public long getMostSignificantBits()  {
+		return mostSigBits;
 	}
 	
 	/**
@@ -395,10 +598,206 @@ public class UUID implements Constants, Serializable, Comparable {
 	 */
 	public byte[] getRawBytes() {
 		byte[] ret = new byte[UUID_BYTE_LENGTH];
-		System.arraycopy(rawBytes, 0, ret, 0, UUID_BYTE_LENGTH);
+		Bytes.toBytes(mostSigBits, ret, 0);
+		Bytes.toBytes(leastSigBits, ret, 8);
 		return ret;
 	}
 	
+	/**
+	 * <p>Writes the 16 bytes of this UUID to a buffer in network byte order, regardless of the byte order set on
+	 * the buffer.</p>
+	 *
+	 * @param buf the buffer to write to, its position is advanced by 16.
+	 * @throws BufferOverflowException if fewer than 16 bytes remain in the buffer.
+	 */
+	public void writeTo(ByteBuffer buf) {
+		writeTo(buf, LAYOUT_BIG_ENDIAN);
+	}
+	
+	/**
+	 * <p>Writes the 16 bytes of this UUID to a buffer in the given binary layout, regardless of the byte order
+	 * set on the buffer.</p>
+	 *
+	 * @param buf the buffer to write to, its position is advanced by 16.
+	 * @param layout one of LAYOUT_BIG_ENDIAN, LAYOUT_LITTLE_ENDIAN or LAYOUT_MIXED_ENDIAN.
+	 * @throws BufferOverflowException if fewer than 16 bytes remain in the buffer.
+	 * @throws IllegalArgumentException if the layout is unknown.
+	 */
+	public void writeTo(ByteBuffer buf, int layout) {
+		if (buf.remaining() < UUID_BYTE_LENGTH) {
+			throw new BufferOverflowException();
+		}
+		checkLayout(layout);
+		long first = firstLayoutWord(layout);
+		long second = secondLayoutWord(layout);
+		if (buf.order() == ByteOrder.LITTLE_ENDIAN) {
+			first = Long.reverseBytes(first);
+			second = Long.reverseBytes(second);
+		}
+		buf.putLong(first);
+		buf.putLong(second);
+	}
+	
+	/**
+	 * <p>Writes the 16 bytes of this UUID to an array in network byte order.</p>
+	 *
+	 * @param bytes the array to write to.
+	 * @param offset the index of the first byte to write.
+	 * @throws IllegalArgumentException if fewer than 16 bytes are available at <code>offset</code>.
+	 */
+	public void writeTo(byte[] bytes, int offset) {
+		writeTo(bytes, offset, LAYOUT_BIG_ENDIAN);
+	}
+	
+	/**
+	 * <p>Writes the 16 bytes of this UUID to an array in the given binary layout.</p>
+	 *
+	 * @param bytes the array to write to.
+	 * @param offset the index of the first byte to write.
+	 * @param layout one of LAYOUT_BIG_ENDIAN, LAYOUT_LITTLE_ENDIAN or LAYOUT_MIXED_ENDIAN.
+	 * @throws IllegalArgumentException if fewer than 16 bytes are available at <code>offset</code> or the
+	 * layout is unknown.
+	 */
+	public void writeTo(byte[] bytes, int offset, int layout) {
+		checkRange(bytes, offset);
+		checkLayout(layout);
+		Bytes.toBytes(firstLayoutWord(layout), bytes, offset);
+		Bytes.toBytes(secondLayoutWord(layout), bytes, offset + 8);
+	}
+	
+	/**
+	 * <p>Returns the first 8 bytes of this UUID in the given binary layout, read in network byte order.</p>
+	 *
+	 * @param layout a valid binary layout.
+	 * @return the first 8 bytes of this UUID in the given binary layout.
+	 */
+	private long firstLayoutWord(int layout) {
+		switch (layout) {
+			case LAYOUT_LITTLE_ENDIAN :
+				return Long.reverseBytes(leastSigBits);
+			case LAYOUT_MIXED_ENDIAN :
+				return swapTimeFields(mostSigBits);
+			default :
+				return mostSigBits;
+		}
+	}
+	
+	/**
+	 * <p>Returns the last 8 bytes of this UUID in the given binary layout, read in network byte order.</p>
+	 *
+	 * @param layout a valid binary layout.
+	 * @return the last 8 bytes of this UUID in the given binary layout.
+	 */
+	private long secondLayoutWord(int layout) {
+		if (layout == LAYOUT_LITTLE_ENDIAN) {
+			return Long.reverseBytes(mostSigBits);
+		}
+		return leastSigBits;
+	}
+	
+	/**
+	 * <p>Returns the UUID stored as two words of 8 bytes, read in network byte order, in the given binary
+	 * layout.</p>
+	 *
+	 * @param first the first 8 bytes.
+	 * @param second the last 8 bytes.
+	 * @param layout a valid binary layout.
+	 * @return the UUID stored in the two words.
+	 */
+	private static UUID fromLayout(long first, long second, int layout) {
+		switch (layout) {
+			case LAYOUT_LITTLE_ENDIAN :
+				return new UUID(Long.reverseBytes(second), Long.reverseBytes(first));
+			case LAYOUT_MIXED_ENDIAN :
+				return new UUID(swapTimeFields(first), second);
+			default :
+				return new UUID(first, second);
+		}
+	}
+	
+	/**
+	 * <p>Reverses the byte order of the time_low, time_mid and time_hi_and_version fields, converting the most
+	 * significant bits between the network and the mixed endian layout.</p>
+	 *
+	 * @param bits the most significant 8 bytes in one layout.
+	 * @return the most significant 8 bytes in the other layout.
+	 */
+	private static long swapTimeFields(long bits) {
+		return ((long) Integer.reverseBytes((int) (bits >>> 32)) << 32)
+			| ((long) (Short.reverseBytes((short) (bits >>> 16)) & 0xFFFF) << 16)
+			| (Short.reverseBytes((short) bits) & 0xFFFFL);
+	}
+	
+	/**
+	 * <p>Checks that 16 bytes are available in an array at an offset.</p>
+	 *
+	 * @param bytes the array.
+	 * @param offset the index of the first byte.
+	 * @throws IllegalArgumentException if fewer than 16 bytes are available at <code>offset</code>.
+	 */
+	private static void checkRange(byte[] bytes, int offset) {
+		if (offset < 0 || bytes.length - offset < UUID_BYTE_LENGTH) {
+			throw new IllegalArgumentException("UUID must be read from or written to 16 bytes.");
+		}
+	}
+	
+	/**
+	 * <p>Checks that a number of UUID's to generate is not negative.</p>
+	 *
+	 * @param count the number of UUID's.
+	 * @return the number of UUID's.
+	 * @throws IllegalArgumentException if the count is negative.
+	 */
+	static int checkCount(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Number of UUIDs must not be negative: " + count);
+		}
+		return count;
+	}
+	
+	/**
+	 * <p>Checks that two arrays of most and least significant bits can hold a number of UUID's at an offset.</p>
+	 *
+	 * @param mostSigBits the array of most significant bits.
+	 * @param leastSigBits the array of least significant bits.
+	 * @param offset the index of the first UUID.
+	 * @param length the number of UUID's.
+	 * @throws IllegalArgumentException if either array cannot hold <code>length</code> UUID's at
+	 * <code>offset</code>.
+	 */
+	static void checkRange(long[] mostSigBits, long[] leastSigBits, int offset, int length) {
+		if (offset < 0 || length < 0 || mostSigBits.length - offset < length || leastSigBits.length - offset < length) {
+			throw new IllegalArgumentException("Arrays cannot hold " + length + " UUIDs at offset " + offset);
+		}
+	}
+	
+	/**
+	 * <p>Returns the UUID's held by two arrays of most and least significant bits.</p>
+	 *
+	 * @param mostSigBits the array of most significant bits.
+	 * @param leastSigBits the array of least significant bits, as long as <code>mostSigBits</code>.
+	 * @return the UUID's held by the arrays.
+	 */
+	static UUID[] toUUIDs(long[] mostSigBits, long[] leastSigBits) {
+		UUID[] uuids = new UUID[mostSigBits.length];
+		for (int i = 0; i < uuids.length; i++) {
+			uuids[i] = new UUID(mostSigBits[i], leastSigBits[i]);
+		}
+		return uuids;
+	}
+	
+	/**
+	 * <p>Checks that the binary layout is known.</p>
+	 *
+	 * @param layout the binary layout.
+	 * @throws IllegalArgumentException if the layout is unknown.
+	 */
+	private static void checkLayout(int layout) {
+		if (layout != LAYOUT_BIG_ENDIAN && layout != LAYOUT_LITTLE_ENDIAN && layout != LAYOUT_MIXED_ENDIAN) {
+			throw new IllegalArgumentException("Unknown UUID layout " + layout);
+		}
+	}
+	
 	/**
 	 * <p>Returns a new version 4 UUID, based upon Random bits.</p>
 	 *
@@ -417,6 +816,26 @@ public class UUID implements Constants, Serializable, Comparable {
 		return VersionOneGenerator.getInstance().nextUUID();
 	}
 	
+	/**
+	 * <p>Returns a new version 6 UUID, based upon node identifier and time stamp, which sorts in generation
+	 * order.</p>
+	 *
+	 * @return a new version 6 UUID, based upon node identifier and time stamp.
+	 */
+	public static UUID timeOrderedUUID() {
+		return VersionSixGenerator.getInstance().nextUUID();
+	}
+	
+	/**
+	 * <p>Returns a new version 7 UUID, based upon Unix epoch milliseconds and Random bits, which sorts in
+	 * generation order.</p>
+	 *
+	 * @return a new version 7 UUID, based upon Unix epoch milliseconds and Random bits.
+	 */
+	public static UUID unixTimeOrderedUUID() {
+		return VersionSevenGenerator.getInstance().nextUUID();
+	}
+	
 	/**
 	 * <p>Returns a new version three (MD5) or five (SHA-1) UUID, using the specified encoding
 	 *  given a name and the namespace's UUID.</p>
@@ -427,37 +846,82 @@ public class UUID implements Constants, Serializable, Comparable {
 	 * @return a new version three UUID given a name and the namespace's UUID.
 	 */
 	public static UUID nameUUIDFromString(String name, UUID namespace, String encoding) {
-		byte[] nameAsBytes = name.getBytes();
-		byte[] concat = new byte[UUID_BYTE_LENGTH + nameAsBytes.length];
-		System.arraycopy(namespace.getRawBytes(), 0, concat, 0, UUID_BYTE_LENGTH);
-		System.arraycopy(nameAsBytes, 0, concat, UUID_BYTE_LENGTH, nameAsBytes.length);
-		
-		byte[] raw = null;
-		
-		if(encoding.equals(UUID.MD5_ENCODING)) {
-			raw = DigestUtils.md5(concat);
-		}
-		else if(encoding.equals(UUID.SHA1_ENCODING)) {
-			byte[] shaDigest = DigestUtils.sha(concat);
-			// Truncate digest to 16 bytes (SHA-1 returns a 20-byte digest)
-			raw = new byte[16];
-			System.arraycopy(shaDigest, 0, raw, 0, 16); 
-		}
-		else {
+		String algorithm;
+		if (encoding.equals(UUID.MD5_ENCODING)) {
+			algorithm = "MD5";
+		} else if (encoding.equals(UUID.SHA1_ENCODING)) {
+			algorithm = "SHA";
+		} else {
 			throw new RuntimeException("Unsupported encoding " + encoding);
 		}
-		
-		
-		//Set version (version 3 and version 5 are identical on a bit-level,
-		//thus we only need ever set one of them
-		raw[TIME_HI_AND_VERSION_BYTE_6] &= 0x0F;
-		raw[TIME_HI_AND_VERSION_BYTE_6] |= (UUID.VERSION_THREE << 4);
-		
+		//Stream the namespace and name into the thread's digest, without concatenating them
+		MessageDigest digest = DigestUtils.getThreadDigest(algorithm);
+		byte[] scratch = (byte[]) DIGEST_SCRATCH.get();
+		namespace.writeTo(scratch, 0);
+		digest.update(scratch, 0, UUID_BYTE_LENGTH);
+		digest.update(name.getBytes());
+		return fromDigest(digest, scratch);
+	}
+	
+	/**
+	 * <p>Completes a name-based digest and returns the UUID made of its first 16 bytes (SHA-1 returns a 20-byte
+	 * digest).</p>
+	 *
+	 * @param digest the MD5 or SHA-1 digest updated with the namespace and name.
+	 * @param scratch a buffer of at least <code>MAX_DIGEST_LENGTH</code> bytes receiving the digest.
+	 * @return the name-based UUID, stamped version three for both digests.
+	 */
+	static UUID fromDigest(MessageDigest digest, byte[] scratch) {
+		return fromDigest(digest, scratch, VERSION_THREE);
+	}
+	
+	/**
+	 * <p>Completes a name-based digest and returns the UUID of the given version made of its first 16 bytes.</p>
+	 *
+	 * @param digest the MD5 or SHA-1 digest updated with the namespace and name.
+	 * @param scratch a buffer of at least <code>MAX_DIGEST_LENGTH</code> bytes receiving the digest.
+	 * @param version the version to stamp, 3 for MD5 or 5 for SHA-1 as RFC 4122 specifies.
+	 * @return the name-based UUID.
+	 */
+	static UUID fromDigest(MessageDigest digest, byte[] scratch, int version) {
+		finishDigest(digest, scratch);
+		return new UUID(nameMostSigBits(scratch, version), nameLeastSigBits(scratch));
+	}
+	
+	/**
+	 * <p>Completes a name-based digest into a buffer.</p>
+	 *
+	 * @param digest the MD5 or SHA-1 digest updated with the namespace and name.
+	 * @param scratch a buffer of at least <code>MAX_DIGEST_LENGTH</code> bytes receiving the digest.
+	 */
+	static void finishDigest(MessageDigest digest, byte[] scratch) {
+		try {
+			digest.digest(scratch, 0, scratch.length);
+		} catch (DigestException e) {
+			throw new RuntimeException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * <p>Returns the most significant bits of the name-based UUID of a digest.</p>
+	 *
+	 * @param digest the buffer holding the digest.
+	 * @param version the version to set.
+	 * @return the most significant bits, with the version set.
+	 */
+	static long nameMostSigBits(byte[] digest, int version) {
+		return (Bytes.toLong(digest, 0) & 0xFFFFFFFFFFFF0FFFL) | ((long) version << 12);
+	}
+	
+	/**
+	 * <p>Returns the least significant bits of the name-based UUID of a digest.</p>
+	 *
+	 * @param digest the buffer holding the digest.
+	 * @return the least significant bits, with the variant set.
+	 */
+	static long nameLeastSigBits(byte[] digest) {
 		//Set variant
-		raw[CLOCK_SEQ_HI_AND_RESERVED_BYTE_8] &= 0x3F; //0011 1111
-		raw[CLOCK_SEQ_HI_AND_RESERVED_BYTE_8] |= 0x80; //1000 0000
-		
-		return new UUID(raw);
+		return (Bytes.toLong(digest, 8) & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
 	}
 	
 	/**
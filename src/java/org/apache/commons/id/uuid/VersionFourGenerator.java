@@ -34,6 +34,16 @@ import java.util.Random;
  * constructor therefore creates a static member to hold the SecureRandom.
  * The first call to getInstance may take time; subsequent calls should return
  * quickly.</p>
+ * <p>By default all threads share the same <code>Random</code> and
+ * <code>SecureRandom</code>, which serializes concurrent callers. Calling
+ * <code>setPerThreadRandom(true)</code> gives each thread its own independently
+ * seeded generators instead, so that random UUID's are generated in parallel.
+ * Each thread then pays the cost of instantiating its own SecureRandom once.</p>
+ * <p>Secure generation can further be buffered with
+ * <code>setSecureBufferSize</code>: each thread then draws random bytes from its
+ * SecureRandom in large blocks and slices 16 bytes off per UUID, and replaces
+ * its SecureRandom by a freshly seeded one every
+ * <code>setSecureReseedInterval</code> bytes.</p>
  *
  * @author Commons-Id team
  * @version $Revision: 480488 $ $Date: 2006-11-29 00:57:26 -0800 (Wed, 29 Nov 2006) $
@@ -41,6 +51,9 @@ import java.util.Random;
  */
 public final class VersionFourGenerator implements IdentifierGenerator, Constants {
 
+        /** The maximum number of UUID's whose random bits are drawn at once */
+        private static final int MAX_BULK_UUIDS = 256;
+
         /** Random used to generate UUID's */
         private static final Random regularRandom = new Random();
 
@@ -52,6 +65,28 @@ public final class VersionFourGenerator implements IdentifierGenerator, Constant
 
         /** The pseudo-random number generator package name to use */
         private static String usePRNGPackage = "SUN";
+
+        /** Whether each thread uses its own Random and SecureRandom */
+        private static volatile boolean perThreadRandom = false;
+
+        /** The Random of each thread, seeded independently */
+        private static final ThreadLocal threadRandom = new ThreadLocal() {
+            protected Object initialValue() {
+                return new Random();
+            }
+        };
+
+        /** The SecureRandom of each thread, replaced when the PRNG provider changes */
+        private static volatile ThreadLocal threadSecureRandom = new ThreadLocal();
+
+        /** The number of secure random bytes drawn at once per thread, 0 to disable buffering */
+        private static volatile int secureBufferSize = 0;
+
+        /** The number of bytes drawn from a buffered SecureRandom before it is replaced, 0 for never */
+        private static volatile long secureReseedInterval = 0;
+
+        /** The EntropyBuffer of each thread, replaced when the buffering configuration changes */
+        private static volatile ThreadLocal threadEntropyBuffer = new ThreadLocal();
         
         private static VersionFourGenerator generator;
 
@@ -113,28 +148,14 @@ public final class VersionFourGenerator implements IdentifierGenerator, Constant
          * @return a new version four UUID using either <code>SecureRandom</code> or <code>Random</code>.
          */
         private UUID nextUUID(boolean secure) {
-            byte[] raw = new byte[UUID_BYTE_LENGTH];
-            if (secure) {
-                //Initialize the secure random if null.
-                if (secureRandom == null) {
-                    try {
-                        if (usePRNGPackage != null) {
-                            secureRandom = SecureRandom.getInstance(usePRNG, usePRNGPackage);
-                        } else {
-                            secureRandom = SecureRandom.getInstance(usePRNG);
-                        }
-                    } catch (NoSuchAlgorithmException nsae) {
-                        secure = false; //Fail back to default PRNG/Random
-                    } catch (NoSuchProviderException nspe) {
-                        secure = false; //Fail back to default PRNG/Random
-                    }
+            if (secure && secureBufferSize > 0) {
+                EntropyBuffer buffer = threadEntropyBuffer();
+                if (buffer != null) {
+                    return new UUID(mostSigBits(buffer.nextLong()), leastSigBits(buffer.nextLong()));
                 }
-                if (secureRandom != null) { 
-                    secureRandom.nextBytes(raw); 
-                }                
-            } else {
-                regularRandom.nextBytes(raw);
             }
+            byte[] raw = new byte[UUID_BYTE_LENGTH];
+            random(secure).nextBytes(raw);
 
             raw[TIME_HI_AND_VERSION_BYTE_6] &= 0x0F;
             raw[TIME_HI_AND_VERSION_BYTE_6] |= (UUID.VERSION_FOUR << 4);
@@ -145,6 +166,127 @@ public final class VersionFourGenerator implements IdentifierGenerator, Constant
             return new UUID(raw);
         }
 
+        /**
+         * <p>Returns new version four UUID's.</p>
+         *
+         * @param count the number of UUID's to generate.
+         * @return an array of <code>count</code> new version four UUID's.
+         * @throws IllegalArgumentException if the count is negative.
+         */
+        public UUID[] nextUUIDs(int count) {
+            return nextUUIDs(count, false);
+        }
+
+        /**
+         * <p>Returns new version four UUID's using either <code>SecureRandom</code> or <code>Random</code>.
+         * The random bits of many UUID's are drawn with a single call to the random generator.</p>
+         *
+         * @param count the number of UUID's to generate.
+         * @param secure boolean flag indicating whether to use <code>SecureRandom</code> or <code>Random</code>.
+         * @return an array of <code>count</code> new version four UUID's.
+         * @throws IllegalArgumentException if the count is negative.
+         */
+        public UUID[] nextUUIDs(int count, boolean secure) {
+            long[] mostSigBits = new long[UUID.checkCount(count)];
+            long[] leastSigBits = new long[count];
+            nextUUIDs(mostSigBits, leastSigBits, 0, count, secure);
+            return UUID.toUUIDs(mostSigBits, leastSigBits);
+        }
+
+        /**
+         * <p>Generates new version four UUID's into two arrays holding their most and least significant bits,
+         * without creating UUID instances.</p>
+         *
+         * @param mostSigBits the array receiving the most significant bits.
+         * @param leastSigBits the array receiving the least significant bits.
+         * @param offset the index of the first UUID to generate in the arrays.
+         * @param length the number of UUID's to generate.
+         * @throws IllegalArgumentException if the arrays cannot hold <code>length</code> UUID's at
+         * <code>offset</code>.
+         */
+        public void nextUUIDs(long[] mostSigBits, long[] leastSigBits, int offset, int length) {
+            nextUUIDs(mostSigBits, leastSigBits, offset, length, false);
+        }
+
+        /**
+         * <p>Generates new version four UUID's into two arrays holding their most and least significant bits,
+         * using either <code>SecureRandom</code> or <code>Random</code>. The random bits of up to
+         * <code>MAX_BULK_UUIDS</code> UUID's are drawn with a single call to the random generator.</p>
+         *
+         * @param mostSigBits the array receiving the most significant bits.
+         * @param leastSigBits the array receiving the least significant bits.
+         * @param offset the index of the first UUID to generate in the arrays.
+         * @param length the number of UUID's to generate.
+         * @param secure boolean flag indicating whether to use <code>SecureRandom</code> or <code>Random</code>.
+         * @throws IllegalArgumentException if the arrays cannot hold <code>length</code> UUID's at
+         * <code>offset</code>.
+         */
+        public void nextUUIDs(long[] mostSigBits, long[] leastSigBits, int offset, int length, boolean secure) {
+            UUID.checkRange(mostSigBits, leastSigBits, offset, length);
+            int end = offset + length;
+            if (secure && secureBufferSize > 0) {
+                EntropyBuffer buffer = threadEntropyBuffer();
+                if (buffer != null) {
+                    for (; offset < end; offset++) {
+                        mostSigBits[offset] = mostSigBits(buffer.nextLong());
+                        leastSigBits[offset] = leastSigBits(buffer.nextLong());
+                    }
+                    return;
+                }
+            }
+            Random random = random(secure);
+            byte[] raw = null;
+            while (offset < end) {
+                int count = Math.min(end - offset, MAX_BULK_UUIDS);
+                if (raw == null || raw.length != count * UUID_BYTE_LENGTH) {
+                    raw = new byte[count * UUID_BYTE_LENGTH];
+                }
+                random.nextBytes(raw);
+                for (int i = 0; i < raw.length; i += UUID_BYTE_LENGTH) {
+                    mostSigBits[offset] = mostSigBits(Bytes.toLong(raw, i));
+                    leastSigBits[offset++] = leastSigBits(Bytes.toLong(raw, i + 8));
+                }
+            }
+        }
+
+        /**
+         * <p>Sets the version bits of random most significant bits.</p>
+         *
+         * @param random 64 random bits.
+         * @return the most significant bits of a version four UUID.
+         */
+        private static long mostSigBits(long random) {
+            return (random & 0xFFFFFFFFFFFF0FFFL) | (VERSION_FOUR << 12);
+        }
+
+        /**
+         * <p>Sets the variant bits of random least significant bits.</p>
+         *
+         * @param random 64 random bits.
+         * @return the least significant bits of a version four UUID.
+         */
+        private static long leastSigBits(long random) {
+            return (random & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        }
+
+        /**
+         * <p>Returns the random generator to use for the calling thread.</p>
+         *
+         * @param secure boolean flag indicating whether to use <code>SecureRandom</code> or <code>Random</code>.
+         * @return the random generator to use.
+         */
+        private static Random random(boolean secure) {
+            Random random = null;
+            if (secure) {
+                random = perThreadRandom ? threadSecureRandom() : sharedSecureRandom();
+            }
+            if (random == null) {
+                //Fail back to default PRNG/Random
+                random = perThreadRandom ? (Random) threadRandom.get() : regularRandom;
+            }
+            return random;
+        }
+
        /**
         * <p>Allows clients to set the pseudo-random number generator implementation used when generating a version four uuid with
         * the secure option. The secure option uses a <code>SecureRandom</code>. The packageName string may be null to specify
@@ -157,5 +299,119 @@ public final class VersionFourGenerator implements IdentifierGenerator, Constant
            VersionFourGenerator.usePRNG = prngName;
            VersionFourGenerator.usePRNGPackage = packageName;
            VersionFourGenerator.secureRandom = null;
+           VersionFourGenerator.threadSecureRandom = new ThreadLocal();
+           VersionFourGenerator.threadEntropyBuffer = new ThreadLocal();
+       }
+
+       /**
+        * <p>Allows clients to choose whether each thread generates version four uuid's with its own
+        * <code>Random</code> and <code>SecureRandom</code>, or whether all threads share them. Generators
+        * owned by a thread are seeded independently of each other, so the uniqueness of the uuid's is the same
+        * either way.</p>
+        *
+        * @param perThread true to give each thread its own generators, false to share them.
+        */
+       public static void setPerThreadRandom(boolean perThread) {
+           VersionFourGenerator.perThreadRandom = perThread;
+       }
+
+       /**
+        * <p>Allows clients to buffer the secure random bytes of each thread. The buffer size is the number of
+        * bytes drawn from the thread's <code>SecureRandom</code> with a single call, typically between 4 and 64
+        * kilobytes, and must be a multiple of 16. A size of 0 disables buffering.</p>
+        *
+        * @param size the number of secure random bytes drawn at once, or 0.
+        * @throws IllegalArgumentException if the size is negative or not a multiple of 16.
+        */
+       public static synchronized void setSecureBufferSize(int size) {
+           if (size < 0 || size % UUID_BYTE_LENGTH != 0) {
+               throw new IllegalArgumentException("Buffer size must be a non-negative multiple of 16: " + size);
+           }
+           VersionFourGenerator.secureBufferSize = size;
+           VersionFourGenerator.threadEntropyBuffer = new ThreadLocal();
+       }
+
+       /**
+        * <p>Allows clients to set the reseeding policy of buffered secure generation: after the given number of
+        * bytes has been drawn from a thread's <code>SecureRandom</code>, it is replaced by a freshly seeded
+        * instance. An interval of 0 never replaces it.</p>
+        *
+        * @param bytes the number of bytes drawn before reseeding, or 0.
+        * @throws IllegalArgumentException if the interval is negative.
+        */
+       public static synchronized void setSecureReseedInterval(long bytes) {
+           if (bytes < 0) {
+               throw new IllegalArgumentException("Reseed interval must not be negative: " + bytes);
+           }
+           VersionFourGenerator.secureReseedInterval = bytes;
+           VersionFourGenerator.threadEntropyBuffer = new ThreadLocal();
+       }
+
+       /**
+        * <p>Returns the <code>EntropyBuffer</code> of the calling thread, instantiating it if needed.</p>
+        *
+        * @return the <code>EntropyBuffer</code> of the calling thread, or null if buffering was disabled
+        * meanwhile.
+        */
+       private static EntropyBuffer threadEntropyBuffer() {
+           //Read the configuration after the buffers it applies to
+           ThreadLocal local = threadEntropyBuffer;
+           EntropyBuffer buffer = (EntropyBuffer) local.get();
+           if (buffer == null) {
+               int size = secureBufferSize;
+               if (size == 0) {
+                   return null;
+               }
+               buffer = new EntropyBuffer(size, secureReseedInterval);
+               local.set(buffer);
+           }
+           return buffer;
+       }
+
+       /**
+        * <p>Returns the <code>SecureRandom</code> shared by all threads, instantiating it if needed.</p>
+        *
+        * @return the shared <code>SecureRandom</code>, or null if the PRNG provider is not available.
+        */
+       private static Random sharedSecureRandom() {
+           //Initialize the secure random if null.
+           if (secureRandom == null) {
+               secureRandom = newSecureRandom();
+           }
+           return secureRandom;
+       }
+
+       /**
+        * <p>Returns the <code>SecureRandom</code> of the calling thread, instantiating it if needed.</p>
+        *
+        * @return the <code>SecureRandom</code> of the calling thread, or null if the PRNG provider is not
+        * available.
+        */
+       private static Random threadSecureRandom() {
+           ThreadLocal local = threadSecureRandom;
+           Random random = (Random) local.get();
+           if (random == null) {
+               random = newSecureRandom();
+               local.set(random);
+           }
+           return random;
+       }
+
+       /**
+        * <p>Instantiates a <code>SecureRandom</code> with the configured PRNG provider.</p>
+        *
+        * @return a new <code>SecureRandom</code>, or null if the PRNG provider is not available.
+        */
+       static SecureRandom newSecureRandom() {
+           try {
+               if (usePRNGPackage != null) {
+                   return SecureRandom.getInstance(usePRNG, usePRNGPackage);
+               }
+               return SecureRandom.getInstance(usePRNG);
+           } catch (NoSuchAlgorithmException nsae) {
+               return null;
+           } catch (NoSuchProviderException nspe) {
+               return null;
+           }
        }
     }
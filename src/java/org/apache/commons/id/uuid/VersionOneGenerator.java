@@ -16,10 +16,14 @@
  */
 package org.apache.commons.id.uuid;
 
-import org.apache.commons.discovery.tools.DiscoverSingleton;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
 import org.apache.commons.id.IdentifierGenerator;
-import org.apache.commons.id.uuid.clock.OverClockedException;
+import org.apache.commons.id.uuid.clock.Clock;
+import org.apache.commons.id.uuid.clock.NonThrowingClock;
 import org.apache.commons.id.uuid.state.Node;
+import org.apache.commons.id.uuid.state.StateHelper;
 
 /**
  * Class is responsible for generating version 1 UUID's per RFC 4122.
@@ -30,6 +34,19 @@ import org.apache.commons.id.uuid.state.Node;
  * defined in the
  * <a href="ftp://ftp.rfc-editor.org/in-notes/rfc4122.txt">RFC 4122:
  * A Universally Unique IDentifier (UUID) URN Namespace</a>.
+ * <p>When a <code>Node</code> runs out of timestamps, the generator applies
+ * its overflow strategy, set through the <code>OVERFLOW_STRATEGY_KEY</code>
+ * system property or {@link #setOverflowStrategy(int)}: switch to the next
+ * available node (the default), spin or park until the clock moves on, or
+ * borrow timestamps up to the borrow lead ahead of the clock before switching
+ * nodes. Nodes report running out without exceptions, and the number of times
+ * each strategy was applied is available from
+ * {@link #getOverflowCount(int)}.</p>
+ * <p>The singleton instance uses the <code>NodeManager</code> located by
+ * <code>StateHelper.newInstance</code>. A generator can be configured
+ * explicitly instead, without any lookup, with {@link #newInstance(NodeManager)},
+ * for example with a <code>NodeManagerImpl</code> created for a given
+ * <code>State</code>. Generators must not share nodes with other generators.</p>
  *
  * @author Commons-Id team
  * @version $Revision: 480488 $ $Date: 2006-11-29 00:57:26 -0800 (Wed, 29 Nov 2006) $
@@ -41,12 +58,32 @@ public final class VersionOneGenerator implements IdentifierGenerator, Constants
     /** Positions 10-16: Length of node bytes */
     private static final int NODE_ID_BYTE_LENGTH = 6;
 
-    /** Position 8: CLOCK_SEQ_LOW byte */
-    private static final int CLOCK_HI_VARIANT_BYTE8 = 8;
-    /** Position 9: CLOCK_SEQ_HIGH and VARIANT byte */
-    private static final int CLOCK_LOW_BYTE9 = 9;
-    /** Positions 10-16: Start of node bytes */
-    private static final int NODE_ID_BYTE10 = 10;
+    /** The maximum number of timestamps reserved from a Node at once, a tenth of a millisecond */
+    private static final int MAX_RESERVED_TIMES = 1000;
+
+    /** Overflow strategy switching to the next available node. */
+    public static final int OVERFLOW_SWITCH_NODE = 0;
+
+    /** Overflow strategy retrying at once until the clock moves on. */
+    public static final int OVERFLOW_SPIN = 1;
+
+    /** Overflow strategy parking the thread briefly before each retry. */
+    public static final int OVERFLOW_PARK = 2;
+
+    /** Overflow strategy borrowing timestamps up to the borrow lead ahead of the clock. */
+    public static final int OVERFLOW_BORROW = 3;
+
+    /** The system property key of the overflow strategy: switch, spin, park or borrow. */
+    public static final String OVERFLOW_STRATEGY_KEY = VersionOneGenerator.class.getName() + ".overflowStrategy";
+
+    /** The default borrow lead in milliseconds. */
+    public static final long DEFAULT_BORROW_LEAD = 10;
+
+    /** The names of the overflow strategies, by strategy. */
+    private static final String[] OVERFLOW_STRATEGY_NAMES = {"switch", "spin", "park", "borrow"};
+
+    /** Nanoseconds parked before retrying a node, a tenth of a millisecond. */
+    private static final long PARK_NANOS = 100000L;
 
     /** The default NodeManager implementation. */
     private static final String DEFAULT_NODEMANAGER_IMPL = NodeManagerImpl.class.getName();
@@ -54,17 +91,40 @@ public final class VersionOneGenerator implements IdentifierGenerator, Constants
     /** The NodeManager implementation */
     private NodeManager manager;
 
+    /** The overflow strategy. */
+    private volatile int overflowStrategy;
+
+    /** The lead on the clock in 100ns intervals up to which timestamps are borrowed. */
+    private volatile long borrowLead = DEFAULT_BORROW_LEAD * Clock.INTERVALS_PER_MILLI;
+
+    /** The number of times each overflow strategy was applied, by strategy. */
+    private final AtomicLongArray overflows = new AtomicLongArray(OVERFLOW_STRATEGY_NAMES.length);
+
     /** Singleton instance such that only one instance is accessing the static
      * fields at any time.
      */
     private static VersionOneGenerator generator;
 
     /**
-     *  <p>Private singleton constructor.</p>
+     *  <p>Private constructor.</p>
+     *
+     * @param nodeManager the <code>NodeManager</code> implementation.
      */
-    private VersionOneGenerator() {
+    private VersionOneGenerator(NodeManager nodeManager) {
         super();
-        manager = (NodeManager) DiscoverSingleton.find( NodeManager.class, DEFAULT_NODEMANAGER_IMPL);
+        manager = nodeManager;
+        String strategy = System.getProperty(OVERFLOW_STRATEGY_KEY);
+        if (strategy != null) {
+            overflowStrategy = -1;
+            for (int i = 0; i < OVERFLOW_STRATEGY_NAMES.length; i++) {
+                if (OVERFLOW_STRATEGY_NAMES[i].equalsIgnoreCase(strategy)) {
+                    overflowStrategy = i;
+                }
+            }
+            if (overflowStrategy < 0) {
+                throw new IllegalStateException("Invalid " + OVERFLOW_STRATEGY_KEY + ": " + strategy);
+            }
+        }
     }
 
     /**
@@ -74,11 +134,90 @@ public final class VersionOneGenerator implements IdentifierGenerator, Constants
      */
     public static VersionOneGenerator getInstance()  {
             if (generator == null) {
-                generator = new VersionOneGenerator();
+                generator = new VersionOneGenerator(
+                    (NodeManager) StateHelper.newInstance(NodeManager.class, DEFAULT_NODEMANAGER_IMPL));
             }
             return generator;
     }
+
+    /**
+     * <p>Returns a new version one UUID generator using the given
+     * <code>NodeManager</code>, which no other generator may use.</p>
+     *
+     * @param nodeManager the <code>NodeManager</code> implementation.
+     * @return a new version one UUID generator.
+     * @throws IllegalArgumentException if <code>nodeManager</code> is null.
+     */
+    public static VersionOneGenerator newInstance(NodeManager nodeManager) {
+        if (nodeManager == null) {
+            throw new IllegalArgumentException("NodeManager must not be null");
+        }
+        return new VersionOneGenerator(nodeManager);
+    }
     
+    /**
+     * <p>Returns the strategy applied when a <code>Node</code> runs out of timestamps.</p>
+     *
+     * @return one of the <code>OVERFLOW_</code> strategies.
+     */
+    public int getOverflowStrategy() {
+        return overflowStrategy;
+    }
+
+    /**
+     * <p>Sets the strategy applied when a <code>Node</code> runs out of timestamps.</p>
+     *
+     * @param strategy one of the <code>OVERFLOW_</code> strategies.
+     * @throws IllegalArgumentException if the strategy is unknown.
+     */
+    public void setOverflowStrategy(int strategy) {
+        if (strategy < 0 || strategy >= OVERFLOW_STRATEGY_NAMES.length) {
+            throw new IllegalArgumentException("Unknown overflow strategy: " + strategy);
+        }
+        overflowStrategy = strategy;
+    }
+
+    /**
+     * <p>Returns how far ahead of the clock the <code>OVERFLOW_BORROW</code>
+     * strategy issues timestamps.</p>
+     *
+     * @return the borrow lead in milliseconds.
+     */
+    public long getBorrowLead() {
+        return borrowLead / Clock.INTERVALS_PER_MILLI;
+    }
+
+    /**
+     * <p>Sets how far ahead of the clock the <code>OVERFLOW_BORROW</code>
+     * strategy issues timestamps. Timestamps borrowed are not available after a
+     * restart sooner than the lead, so it should be short.</p>
+     *
+     * @param millis the borrow lead in milliseconds.
+     * @throws IllegalArgumentException if <code>millis</code> is not from 2 to 1000.
+     */
+    public void setBorrowLead(long millis) {
+        if (millis < 2 || millis > 1000) {
+            throw new IllegalArgumentException("Borrow lead must be from 2 to 1000 milliseconds");
+        }
+        borrowLead = millis * Clock.INTERVALS_PER_MILLI;
+    }
+
+    /**
+     * <p>Returns the number of times an overflow strategy was applied. Spinning
+     * and parking are counted once per UUID or range waiting, switching nodes
+     * and borrowing once per node over clocked.</p>
+     *
+     * @param strategy one of the <code>OVERFLOW_</code> strategies.
+     * @return the number of times the strategy was applied.
+     * @throws IllegalArgumentException if the strategy is unknown.
+     */
+    public long getOverflowCount(int strategy) {
+        if (strategy < 0 || strategy >= OVERFLOW_STRATEGY_NAMES.length) {
+            throw new IllegalArgumentException("Unknown overflow strategy: " + strategy);
+        }
+        return overflows.get(strategy);
+    }
+
     /**
      * @see org.apache.commons.id.IdentifierGenerator#nextIdentifier()
      */
@@ -87,43 +226,209 @@ public final class VersionOneGenerator implements IdentifierGenerator, Constants
     }
 
     /**
-     * <p>Returns a new version 1 UUID. The method acts upons static variables
-     * and so should be sychronized.</p>
+     * <p>Returns a new version 1 UUID. The method takes no lock; the
+     * <code>Node</code> issues timestamps to concurrent callers atomically.</p>
      *
      * @return Returns a new version 1 UUID.
      */
-    public synchronized UUID nextUUID() {
-        byte[] rawUUID = new byte[UUID_BYTE_LENGTH];
-        long time = 0;
-        short clockSq = 0;
+    public UUID nextUUID() {
+        return nextUUID(VERSION_ONE);
+    }
+
+    /**
+     * <p>Returns new version 1 UUID's. Timestamps are reserved from the
+     * <code>Node</code> in ranges, with one atomic update per range rather
+     * than per UUID.</p>
+     *
+     * @param count the number of UUID's to generate.
+     * @return an array of <code>count</code> new version 1 UUID's.
+     * @throws IllegalArgumentException if the count is negative.
+     */
+    public UUID[] nextUUIDs(int count) {
+        long[] mostSigBits = new long[UUID.checkCount(count)];
+        long[] leastSigBits = new long[count];
+        nextUUIDs(VERSION_ONE, mostSigBits, leastSigBits, 0, count);
+        return UUID.toUUIDs(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * <p>Generates new version 1 UUID's into two arrays holding their most
+     * and least significant bits, without creating UUID instances.</p>
+     *
+     * @param mostSigBits the array receiving the most significant bits.
+     * @param leastSigBits the array receiving the least significant bits.
+     * @param offset the index of the first UUID to generate in the arrays.
+     * @param length the number of UUID's to generate.
+     * @throws IllegalArgumentException if the arrays cannot hold
+     * <code>length</code> UUID's at <code>offset</code>.
+     */
+    public void nextUUIDs(long[] mostSigBits, long[] leastSigBits, int offset, int length) {
+        UUID.checkRange(mostSigBits, leastSigBits, offset, length);
+        nextUUIDs(VERSION_ONE, mostSigBits, leastSigBits, offset, length);
+    }
+
+    /**
+     * <p>Returns a new time-based UUID of the given version. Version 1 stores the
+     * timestamp low field first, version 6 stores the same timestamp most significant
+     * bits first so that UUID's sort in the order they were generated. Both versions
+     * share the node and clock state of this generator.</p>
+     *
+     * @param version either VERSION_ONE or VERSION_SIX.
+     * @return Returns a new time-based UUID of the given version.
+     */
+    UUID nextUUID(int version) {
+        long time;
+        short clockSq;
         Node node = manager.currentNode();
-        while (time < 1) {
+        long lead = Clock.INTERVALS_PER_MILLI;
+        int waited = -1;
+        while (true) {
+            manager.lockNode(node);
             try {
-                manager.lockNode(node);
-                time = node.getUUIDTime();
+                //The time belongs to the clock sequence if it did not change meanwhile
                 clockSq = node.getClockSequence();
-                System.arraycopy(node.getNodeIdentifier(), 0, rawUUID, NODE_ID_BYTE10, NODE_ID_BYTE_LENGTH);
+                time = node.tryGetUUIDTimes(1, lead);
+            } finally {
                 manager.releaseNode(node);
-            } catch (OverClockedException e) {
-                node = manager.nextAvailableNode();
+            }
+            if (time == NonThrowingClock.OVER_CLOCKED) {
+                lead = overflow(lead, waited);
+                if (lead == 0) {
+                    node = manager.nextAvailableNode();
+                    lead = Clock.INTERVALS_PER_MILLI;
+                } else {
+                    waited = overflowStrategy;
+                }
+            } else if (node.getClockSequence() == clockSq) {
+                break;
+            }
+        }
+        return new UUID(mostSigBits(version, time), leastSigBits(clockSq, node.getNodeIdentifier()));
+    }
+
+    /**
+     * <p>Applies the overflow strategy to a <code>Node</code> which ran out of
+     * timestamps, and returns the lead to retry it with.</p>
+     *
+     * @param lead the lead on the clock the node ran out of timestamps at.
+     * @param waited the strategy already counted for this UUID or range, -1 if none.
+     * @return the lead on the clock in 100ns intervals to retry the node with,
+     * or 0 to switch to the next available node.
+     */
+    private long overflow(long lead, int waited) {
+        int strategy = overflowStrategy;
+        switch (strategy) {
+            case OVERFLOW_SPIN:
+            case OVERFLOW_PARK:
+                if (waited != strategy) {
+                    overflows.incrementAndGet(strategy);
+                }
+                if (strategy == OVERFLOW_PARK) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+                return lead;
+            case OVERFLOW_BORROW:
+                long borrow = borrowLead;
+                if (lead < borrow) {
+                    overflows.incrementAndGet(OVERFLOW_BORROW);
+                    return borrow;
+                }
+                //Borrowed up to the lead, switch node
+                overflows.incrementAndGet(OVERFLOW_SWITCH_NODE);
+                return 0;
+            default:
+                overflows.incrementAndGet(OVERFLOW_SWITCH_NODE);
+                return 0;
+        }
+    }
+
+    /**
+     * <p>Generates new time-based UUID's of the given version into two arrays,
+     * reserving up to <code>MAX_RESERVED_TIMES</code> timestamps at once.</p>
+     *
+     * @param version either VERSION_ONE or VERSION_SIX.
+     * @param mostSigBits the array receiving the most significant bits.
+     * @param leastSigBits the array receiving the least significant bits.
+     * @param offset the index of the first UUID to generate in the arrays.
+     * @param length the number of UUID's to generate.
+     */
+    void nextUUIDs(int version, long[] mostSigBits, long[] leastSigBits, int offset, int length) {
+        Node node = null;
+        int end = offset + length;
+        long lead = Clock.INTERVALS_PER_MILLI;
+        int waited = -1;
+        while (offset < end) {
+            if (node == null) {
+                //Per range, so the stored watermark is renewed before the ranges pass it
+                node = manager.currentNode();
+            }
+            int count = Math.min(end - offset, MAX_RESERVED_TIMES);
+            long time;
+            short clockSq;
+            boolean reserved = false;
+            manager.lockNode(node);
+            try {
+                //The times belong to the clock sequence if it did not change meanwhile
+                clockSq = node.getClockSequence();
+                time = node.tryGetUUIDTimes(count, lead);
             } finally {
                 manager.releaseNode(node);
             }
+            if (time == NonThrowingClock.OVER_CLOCKED) {
+                lead = overflow(lead, waited);
+                if (lead == 0) {
+                    node = manager.nextAvailableNode();
+                    lead = Clock.INTERVALS_PER_MILLI;
+                } else {
+                    waited = overflowStrategy;
+                }
+            } else {
+                reserved = node.getClockSequence() == clockSq;
+                lead = Clock.INTERVALS_PER_MILLI;
+                waited = -1;
+            }
+            if (reserved) {
+                long lsb = leastSigBits(clockSq, node.getNodeIdentifier());
+                for (int i = 0; i < count; i++) {
+                    mostSigBits[offset] = mostSigBits(version, time + i);
+                    leastSigBits[offset++] = lsb;
+                }
+                node = null;
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the most significant bits of a time-based UUID.</p>
+     *
+     * @param version either VERSION_ONE or VERSION_SIX.
+     * @param time the UUID timestamp.
+     * @return the most significant bits of the UUID.
+     */
+    private static long mostSigBits(int version, long time) {
+        if (version == VERSION_SIX) {
+            //time_high, time_mid, version and time_low
+            return ((time >>> 12) << 16) | (VERSION_SIX << 12) | (time & 0x0FFFL);
+        }
+        //time_low, time_mid, version and time_hi
+        return (time << 32) | ((time >>> 16) & 0xFFFF0000L) | (VERSION_ONE << 12)
+            | ((time >>> 48) & 0x0FFFL);
+    }
+
+    /**
+     * <p>Returns the least significant bits of a time-based UUID.</p>
+     *
+     * @param clockSq the clock sequence.
+     * @param nodeId the node identifier bytes.
+     * @return the least significant bits of the UUID.
+     */
+    private static long leastSigBits(short clockSq, byte[] nodeId) {
+        //Set variant and clock sequence
+        long leastSigBits = 0x80L | ((clockSq & 0x3F00) >>> 8);
+        leastSigBits = (leastSigBits << 8) | (clockSq & 0xFF);
+        for (int i = 0; i < NODE_ID_BYTE_LENGTH; i++) {
+            leastSigBits = (leastSigBits << 8) | (nodeId[i] & 0xFF);
         }
-        byte[] timeBytes = Bytes.toBytes(time);
-        //Copy time low
-        System.arraycopy(timeBytes, TIME_LOW_TS_POS, rawUUID, TIME_LOW_START_POS, TIME_LOW_BYTE_LEN);
-        //Copy time mid
-        System.arraycopy(timeBytes, TIME_MID_TS_POS, rawUUID, TIME_MID_START_POS, TIME_MID_BYTE_LEN);
-        //Copy time hi
-        System.arraycopy(timeBytes, TIME_HI_TS_POS, rawUUID, TIME_HI_START_POS, TIME_HI_BYTE_LEN);
-        //Set version
-        rawUUID[6] |= 0x10; // 0001 0000
-        //Set clock sequence
-        rawUUID[CLOCK_HI_VARIANT_BYTE8] = (byte) ((clockSq & 0x3F00) >>> 8);
-        rawUUID[CLOCK_HI_VARIANT_BYTE8] |= 0x80;
-        rawUUID[CLOCK_LOW_BYTE9] = (byte) (clockSq & 0xFF);
-
-        return new UUID(rawUUID);
+        return leastSigBits;
     }
 }
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid;
+
+import org.apache.commons.id.IdentifierGenerator;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * <p>Class is responsible for generating version 7 UUID's. A version 7 UUID stores
+ * the milliseconds since the Unix epoch in its first 48 bits, followed by the version,
+ * 12 random bits, the variant and 62 random bits. UUID's generated in later
+ * milliseconds sort after UUID's generated earlier, both as numbers and as Strings.</p>
+ * <p>A monotonic generator treats the 74 random bits as a counter within a millisecond:
+ * the first UUID of a millisecond gets fresh random bits, subsequent UUID's of the same
+ * millisecond increment them. Should the counter overflow, or the system clock move
+ * backwards, the generator keeps counting on from the last timestamp it used, so every
+ * UUID from a monotonic generator sorts after the UUID's it generated before. A
+ * non-monotonic generator draws fresh random bits for every UUID.</p>
+ * <p>Note: Instantiation of SecureRandom is an expensive operation. The
+ * first call to getInstance or to a constructor may take time; subsequent calls
+ * to nextUUID return quickly.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ *
+ */
+public final class VersionSevenGenerator implements IdentifierGenerator, Constants {
+
+    /** Mask of the 12 random bits following the version */
+    private static final long RAND_A_MASK = 0x0FFFL;
+
+    /** Mask of the 62 random bits following the variant */
+    private static final long RAND_B_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    /** Mask of the 48 bit millisecond timestamp */
+    private static final long MILLIS_MASK = 0xFFFFFFFFFFFFL;
+
+    /** Singleton instance of the monotonic version seven generator. */
+    private static VersionSevenGenerator generator;
+
+    /** Random used to generate the random bits */
+    private final Random random = new SecureRandom();
+
+    /** Whether UUID's within a millisecond are generated in increasing order */
+    private final boolean monotonic;
+
+    /** The timestamp of the last UUID generated */
+    private long lastMillis = -1;
+
+    /** The 12 random bits of the last UUID generated */
+    private long lastRandA;
+
+    /** The 62 random bits of the last UUID generated */
+    private long lastRandB;
+
+    /**
+     * <p>Constructs a new monotonic VersionSevenGenerator.</p>
+     */
+    public VersionSevenGenerator() {
+        this(true);
+    }
+
+    /**
+     * <p>Constructs a new VersionSevenGenerator.</p>
+     *
+     * @param monotonic whether UUID's generated within the same millisecond should
+     * be generated in increasing order.
+     */
+    public VersionSevenGenerator(boolean monotonic) {
+        super();
+        this.monotonic = monotonic;
+    }
+
+    /**
+     * <p>Returns the singleton instance of the monotonic version seven UUID generator.</p>
+     *
+     * @return the singleton instance of the monotonic version seven UUID generator.
+     */
+    public static VersionSevenGenerator getInstance() {
+        if (generator == null) {
+            generator = new VersionSevenGenerator();
+        }
+        return generator;
+    }
+
+    /**
+     * <p>Returns whether this generator generates UUID's within the same millisecond
+     * in increasing order.</p>
+     *
+     * @return whether this generator is monotonic.
+     */
+    public boolean isMonotonic() {
+        return monotonic;
+    }
+
+    /**
+     * @see org.apache.commons.id.IdentifierGenerator#nextIdentifier()
+     */
+    public Object nextIdentifier() {
+        return nextUUID();
+    }
+
+    /**
+     * <p>Returns a new version 7 UUID.</p>
+     *
+     * @return Returns a new version 7 UUID.
+     */
+    public UUID nextUUID() {
+        long millis = System.currentTimeMillis() & MILLIS_MASK;
+        long randA;
+        long randB;
+        if (!monotonic) {
+            randA = random.nextInt() & RAND_A_MASK;
+            randB = random.nextLong() & RAND_B_MASK;
+        } else {
+            synchronized (this) {
+                if (millis > lastMillis) {
+                    randA = random.nextInt() & RAND_A_MASK;
+                    randB = random.nextLong() & RAND_B_MASK;
+                } else {
+                    millis = lastMillis;
+                    randA = lastRandA;
+                    randB = (lastRandB + 1) & RAND_B_MASK;
+                    if (randB == 0) {
+                        randA = (randA + 1) & RAND_A_MASK;
+                        if (randA == 0) {
+                            millis = (millis + 1) & MILLIS_MASK;
+                        }
+                    }
+                }
+                lastMillis = millis;
+                lastRandA = randA;
+                lastRandB = randB;
+            }
+        }
+        return new UUID((millis << 16) | (VERSION_SEVEN << 12) | randA, 0x8000000000000000L | randB);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid;
+
+import org.apache.commons.id.IdentifierGenerator;
+
+/**
+ * <p>Class is responsible for generating version 6 UUID's. A version 6 UUID holds
+ * the same 60 bit timestamp, clock sequence and node identifier as a version 1 UUID,
+ * but stores the timestamp most significant bits first, so that UUID's generated later
+ * sort after UUID's generated earlier, both as numbers and as Strings. This keeps
+ * inserts into ordered indexes close to each other.</p>
+ * <p>The generator shares the node and clock state of the {@link VersionOneGenerator},
+ * so version 1 and version 6 UUID's generated in the same JVM never share a timestamp.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ *
+ */
+public final class VersionSixGenerator implements IdentifierGenerator, Constants {
+
+    /** Singleton instance of the version six generator. */
+    private static VersionSixGenerator generator;
+
+    /**
+     *  <p>Private singleton constructor.</p>
+     */
+    private VersionSixGenerator() {
+        super();
+    }
+
+    /**
+     * <p>Returns the singleton instance of the version six UUID generator.</p>
+     *
+     * @return the singleton instance of the version six UUID generator.
+     */
+    public static VersionSixGenerator getInstance() {
+        if (generator == null) {
+            generator = new VersionSixGenerator();
+        }
+        return generator;
+    }
+
+    /**
+     * @see org.apache.commons.id.IdentifierGenerator#nextIdentifier()
+     */
+    public Object nextIdentifier() {
+        return nextUUID();
+    }
+
+    /**
+     * <p>Returns a new version 6 UUID.</p>
+     *
+     * @return Returns a new version 6 UUID.
+     */
+    public UUID nextUUID() {
+        return VersionOneGenerator.getInstance().nextUUID(VERSION_SIX);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+/**
+ * <p><code>CachedClockImpl</code> provides a timing mechanism for returning the
+ * current time in 100-nano second intervals since 00:00:00.00, 15 October 1582,
+ * from a cached reading of the system clock.</p>
+ * <p>A single daemon thread, shared by all instances, reads
+ * <code>System.currentTimeMillis()</code> once per update interval and publishes
+ * it through a volatile field, so reading the clock takes no lock and costs
+ * about a field load plus the atomic update of the tick counter. As with
+ * {@link SystemClockImpl}, up to 10,000 ticks are counted within each
+ * millisecond. The thread is started by the first instance and runs until
+ * {@link #shutdown()}; once shut down, instances read the system clock
+ * directly until a new instance is created.</p>
+ *
+ * @see org.apache.commons.id.uuid.clock.Clock
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public final class CachedClockImpl implements NonThrowingClock {
+
+    /** Default interval between updates of the cached time in milliseconds */
+    public static final long DEFAULT_UPDATE_INTERVAL = 1;
+
+    /** Interval between updates of the cached time in milliseconds */
+    private static volatile long updateInterval = DEFAULT_UPDATE_INTERVAL;
+
+    /** The cached time in milliseconds, 0 while no thread updates it. */
+    private static volatile long cachedTimeMillis;
+
+    /** The thread updating the cached time, null when not running. */
+    private static Updater updater;
+
+    /** The tick counter within the cached millisecond. */
+    private final TickCounter ticks = new TickCounter();
+
+    /**
+     * <p>Public constructor, starting the update thread if it is not running.</p>
+     */
+    public CachedClockImpl() {
+        super();
+        start();
+    }
+
+    /**
+     * <p>Returns the interval between updates of the cached time.</p>
+     *
+     * @return the update interval in milliseconds.
+     */
+    public static long getUpdateInterval() {
+        return updateInterval;
+    }
+
+    /**
+     * <p>Sets the interval between updates of the cached time. The clock lags the
+     * system clock by up to this interval.</p>
+     *
+     * @param millis the update interval in milliseconds.
+     * @throws IllegalArgumentException if <code>millis</code> is not positive.
+     */
+    public static void setUpdateInterval(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Update interval must be positive");
+        }
+        updateInterval = millis;
+    }
+
+    /**
+     * <p>Returns true if the update thread is running.</p>
+     *
+     * @return true if the update thread is running.
+     */
+    public static synchronized boolean isRunning() {
+        return updater != null;
+    }
+
+    /**
+     * <p>Starts the update thread unless it is running.</p>
+     */
+    private static synchronized void start() {
+        if (updater == null) {
+            cachedTimeMillis = System.currentTimeMillis();
+            updater = new Updater();
+            updater.start();
+        }
+    }
+
+    /**
+     * <p>Stops the update thread and waits for it to end. Instances read the
+     * system clock directly until a new instance starts the thread again.</p>
+     *
+     * @throws InterruptedException if interrupted while waiting for the thread.
+     */
+    public static void shutdown() throws InterruptedException {
+        Updater stopped;
+        synchronized (CachedClockImpl.class) {
+            stopped = updater;
+            updater = null;
+            cachedTimeMillis = 0;
+        }
+        if (stopped != null) {
+            stopped.interrupt();
+            stopped.join();
+        }
+    }
+
+    /**
+     * <p>Returns the current time in 100ns intervals since the Gregorian change
+     * offset. Concurrent callers are served without locking.</p>
+     *
+     * @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime()
+     */
+    public long getUUIDTime() throws OverClockedException {
+        return TickCounter.getUUIDTime(this);
+    }
+
+    /**
+     * @see org.apache.commons.id.uuid.clock.NonThrowingClock#tryGetUUIDTime()
+     */
+    public long tryGetUUIDTime() {
+        long millis = cachedTimeMillis;
+        if (millis == 0) {
+            millis = System.currentTimeMillis();
+        }
+        return ticks.next((millis + GREGORIAN_CHANGE_OFFSET) * INTERVALS_PER_MILLI);
+    }
+
+    /**
+     * <p>The daemon thread publishing the system time once per update interval.</p>
+     */
+    private static final class Updater extends Thread {
+
+        /** Constructor. */
+        Updater() {
+            super("commons-id-uuid-cached-clock");
+            setDaemon(true);
+        }
+
+        /**
+         * @see java.lang.Thread#run()
+         */
+        public void run() {
+            while (true) {
+                synchronized (CachedClockImpl.class) {
+                    if (updater != this) {
+                        return;
+                    }
+                    cachedTimeMillis = System.currentTimeMillis();
+                }
+                try {
+                    sleep(updateInterval);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p><code>MonotonicClockImpl</code> wraps another {@link Clock} so that the
+ * time returned keeps increasing when the wrapped clock moves backwards, as it
+ * does when the system clock is stepped back.</p>
+ * <p>While the wrapped clock is behind the last time returned, the next tick
+ * after it is returned instead, so a <code>Node</code> neither increments its
+ * clock sequence on every call until the clock catches up nor stalls. The lead
+ * on the wrapped clock is limited, one second by default or the value of the
+ * <code>MAX_LEAD_KEY</code> system property in milliseconds. Beyond the limit
+ * the time of the wrapped clock is returned, so that the <code>Node</code>
+ * increments its clock sequence once, and the {@link LeadLimitListener} set
+ * with {@link #setListener(LeadLimitListener)} is told. While the wrapped clock
+ * is over clocked, so is this one: no lead is taken on a clock that is not
+ * behind.</p>
+ * <p>The wrapped clock is a {@link SystemClockImpl}, unless another class is
+ * named by the <code>DELEGATE_KEY</code> system property or passed to the
+ * constructor.</p>
+ *
+ * @see org.apache.commons.id.uuid.clock.Clock
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public final class MonotonicClockImpl implements NonThrowingClock {
+
+    /** The key of the system property naming the wrapped Clock implementation. */
+    public static final String DELEGATE_KEY = MonotonicClockImpl.class.getName() + ".delegate";
+
+    /** The key of the system property holding the lead limit in milliseconds. */
+    public static final String MAX_LEAD_KEY = MonotonicClockImpl.class.getName() + ".maxLead";
+
+    /** The default limit on the lead over the wrapped clock in milliseconds. */
+    public static final long DEFAULT_MAX_LEAD = 1000;
+
+    /** The listener told when the lead limit is reached, null if none. */
+    private static volatile LeadLimitListener listener;
+
+    /** The number of times the lead limit was reached by all instances. */
+    private static final AtomicLong leadLimitCount = new AtomicLong();
+
+    /** The wrapped clock. */
+    private final Clock delegate;
+
+    /** The wrapped clock, if it reports being over clocked without throwing. */
+    private final NonThrowingClock tryDelegate;
+
+    /** The limit on the lead over the wrapped clock in 100ns intervals. */
+    private final long maxLead;
+
+    /** The last time returned. */
+    private final AtomicLong lastTime = new AtomicLong();
+
+    /**
+     * <p>Public constructor, wrapping the clock named by the <code>DELEGATE_KEY</code>
+     * system property with the lead limit of the <code>MAX_LEAD_KEY</code> system
+     * property.</p>
+     *
+     * @throws IllegalStateException if the clock cannot be created or the lead
+     * limit is not a positive number.
+     */
+    public MonotonicClockImpl() {
+        this(newDelegate(), maxLeadProperty());
+    }
+
+    /**
+     * <p>Constructor wrapping the given clock.</p>
+     *
+     * @param clock the clock to wrap.
+     * @param maxLeadMillis the limit on the lead over the wrapped clock in milliseconds.
+     * @throws IllegalArgumentException if the clock is null or the lead limit is
+     * not positive.
+     */
+    public MonotonicClockImpl(Clock clock, long maxLeadMillis) {
+        super();
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock must not be null");
+        }
+        if (maxLeadMillis <= 0 || maxLeadMillis > Long.MAX_VALUE / INTERVALS_PER_MILLI) {
+            throw new IllegalArgumentException("Lead limit must be positive");
+        }
+        delegate = clock;
+        tryDelegate = clock instanceof NonThrowingClock ? (NonThrowingClock) clock : null;
+        maxLead = maxLeadMillis * INTERVALS_PER_MILLI;
+    }
+
+    /**
+     * <p>Creates the clock named by the <code>DELEGATE_KEY</code> system property.</p>
+     *
+     * @return the clock to wrap.
+     * @throws IllegalStateException if the clock cannot be created.
+     */
+    private static Clock newDelegate() {
+        String name = System.getProperty(DELEGATE_KEY, DEFAULT_CLOCK_IMPL);
+        if (MonotonicClockImpl.class.getName().equals(name)) {
+            throw new IllegalStateException(DELEGATE_KEY + " must name another Clock");
+        }
+        try {
+            return (Clock) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot create " + DELEGATE_KEY + ": " + name + ": " + e);
+        }
+    }
+
+    /**
+     * <p>Returns the lead limit set by the <code>MAX_LEAD_KEY</code> system property.</p>
+     *
+     * @return the lead limit in milliseconds.
+     * @throws IllegalStateException if the property is not a positive number.
+     */
+    private static long maxLeadProperty() {
+        String value = System.getProperty(MAX_LEAD_KEY);
+        if (value == null) {
+            return DEFAULT_MAX_LEAD;
+        }
+        try {
+            long l = Long.parseLong(value);
+            if (l > 0) {
+                return l;
+            }
+        } catch (NumberFormatException nfe) {
+            //Reported below
+        }
+        throw new IllegalStateException("Invalid " + MAX_LEAD_KEY + ": " + value);
+    }
+
+    /**
+     * <p>Sets the listener told when any instance reaches its lead limit.</p>
+     *
+     * @param leadLimitListener the listener, or null for none.
+     */
+    public static void setListener(LeadLimitListener leadLimitListener) {
+        listener = leadLimitListener;
+    }
+
+    /**
+     * <p>Returns the number of times any instance reached its lead limit.</p>
+     *
+     * @return the number of times the lead limit was reached.
+     */
+    public static long getLeadLimitCount() {
+        return leadLimitCount.get();
+    }
+
+    /**
+     * <p>Returns the limit on the lead over the wrapped clock.</p>
+     *
+     * @return the lead limit in milliseconds.
+     */
+    public long getMaxLead() {
+        return maxLead / INTERVALS_PER_MILLI;
+    }
+
+    /**
+     * <p>Returns the current time in 100ns intervals since the Gregorian change
+     * offset, no less than the last time returned unless the lead limit was reached.</p>
+     *
+     * @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime()
+     */
+    public long getUUIDTime() throws OverClockedException {
+        return TickCounter.getUUIDTime(this);
+    }
+
+    /**
+     * @see org.apache.commons.id.uuid.clock.NonThrowingClock#tryGetUUIDTime()
+     */
+    public long tryGetUUIDTime() {
+        long reading = readDelegate();
+        if (reading == OVER_CLOCKED) {
+            return OVER_CLOCKED;
+        }
+        while (true) {
+            long last = lastTime.get();
+            long next;
+            boolean limited = false;
+            if (reading > last) {
+                next = reading;
+            } else if (last + 1 - reading <= maxLead) {
+                //Keep increasing from the high water mark while the clock catches up
+                next = last + 1;
+            } else {
+                next = reading;
+                limited = true;
+            }
+            if (lastTime.compareAndSet(last, next)) {
+                if (limited) {
+                    leadLimitCount.incrementAndGet();
+                    LeadLimitListener l = listener;
+                    if (l != null) {
+                        l.leadLimitReached(this, last, reading);
+                    }
+                }
+                return next;
+            }
+        }
+    }
+
+    /**
+     * <p>Reads the wrapped clock.</p>
+     *
+     * @return the time of the wrapped clock, or <code>OVER_CLOCKED</code>.
+     */
+    private long readDelegate() {
+        if (tryDelegate != null) {
+            return tryDelegate.tryGetUUIDTime();
+        }
+        try {
+            return delegate.getUUIDTime();
+        } catch (OverClockedException oce) {
+            return OVER_CLOCKED;
+        }
+    }
+
+    /**
+     * <p>Told when a <code>MonotonicClockImpl</code> reaches its lead limit and
+     * returns a time behind the last time it returned.</p>
+     */
+    public interface LeadLimitListener {
+        /**
+         * <p>Called when the lead limit is reached, from the thread reading the clock.</p>
+         *
+         * @param clock the clock reaching its lead limit.
+         * @param lastTime the last time returned before, in 100ns intervals.
+         * @param clockTime the time of the wrapped clock now returned, in 100ns intervals.
+         */
+        void leadLimitReached(MonotonicClockImpl clock, long lastTime, long clockTime);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p><code>NanoClockImpl</code> provides a timing mechanism for returning the
+ * current time in 100-nano second intervals since 00:00:00.00, 15 October 1582,
+ * measured with <code>System.nanoTime()</code> from an anchor taken on the
+ * system clock.</p>
+ * <p>Rather than counting artificial ticks within each millisecond of the
+ * system clock, as {@link SystemClockImpl} does, the time returned advances
+ * with the elapsed nanoseconds, so bursts are limited by the elapsed time
+ * rather than to 10,000 calls per millisecond. Calls racing ahead of the
+ * elapsed time are given the next tick, and are over clocked one millisecond
+ * ahead of it.</p>
+ * <p>Once per re-anchor interval, one second by default or the value of the
+ * <code>REANCHOR_INTERVAL_KEY</code> system property, the anchor is compared
+ * with the system clock. Differences within the millisecond resolution of the
+ * system clock are ignored, and larger ones corrected by at most
+ * <code>MAX_CORRECTION</code> per interval, so the time returned stays strictly
+ * increasing. A difference of more than <code>STEP_THRESHOLD</code> milliseconds
+ * is taken as the system clock being set, and followed at once, even
+ * backwards.</p>
+ *
+ * @see org.apache.commons.id.uuid.clock.Clock
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public final class NanoClockImpl implements NonThrowingClock {
+
+    /** The key of the system property holding the re-anchor interval in milliseconds. */
+    public static final String REANCHOR_INTERVAL_KEY = NanoClockImpl.class.getName() + ".reanchorInterval";
+
+    /** Default interval between comparisons with the system clock in milliseconds */
+    public static final long DEFAULT_REANCHOR_INTERVAL = 1000;
+
+    /** The largest correction per re-anchor interval in 100ns intervals, half a millisecond. */
+    public static final long MAX_CORRECTION = INTERVALS_PER_MILLI / 2;
+
+    /** Difference with the system clock in milliseconds beyond which it is followed at once. */
+    public static final long STEP_THRESHOLD = 1000;
+
+    /** Nanoseconds per 100ns interval. */
+    private static final long NANOS_PER_INTERVAL = 100;
+
+    /** The current anchor. */
+    private final AtomicReference anchor = new AtomicReference();
+
+    /** The tick counter of calls racing ahead of the elapsed time. */
+    private final TickCounter ticks = new TickCounter();
+
+    /** Nanoseconds between comparisons with the system clock. */
+    private volatile long reanchorNanos;
+
+    /**
+     * <p>Public constructor, anchoring to the system clock.</p>
+     *
+     * @throws IllegalStateException if the <code>REANCHOR_INTERVAL_KEY</code>
+     * system property is not a positive number.
+     */
+    public NanoClockImpl() {
+        super();
+        long interval = DEFAULT_REANCHOR_INTERVAL;
+        String value = System.getProperty(REANCHOR_INTERVAL_KEY);
+        if (value != null) {
+            try {
+                interval = Long.parseLong(value);
+            } catch (NumberFormatException nfe) {
+                interval = 0;
+            }
+            if (interval <= 0) {
+                throw new IllegalStateException("Invalid " + REANCHOR_INTERVAL_KEY + ": " + value);
+            }
+        }
+        setReanchorInterval(interval);
+        anchor.set(new Anchor(wallTime(), System.nanoTime()));
+    }
+
+    /**
+     * <p>Returns the interval between comparisons with the system clock.</p>
+     *
+     * @return the re-anchor interval in milliseconds.
+     */
+    public long getReanchorInterval() {
+        return reanchorNanos / 1000000L;
+    }
+
+    /**
+     * <p>Sets the interval between comparisons with the system clock. The time
+     * returned is corrected by at most <code>MAX_CORRECTION</code> per interval.</p>
+     *
+     * @param millis the re-anchor interval in milliseconds.
+     * @throws IllegalArgumentException if <code>millis</code> is not positive.
+     */
+    public void setReanchorInterval(long millis) {
+        if (millis <= 0 || millis > Long.MAX_VALUE / 1000000L) {
+            throw new IllegalArgumentException("Re-anchor interval must be positive");
+        }
+        reanchorNanos = millis * 1000000L;
+    }
+
+    /**
+     * <p>Returns the current time in 100ns intervals since the Gregorian change
+     * offset. Concurrent callers are served without locking.</p>
+     *
+     * @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime()
+     */
+    public long getUUIDTime() throws OverClockedException {
+        return TickCounter.getUUIDTime(this);
+    }
+
+    /**
+     * @see org.apache.commons.id.uuid.clock.NonThrowingClock#tryGetUUIDTime()
+     */
+    public long tryGetUUIDTime() {
+        long nanos = System.nanoTime();
+        Anchor current = (Anchor) anchor.get();
+        if (nanos - current.nanos >= reanchorNanos) {
+            Anchor next = reanchor(current, nanos, wallTime());
+            //Only one caller re-anchors, the others use whichever anchor is current
+            anchor.compareAndSet(current, next);
+            current = (Anchor) anchor.get();
+        }
+        return ticks.next(current.time(nanos));
+    }
+
+    /**
+     * <p>Returns the anchor corrected towards the system clock.</p>
+     *
+     * @param current the current anchor.
+     * @param nanos the value of <code>System.nanoTime()</code>.
+     * @param wall the system clock at <code>nanos</code> in 100ns intervals.
+     * @return the new anchor at <code>nanos</code>.
+     */
+    static Anchor reanchor(Anchor current, long nanos, long wall) {
+        long time = current.time(nanos);
+        long drift = wall - time;
+        long correction;
+        if (Math.abs(drift) > STEP_THRESHOLD * INTERVALS_PER_MILLI) {
+            correction = drift;
+        } else if (Math.abs(drift) < INTERVALS_PER_MILLI) {
+            //Within the resolution of the system clock
+            correction = 0;
+        } else {
+            correction = Math.max(-MAX_CORRECTION, Math.min(MAX_CORRECTION, drift));
+        }
+        return new Anchor(time + correction, nanos);
+    }
+
+    /**
+     * <p>Returns the system clock in 100ns intervals since the Gregorian change offset.</p>
+     *
+     * @return the system clock in 100ns intervals.
+     */
+    private static long wallTime() {
+        return (System.currentTimeMillis() + GREGORIAN_CHANGE_OFFSET) * INTERVALS_PER_MILLI;
+    }
+
+    /**
+     * <p>A UUID time and the value of <code>System.nanoTime()</code> at that time.</p>
+     */
+    static final class Anchor {
+        /** The UUID time in 100ns intervals. */
+        final long time;
+        /** The value of <code>System.nanoTime()</code>. */
+        final long nanos;
+
+        /**
+         * Constructor.
+         *
+         * @param anchorTime the UUID time in 100ns intervals.
+         * @param anchorNanos the value of <code>System.nanoTime()</code> at that time.
+         */
+        Anchor(long anchorTime, long anchorNanos) {
+            time = anchorTime;
+            nanos = anchorNanos;
+        }
+
+        /**
+         * <p>Returns the UUID time at a value of <code>System.nanoTime()</code>.</p>
+         *
+         * @param now the value of <code>System.nanoTime()</code>.
+         * @return the UUID time in 100ns intervals.
+         */
+        long time(long now) {
+            return time + (now - nanos) / NANOS_PER_INTERVAL;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+/**
+ * <p>A {@link Clock} that reports running out of timestamps in a system time
+ * interval with a return value rather than an <code>OverClockedException</code>,
+ * so callers handling it routinely do not pay for creating an exception and
+ * filling in its stack trace.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public interface NonThrowingClock extends Clock {
+
+    /** Returned by {@link #tryGetUUIDTime()} when the clock is over clocked. */
+    long OVER_CLOCKED = -1L;
+
+    /**
+     * <p>Returns the current time, or <code>OVER_CLOCKED</code> where
+     * <code>getUUIDTime</code> would throw an <code>OverClockedException</code>.</p>
+     *
+     * @return the current time in 100-nano second intervals since 00:00:00.00,
+     * 15 October 1582 UTC, or <code>OVER_CLOCKED</code>.
+     */
+    long tryGetUUIDTime();
+}
@@ -27,12 +27,9 @@ package org.apache.commons.id.uuid.clock;
  * @version $Revision: 480488 $ $Date: 2006-11-29 00:57:26 -0800 (Wed, 29 Nov 2006) $
  */
 
-public final class SystemClockImpl implements Clock {
-    /** Counter for the number of calls during the current millisecond */
-    private long generatedThisMilli = 0;
-
-    /** The current time in milliseconds held in this clock thread. */
-    private long currentTimeMillis;
+public final class SystemClockImpl implements NonThrowingClock {
+    /** The tick counter within the current millisecond. */
+    private final TickCounter ticks = new TickCounter();
 
     /**
      * <p>Public constructor.</p>
@@ -41,36 +38,21 @@ public final class SystemClockImpl implements Clock {
         super();
     }
 
-    /** @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime() */
+    /**
+     * <p>Returns the current time in 100ns intervals since the Gregorian change
+     * offset. Concurrent callers are served without locking.</p>
+     *
+     * @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime()
+     */
     public long getUUIDTime() throws OverClockedException {
-        return getTimeSynchronized();
+        return TickCounter.getUUIDTime(this);
     }
 
     /**
-     * <p>Object synchronized method returns the current time in 100ns
-     * intervals since the Gregorian change offset.</p>
-     *
-     * @return  the current time in 100ns intervals since the Gregorian change
-     *          offset.
-     * @throws  OverClockedException an exception raised if too many timestamps
-     *          have been generated for the system time interval.
+     * @see org.apache.commons.id.uuid.clock.NonThrowingClock#tryGetUUIDTime()
      */
-    private synchronized long getTimeSynchronized()
-            throws OverClockedException {
-        if (currentTimeMillis != System.currentTimeMillis()) {
-            currentTimeMillis = System.currentTimeMillis();
-            generatedThisMilli = 0;
-        }
+    public long tryGetUUIDTime() {
         // Set time as current time millis plus offset times 100 ns ticks
-        long currentTime =
-            (currentTimeMillis + GREGORIAN_CHANGE_OFFSET)
-                * INTERVALS_PER_MILLI;
-
-        // Return the same time - generator/client code must check to see if overclocked
-        if (generatedThisMilli + 1 >= INTERVALS_PER_MILLI) {
-            throw new OverClockedException();
-        }
-        // Return the uuid time plus the artifical tick incremented
-        return (currentTime + generatedThisMilli++);
+        return ticks.next((System.currentTimeMillis() + GREGORIAN_CHANGE_OFFSET) * INTERVALS_PER_MILLI);
     }
 }
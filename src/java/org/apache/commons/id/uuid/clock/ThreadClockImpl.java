@@ -31,10 +31,14 @@ package org.apache.commons.id.uuid.clock;
  * 10,000 or more uuid's may be generated in a millisecond this Clock
  * implementation may be required.</p>
  *
+ * @deprecated Every call takes the instance and class monitors, and the clock
+ * thread is restarted from the calling thread after it expires; use
+ * {@link CachedClockImpl}, which serves callers without locking.
  * @author Commons-Id Team
  * @version $Revision: 480488 $ $Date: 2006-11-29 00:57:26 -0800 (Wed, 29 Nov 2006) $
  */
 
+@Deprecated
 public final class ThreadClockImpl extends Thread implements Clock {
 
     /** Default time to live of the Clock thread in milliseconds */
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>The artificial tick counter of the <code>Clock</code> implementations.
+ * Within the millisecond following the last time returned, each call is given
+ * the next tick, up to 10,000 per millisecond, after which the clock is over
+ * clocked. Concurrent callers are served without locking.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+final class TickCounter {
+
+    /** The last time returned, the current millisecond plus the number of
+     *  calls made before during that millisecond. */
+    private final AtomicLong lastTime = new AtomicLong();
+
+    /**
+     * <p>Returns the time following the last time returned, from the current time.</p>
+     *
+     * @param currentTime the current time in 100ns intervals.
+     * @return the time to return, or <code>NonThrowingClock.OVER_CLOCKED</code>
+     * if the last time returned is a millisecond ahead of the current time.
+     */
+    long next(long currentTime) {
+        while (true) {
+            long last = lastTime.get();
+            long next = currentTime;
+            if (last >= currentTime && last < currentTime + Clock.INTERVALS_PER_MILLI) {
+                // Return the uuid time plus the artifical tick incremented
+                next = last + 1;
+                // generator/client code must check to see if overclocked
+                if (next - currentTime + 1 >= Clock.INTERVALS_PER_MILLI) {
+                    return NonThrowingClock.OVER_CLOCKED;
+                }
+            }
+            if (lastTime.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * <p>Reads a clock, throwing when it is over clocked, as
+     * {@link Clock#getUUIDTime()} does.</p>
+     *
+     * @param clock the clock to read.
+     * @return the time of the clock in 100ns intervals.
+     * @throws OverClockedException if the clock is over clocked.
+     */
+    static long getUUIDTime(NonThrowingClock clock) throws OverClockedException {
+        long time = clock.tryGetUUIDTime();
+        if (time == NonThrowingClock.OVER_CLOCKED) {
+            throw new OverClockedException();
+        }
+        return time;
+    }
+}
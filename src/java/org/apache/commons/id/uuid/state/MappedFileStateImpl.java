@@ -0,0 +1,530 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.state;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * <p>The <code>MappedFileStateImpl</code> is an implementation of the
+ * <code>State</code> interface backed by a fixed layout binary file, which is
+ * memory mapped when loaded. Storing the state writes the clock sequence, last
+ * timestamp and checksum of each node record in place, and optionally forces
+ * the mapped file to stable storage, instead of rewriting the whole file.</p>
+ * <p>The file starts with a 32 byte header: the magic number
+ * <code>0x55554944</code>, the format version, the number of nodes, a CRC-32
+ * checksum of the header and the synch interval, followed by 8 reserved bytes.
+ * Then follows a 24 byte record for each node: the 6 node identifier bytes, the
+ * clock sequence, the last timestamp, a CRC-32 checksum of the previous 16
+ * bytes and 4 reserved bytes. All values are big-endian. A node whose record
+ * fails its checksum, as after a crash during a store, is loaded with a new
+ * clock sequence.</p>
+ * <p>The file is located with the <code>FILENAME_KEY</code> system property,
+ * and created with {@link #create(File, Set, long)} or
+ * {@link #create(File, int, long)}, or converted from the XML state format with
+ * {@link #convert(InputStream, File)} or the <code>main</code> method.</p>
+ * <p>Several processes may share one state file by leasing node slots: with a
+ * lease count set, through the <code>LEASE_KEY</code> system property or
+ * {@link #setLeaseCount(int)}, <code>load</code> takes an exclusive
+ * <code>FileChannel</code> lock on the records of up to that many nodes, skipping
+ * records locked by other processes (or other instances in this process), and
+ * only those nodes are returned by <code>getNodes</code> and stored. The locks
+ * are held until {@link #close()} is called or the process exits, so no two
+ * processes generate UUID's with the same node.</p>
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public class MappedFileStateImpl implements State {
+
+    /** The serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The key of the system property holding the path of the state file. */
+    public static final String FILENAME_KEY = "org.apache.commons.id.uuid.state.mapped.filename";
+
+    /** The key of the system property disabling forcing stores to stable storage when &quot;false&quot;. */
+    public static final String FORCE_KEY = "org.apache.commons.id.uuid.state.mapped.force";
+
+    /** The key of the system property holding the number of node slots each process leases. */
+    public static final String LEASE_KEY = "org.apache.commons.id.uuid.state.mapped.lease";
+
+    /** The magic number starting the state file, &quot;UUID&quot; in ASCII. */
+    static final int MAGIC = 0x55554944;
+
+    /** The format version of the state file. */
+    static final int FORMAT_VERSION = 1;
+
+    /** The length of the header. */
+    static final int HEADER_LENGTH = 32;
+
+    /** The offset of the header checksum. */
+    static final int HEADER_CRC_OFFSET = 12;
+
+    /** The length of a node record. */
+    static final int RECORD_LENGTH = 24;
+
+    /** The length of a node identifier. */
+    static final int NODE_ID_LENGTH = 6;
+
+    /** The offset of the clock sequence in a node record. */
+    static final int CLOCK_SEQUENCE_OFFSET = 6;
+
+    /** The offset of the last timestamp in a node record. */
+    static final int TIMESTAMP_OFFSET = 8;
+
+    /** The offset of the checksum in a node record, also the length of the checksummed bytes. */
+    static final int RECORD_CRC_OFFSET = 16;
+
+    /** The nodes loaded. */
+    private final Set nodes = new HashSet();
+
+    /** The offset of the record of each node loaded. */
+    private transient Map records = new HashMap();
+
+    /** The mapped state file. */
+    private transient MappedByteBuffer buffer;
+
+    /** The synch interval stored in the header. */
+    private long synchInterval = Long.MAX_VALUE;
+
+    /** Whether stores are forced to stable storage. */
+    private boolean force = !"false".equalsIgnoreCase(System.getProperty(FORCE_KEY));
+
+    /** The number of node slots to lease, 0 to use all nodes without leasing. */
+    private int leaseCount = -1;
+
+    /** The channel holding the leases, open while nodes are leased. */
+    private transient FileChannel channel;
+
+    /** The locks leasing the node records. */
+    private transient List leases = new ArrayList();
+
+    /**
+     * <p>Constructs a MappedFileStateImpl.</p>
+     */
+    public MappedFileStateImpl() {
+        super();
+    }
+
+    /**
+     * <p>Loads and maps the state file named by the <code>FILENAME_KEY</code> system property.</p>
+     *
+     * @throws IllegalStateException if the system property is not set, or the file
+     * is not a valid state file.
+     * @throws IOException if the file cannot be read or mapped.
+     * @see org.apache.commons.id.uuid.state.State#load()
+     */
+    public synchronized void load() throws Exception {
+        String fileName = System.getProperty(FILENAME_KEY);
+        if (fileName == null) {
+            throw new IllegalStateException("No value set for system property: " + FILENAME_KEY);
+        }
+        close();
+        int leasing = getLeaseCount();
+        RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+        try {
+            FileChannel fileChannel = file.getChannel();
+            long size = fileChannel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                throw new IllegalStateException(fileName + " is not a uuid state file");
+            }
+            buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (leasing > 0) {
+                channel = fileChannel;
+            }
+        } finally {
+            if (channel == null) {
+                file.close();
+            }
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION
+                || buffer.getInt(HEADER_CRC_OFFSET) != headerChecksum(buffer)) {
+            close();
+            throw new IllegalStateException(fileName + " is not a valid uuid state file");
+        }
+        int count = buffer.getInt(8);
+        if (count < 0 || buffer.capacity() != HEADER_LENGTH + count * RECORD_LENGTH) {
+            close();
+            throw new IllegalStateException(fileName + " is not a valid uuid state file");
+        }
+        synchInterval = buffer.getLong(16);
+        nodes.clear();
+        records.clear();
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_LENGTH + i * RECORD_LENGTH;
+            if (leasing > 0) {
+                if (leases.size() == leasing) {
+                    break;
+                }
+                FileLock lease = tryLease(offset);
+                if (lease == null) {
+                    continue;
+                }
+                leases.add(lease);
+            }
+            byte[] id = new byte[NODE_ID_LENGTH];
+            for (int j = 0; j < NODE_ID_LENGTH; j++) {
+                id[j] = buffer.get(offset + j);
+            }
+            Node node;
+            if (buffer.getInt(offset + RECORD_CRC_OFFSET) == recordChecksum(buffer, offset)) {
+                node = new Node(id, buffer.getLong(offset + TIMESTAMP_OFFSET),
+                        buffer.getShort(offset + CLOCK_SEQUENCE_OFFSET));
+            } else {
+                node = new Node(id);
+            }
+            nodes.add(node);
+            records.put(node, Integer.valueOf(offset));
+        }
+        if (leasing > 0 && leases.isEmpty()) {
+            close();
+            throw new IllegalStateException("All " + count + " node slots of " + fileName
+                    + " are leased by other processes");
+        }
+    }
+
+    /**
+     * <p>Locks the record at an offset, unless another process or instance holds it.</p>
+     *
+     * @param offset the index of the record.
+     * @return the lock, or null if the record is held.
+     * @throws IOException if the lock cannot be requested.
+     */
+    private FileLock tryLease(int offset) throws IOException {
+        try {
+            return channel.tryLock(offset, RECORD_LENGTH, false);
+        } catch (OverlappingFileLockException ofle) {
+            //Leased by another instance in this process
+            return null;
+        }
+    }
+
+    /**
+     * <p>Returns the number of node slots leased by <code>load</code>, 0 if nodes
+     * are not leased.</p>
+     *
+     * @return the number of node slots to lease.
+     * @throws IllegalStateException if the <code>LEASE_KEY</code> system property
+     * is not a number of slots.
+     */
+    public synchronized int getLeaseCount() {
+        if (leaseCount < 0) {
+            String value = System.getProperty(LEASE_KEY);
+            if (value == null) {
+                return 0;
+            }
+            try {
+                int l = Integer.parseInt(value);
+                if (l >= 0) {
+                    return l;
+                }
+            } catch (NumberFormatException nfe) {
+                //Reported below
+            }
+            throw new IllegalStateException("Invalid " + LEASE_KEY + ": " + value);
+        }
+        return leaseCount;
+    }
+
+    /**
+     * <p>Sets the number of node slots leased by the next <code>load</code>.</p>
+     *
+     * @param count the number of node slots to lease, 0 to use all nodes without leasing.
+     * @throws IllegalArgumentException if <code>count</code> is negative.
+     */
+    public synchronized void setLeaseCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Lease count must not be negative");
+        }
+        leaseCount = count;
+    }
+
+    /**
+     * <p>Releases the leased node slots. Nodes are no longer stored until the
+     * state is loaded again.</p>
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        records.clear();
+        leases.clear();
+        if (channel != null) {
+            FileChannel leased = channel;
+            channel = null;
+            //Closing the channel releases its locks
+            leased.close();
+        }
+    }
+
+    /**
+     * <p>Reads the state back without the mapped file and the leases, so the
+     * nodes are not stored until the state is loaded again.</p>
+     *
+     * @param in the stream to read from.
+     * @throws IOException if the stream cannot be read.
+     * @throws ClassNotFoundException if a class of the state cannot be found.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        records = new HashMap();
+        leases = new ArrayList();
+    }
+
+    /**
+     * @see State#getSynchInterval
+     */
+    public long getSynchInterval() {
+        return synchInterval;
+    }
+
+    /**
+     * @see org.apache.commons.id.uuid.state.State#getNodes()
+     */
+    public Set getNodes() {
+        return nodes;
+    }
+
+    /**
+     * <p>Returns true if stores are forced to stable storage.</p>
+     *
+     * @return true if stores are forced to stable storage.
+     */
+    public boolean isForce() {
+        return force;
+    }
+
+    /**
+     * <p>Sets whether stores are forced to stable storage. Without forcing, the
+     * operating system writes the mapped file back at its own pace, which
+     * survives the JVM crashing but not the system crashing.</p>
+     *
+     * @param force true to force stores to stable storage.
+     */
+    public void setForce(boolean force) {
+        this.force = force;
+    }
+
+    /**
+     * <p>Stores the clock sequence and last timestamp of each loaded node in place.
+     * Nodes not loaded from the file are ignored.</p>
+     *
+     * @see org.apache.commons.id.uuid.state.State#store(java.util.Set)
+     */
+    public synchronized void store(Set nodeSet) throws IOException {
+        Iterator it = nodeSet.iterator();
+        while (it.hasNext()) {
+            Node node = (Node) it.next();
+            writeRecord(node, node.getLastTimestamp());
+        }
+        if (force && buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * <p>Stores the clock sequence of each loaded node in place, with the given
+     * timestamp as its last timestamp. Nodes not loaded from the file are ignored.</p>
+     *
+     * @see org.apache.commons.id.uuid.state.State#store(java.util.Set, long)
+     */
+    public synchronized void store(Set nodeSet, long timestamp) {
+        Iterator it = nodeSet.iterator();
+        while (it.hasNext()) {
+            writeRecord((Node) it.next(), timestamp);
+        }
+        if (force && buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * <p>Writes the record of a node.</p>
+     *
+     * @param node the node to write.
+     * @param timestamp the last timestamp to write.
+     */
+    private void writeRecord(Node node, long timestamp) {
+        Integer offset = (Integer) records.get(node);
+        if (offset == null) {
+            return;
+        }
+        int off = offset.intValue();
+        buffer.putShort(off + CLOCK_SEQUENCE_OFFSET, node.getClockSequence());
+        buffer.putLong(off + TIMESTAMP_OFFSET, timestamp);
+        buffer.putInt(off + RECORD_CRC_OFFSET, recordChecksum(buffer, off));
+    }
+
+    /**
+     * <p>Creates a state file holding the given nodes, replacing any existing file.</p>
+     *
+     * @param file the state file to create.
+     * @param nodeSet the <code>Node</code>s to store.
+     * @param synchInterval the number of milliseconds to wait between writing to stable storage.
+     * @throws IllegalArgumentException if a node identifier is not 6 bytes long.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void create(File file, Set nodeSet, long synchInterval) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH + nodeSet.size() * RECORD_LENGTH);
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, FORMAT_VERSION);
+        buf.putInt(8, nodeSet.size());
+        buf.putLong(16, synchInterval);
+        buf.putInt(HEADER_CRC_OFFSET, headerChecksum(buf));
+        int offset = HEADER_LENGTH;
+        Iterator it = nodeSet.iterator();
+        while (it.hasNext()) {
+            Node node = (Node) it.next();
+            byte[] id = node.getNodeIdentifier();
+            if (id.length != NODE_ID_LENGTH) {
+                throw new IllegalArgumentException("Node identifier must be 6 bytes long");
+            }
+            for (int j = 0; j < NODE_ID_LENGTH; j++) {
+                buf.put(offset + j, id[j]);
+            }
+            buf.putShort(offset + CLOCK_SEQUENCE_OFFSET, node.getClockSequence());
+            buf.putLong(offset + TIMESTAMP_OFFSET, node.getLastTimestamp());
+            buf.putInt(offset + RECORD_CRC_OFFSET, recordChecksum(buf, offset));
+            offset += RECORD_LENGTH;
+        }
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            channel.truncate(0);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * <p>Creates a state file holding the given number of node slots, each with a
+     * random node identifier and a new clock sequence, replacing any existing file.</p>
+     *
+     * @param file the state file to create.
+     * @param slots the number of node slots.
+     * @param synchInterval the number of milliseconds to wait between writing to stable storage.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void create(File file, int slots, long synchInterval) throws IOException {
+        Set slotNodes = new HashSet();
+        while (slotNodes.size() < slots) {
+            slotNodes.add(new Node(StateHelper.randomNodeIdentifier()));
+        }
+        create(file, slotNodes, synchInterval);
+    }
+
+    /**
+     * <p>Converts state in the XML format read by <code>ReadOnlyResourceStateImpl</code>
+     * to a state file.</p>
+     *
+     * @param xml the XML state.
+     * @param file the state file to create.
+     * @throws Exception if the XML cannot be parsed or the file cannot be written.
+     */
+    public static void convert(InputStream xml, File file) throws Exception {
+        Set converted;
+        long interval;
+        synchronized (ReadOnlyResourceStateImpl.class) {
+            //The XML parser collects nodes in a set shared by all instances
+            Set previous = new HashSet(ReadOnlyResourceStateImpl.nodes);
+            long previousInterval = ReadOnlyResourceStateImpl.synchronizeInterval;
+            try {
+                ReadOnlyResourceStateImpl.nodes.clear();
+                ReadOnlyResourceStateImpl.synchronizeInterval = Long.MAX_VALUE;
+                new ReadOnlyResourceStateImpl().parse(xml);
+                converted = new HashSet(ReadOnlyResourceStateImpl.nodes);
+                interval = ReadOnlyResourceStateImpl.synchronizeInterval;
+            } finally {
+                ReadOnlyResourceStateImpl.nodes.clear();
+                ReadOnlyResourceStateImpl.nodes.addAll(previous);
+                ReadOnlyResourceStateImpl.synchronizeInterval = previousInterval;
+            }
+        }
+        create(file, converted, interval);
+    }
+
+    /**
+     * <p>Converts an XML state file to a binary state file.</p>
+     *
+     * @param args the XML state file and the binary state file to create.
+     * @throws Exception if the conversion fails.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: MappedFileStateImpl <xml state file> <binary state file>");
+            return;
+        }
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            convert(in, new File(args[1]));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * <p>Returns the checksum of a header, skipping its checksum field.</p>
+     *
+     * @param buf the buffer holding the header at index 0.
+     * @return the CRC-32 checksum of the header.
+     */
+    private static int headerChecksum(ByteBuffer buf) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < HEADER_LENGTH; i++) {
+            if (i < HEADER_CRC_OFFSET || i >= HEADER_CRC_OFFSET + 4) {
+                crc.update(buf.get(i));
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * <p>Returns the checksum of a node record.</p>
+     *
+     * @param buf the buffer holding the record.
+     * @param offset the index of the record.
+     * @return the CRC-32 checksum of the first 16 bytes of the record.
+     */
+    private static int recordChecksum(ByteBuffer buf, int offset) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < RECORD_CRC_OFFSET; i++) {
+            crc.update(buf.get(offset + i));
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -18,8 +18,10 @@
 package org.apache.commons.id.uuid.state;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.id.uuid.clock.Clock;
+import org.apache.commons.id.uuid.clock.NonThrowingClock;
 import org.apache.commons.id.uuid.clock.OverClockedException;
 
 
@@ -28,6 +30,20 @@ import org.apache.commons.id.uuid.clock.OverClockedException;
  * node identifier. The node id is generally the IEEE 802 address, the clock
  * sequence, and last timestamp generated are all attributes of a node that need
  * to be maintained.</p>
+ * <p>Timestamps are issued without locking: the last timestamp is held in an
+ * atomically updated word and advanced with compare-and-set. When the clock
+ * moves backwards the clock sequence is incremented while the word is parked on
+ * a marker value, so a timestamp returned by <code>getUUIDTime</code> belongs to
+ * the clock sequence if <code>getClockSequence</code> returns the same value
+ * immediately before and after the call.</p>
+ * <p>A <code>Node</code> told to resume after a timestamp, typically a
+ * watermark stored ahead of the clock before a restart, issues timestamps
+ * counting up from it until the clock passes it, instead of taking the clock
+ * to have moved backwards.</p>
+ * <p>{@link #tryGetUUIDTimes(int, long)} reports the node being over clocked
+ * with a return value instead of an exception, reading the clock through
+ * {@link NonThrowingClock} when it implements it, and can issue timestamps
+ * further ahead of the clock than one millisecond.</p>
  *
  * @author Commons-Id team
  * @version $Id: Node.java 480488 2006-11-29 08:57:26Z bayard $
@@ -37,15 +53,30 @@ public class Node {
     /** The node identifier bytes this class represents. */
     private byte[] id;
 
+    /** Marker held by the last time stamp while the clock sequence changes. */
+    private static final long SEQUENCE_CHANGING = -1L;
+
     /** The clock sequence associated with this node. */
-    private short clockSequence;
+    private volatile short clockSequence;
 
     /** The last time stamp used. */
-    private long lastTimestamp;
+    private final AtomicLong lastTimestamp = new AtomicLong();
+
+    /** The time stamp to resume after until the clock passes it, 0 when not resuming. */
+    private volatile long resumeTimestamp;
 
     /** The Clock implementation instance for this Node. */
     private Clock clock;
 
+    /** The clock, if it reports being over clocked without throwing. */
+    private NonThrowingClock tryClock;
+
+    /** The last time read from the clock, 0 before the first. */
+    private volatile long lastClockTime;
+
+    /** The largest lead on the clock time stamps were issued with. */
+    private final AtomicLong maxLeadIssued = new AtomicLong(Clock.INTERVALS_PER_MILLI);
+
     /**
      * <p>Constructor used to create a <node>Node</node> when the lastTimestamp
      * and clock sequence are unavailable.</p>
@@ -56,7 +87,7 @@ public class Node {
     public Node(byte[] nodeId) {
         id = nodeId;
         clockSequence = StateHelper.newClockSequence();
-        clock = StateHelper.getClockImpl();
+        setClock(StateHelper.getClockImpl());
     }
 
     /**
@@ -71,9 +102,19 @@ public class Node {
      */
     public Node(byte[] nodeId, long lastTime, short clockSeq) {
         id = nodeId;
-        lastTimestamp = lastTime;
+        lastTimestamp.set(lastTime);
         clockSequence = clockSeq;
-        clock = StateHelper.getClockImpl();
+        setClock(StateHelper.getClockImpl());
+    }
+
+    /**
+     * <p>Sets the clock of this node.</p>
+     *
+     * @param c the <code>Clock</code> implementation.
+     */
+    private void setClock(Clock c) {
+        clock = c;
+        tryClock = c instanceof NonThrowingClock ? (NonThrowingClock) c : null;
     }
 
     /**
@@ -96,29 +137,175 @@ public class Node {
     }
 
     /**
-     * <p>Increments the clock sequence in this node.</p>
+     * <p>Increments the clock sequence in this node. Only called by the thread
+     * which parked the last time stamp on the marker value.</p>
      */
     private void incrementClockSequence() {
         //Increment, but if it's greater than its 14-bits, reset it
-        if (++clockSequence > 0x3FFF) {
-            clockSequence = 0;
+        short next = (short) (clockSequence + 1);
+        if (next > 0x3FFF) {
+            next = 0;
         }
+        clockSequence = next;
     }
 
     /**
-     * <p>Returns the time in UUID time.</p>
+     * <p>Resumes issuing time stamps after the given time stamp, keeping the clock
+     * sequence. Until the clock passes it, time stamps are issued counting up from
+     * the larger of it and the last time stamp. Has no effect once the clock has
+     * passed it, except raising the last time stamp to it.</p>
+     *
+     * @param timestamp a time stamp no time stamp issued with the current clock
+     * sequence is greater than.
+     */
+    public void resumeAfter(long timestamp) {
+        while (true) {
+            long last = lastTimestamp.get();
+            if (last == SEQUENCE_CHANGING) {
+                Thread.yield();
+                continue;
+            }
+            if (last >= timestamp || lastTimestamp.compareAndSet(last, timestamp)) {
+                break;
+            }
+        }
+        resumeTimestamp = timestamp;
+    }
+
+    /**
+     * <p>Returns the time in UUID time. Each call returns a time greater than
+     * the previous one, unless the clock moved backwards, in which case the
+     * clock sequence is incremented first.</p>
      *
      * @return the time in UUID time.
      * @throws OverClockedException the max number of timestamps generated in
      * this interval has been exceeded.
+     * @see #getUUIDTimes(int)
      */
     public long getUUIDTime() throws OverClockedException {
-        long newTime = clock.getUUIDTime();
-        if (newTime <= lastTimestamp) {
-            incrementClockSequence();
+        return getUUIDTimes(1);
+    }
+
+    /**
+     * <p>Reserves a range of consecutive times in UUID time and returns the
+     * first of them. The times reserved are greater than those returned
+     * before, unless the clock moved backwards, in which case the clock
+     * sequence is incremented first.</p>
+     * <p>Callers racing each other may see clock readings slightly older than
+     * the last time issued; the range then starts after the last time issued,
+     * as long as it ends less than one millisecond ahead of the clock. Beyond
+     * that the node is over clocked, and one millisecond or more further behind
+     * the last time issued than any lead times were issued with, the clock is
+     * taken to have moved backwards.</p>
+     *
+     * @param count the number of times to reserve, at most one millisecond
+     * worth of UUID time.
+     * @return the first of <code>count</code> consecutive times in UUID time.
+     * @throws OverClockedException the max number of timestamps generated in
+     * this interval has been exceeded.
+     */
+    public long getUUIDTimes(int count) throws OverClockedException {
+        long time = tryGetUUIDTimes(count, Clock.INTERVALS_PER_MILLI);
+        if (time == NonThrowingClock.OVER_CLOCKED) {
+            throw new OverClockedException();
+        }
+        return time;
+    }
+
+    /**
+     * <p>Reserves a range of consecutive times in UUID time and returns the
+     * first of them, as {@link #getUUIDTimes(int)} does, but allowing the range
+     * to end up to <code>maxLead</code> ahead of the clock. With a lead of more
+     * than one millisecond, times are borrowed from the future even when the
+     * clock itself is over clocked, counting from its last reading.</p>
+     *
+     * @param count the number of times to reserve, at most one millisecond
+     * worth of UUID time.
+     * @param maxLead the lead on the clock in 100ns intervals at which the node
+     * is over clocked, at least one millisecond worth.
+     * @return the first of <code>count</code> consecutive times in UUID time, or
+     * <code>NonThrowingClock.OVER_CLOCKED</code> if the node is over clocked.
+     */
+    public long tryGetUUIDTimes(int count, long maxLead) {
+        if (count < 1 || count > Clock.INTERVALS_PER_MILLI) {
+            throw new IllegalArgumentException("Cannot reserve " + count + " times");
+        }
+        if (maxLead < Clock.INTERVALS_PER_MILLI) {
+            throw new IllegalArgumentException("Lead must be at least " + Clock.INTERVALS_PER_MILLI);
+        }
+        //Time stamps up to the lead ahead of the clock do not mean it moved backwards
+        long issued = maxLeadIssued.get();
+        while (maxLead > issued && !maxLeadIssued.compareAndSet(issued, maxLead)) {
+            issued = maxLeadIssued.get();
+        }
+        long backwards = Math.max(issued, maxLead) + Clock.INTERVALS_PER_MILLI;
+        while (true) {
+            long last = lastTimestamp.get();
+            if (last == SEQUENCE_CHANGING) {
+                Thread.yield();
+                continue;
+            }
+            //Read the clock after the last time stamp, so it is never behind it by a race
+            long newTime = readClock();
+            boolean borrowing = false;
+            if (newTime == NonThrowingClock.OVER_CLOCKED) {
+                newTime = lastClockTime;
+                if (maxLead == Clock.INTERVALS_PER_MILLI || newTime == 0) {
+                    return NonThrowingClock.OVER_CLOCKED;
+                }
+                //The clock is at least at its last reading
+                borrowing = true;
+            } else {
+                lastClockTime = newTime;
+            }
+            long resume = resumeTimestamp;
+            if (resume != 0) {
+                if (newTime <= resume) {
+                    //Count up after the resumed time stamp until the clock passes it
+                    if (lastTimestamp.compareAndSet(last, last + count)) {
+                        return last + 1;
+                    }
+                    continue;
+                }
+                resumeTimestamp = 0;
+            }
+            long next;
+            if (newTime > last) {
+                next = newTime;
+            } else if (borrowing || last - newTime < backwards) {
+                next = last + 1;
+            } else {
+                if (lastTimestamp.compareAndSet(last, SEQUENCE_CHANGING)) {
+                    incrementClockSequence();
+                    lastTimestamp.set(newTime + count - 1);
+                    return newTime;
+                }
+                continue;
+            }
+            long end = next + count - 1;
+            if (end - newTime >= maxLead) {
+                return NonThrowingClock.OVER_CLOCKED;
+            }
+            if (lastTimestamp.compareAndSet(last, end)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * <p>Reads the clock.</p>
+     *
+     * @return the time in UUID time, or <code>NonThrowingClock.OVER_CLOCKED</code>.
+     */
+    private long readClock() {
+        if (tryClock != null) {
+            return tryClock.tryGetUUIDTime();
+        }
+        try {
+            return clock.getUUIDTime();
+        } catch (OverClockedException oce) {
+            return NonThrowingClock.OVER_CLOCKED;
         }
-        lastTimestamp = newTime;
-        return newTime;
     }
 
     /**
@@ -155,7 +342,12 @@ public class Node {
      * @return the last uuid timestamp from this Node.
      */
     public long getLastTimestamp() {
-        return lastTimestamp;
+        long last = lastTimestamp.get();
+        while (last == SEQUENCE_CHANGING) {
+            Thread.yield();
+            last = lastTimestamp.get();
+        }
+        return last;
     }
 
 }
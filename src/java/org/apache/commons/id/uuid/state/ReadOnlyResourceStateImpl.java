@@ -64,8 +64,11 @@ public class ReadOnlyResourceStateImpl implements State {
     }
 
     /**
-     * <p>Loads the System.property &quot;commons.uuid.configFileName&quot;
-     * (default is &quot;uuid.conf&quot;) using commons.discovery.</p>
+     * <p>Loads the system resource named by the System.property
+     * &quot;commons.uuid.configFileName&quot;. This class is the
+     * <code>State</code> that <code>StateHelper</code> falls back to when no
+     * implementation is set, named by a system property or registered with
+     * <code>java.util.ServiceLoader</code>.</p>
      * <p>
      * The uuid-[n].conf file is an xml file with the following syntax:<br>
      * <pre>
@@ -18,23 +18,88 @@
 package org.apache.commons.id.uuid.state;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
 /**
  * <p>The <code>ReadWriteFileStateImpl</code> is an implementation of the
  * <code>State</code> interface. This implementation provides better guarantees
  * that no duplicate UUID's will be generated since the last time stamp, and
- * last clock sequence are stored to a persistent file.
+ * last clock sequence are stored to a persistent file.</p>
+ * <p>The file is replaced atomically: the state is written to a temporary
+ * file, which is forced to stable storage and renamed over the state file.
+ * How often writes are forced is set with the <code>FSYNC_KEY</code> system
+ * property, &quot;always&quot; (the default), &quot;never&quot; or a number
+ * of milliseconds, or with {@link #setFsyncInterval(long)}. With an interval, a
+ * write skipping the fsync is forced later by a daemon timer shared by all
+ * instances, once the interval since the last fsync has elapsed, so stored
+ * state is never left unforced for longer than the interval. With
+ * &quot;never&quot; stored state, including the watermark
+ * <code>NodeManagerImpl</code> reserves ahead of the clock, may be lost if the
+ * system crashes. The numbers of writes, failed writes and fsyncs, and the
+ * write latency are exposed.</p>
  *
  * @author Commons-Id team
  * @version $Id: ReadWriteFileStateImpl.java 480488 2006-11-29 08:57:26Z bayard $
  */
 public class ReadWriteFileStateImpl extends ReadOnlyResourceStateImpl implements State {
 
+    /** The key of the system property configuring how often writes are forced to stable storage. */
+    public static final String FSYNC_KEY = "org.apache.commons.id.uuid.state.fsync";
+
+    /** Fsync interval forcing every write to stable storage. */
+    public static final long FSYNC_ALWAYS = 0;
+
+    /** Fsync interval never forcing writes to stable storage. */
+    public static final long FSYNC_NEVER = -1;
+
+    /** Nanoseconds in a millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** The timer forcing deferred writes, shared by all instances, null until needed. */
+    private static Timer syncTimer;
+
+    /** Milliseconds between fsyncs, FSYNC_ALWAYS or FSYNC_NEVER. */
+    private long fsyncInterval = configuredFsyncInterval();
+
+    /** The System.nanoTime of the last fsync. */
+    private long lastFsyncNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    /** Number of successful writes. */
+    private long writeCount;
+
+    /** Number of failed writes. */
+    private long failureCount;
+
+    /** Number of fsyncs. */
+    private long fsyncCount;
+
+    /** Duration of the last write in nanoseconds. */
+    private long lastWriteNanos;
+
+    /** Duration of the slowest write in nanoseconds. */
+    private long maxWriteNanos;
+
+    /** Duration of all writes in nanoseconds. */
+    private long totalWriteNanos;
+
+    /** The state file written without an fsync, null when all writes are forced. */
+    private transient File unsynced;
+
+    /** Whether a deferred fsync is scheduled. */
+    private transient boolean syncScheduled;
+
     /**
      * Persists the UUID generator state to file.
      *
@@ -44,6 +109,21 @@ public class ReadWriteFileStateImpl extends ReadOnlyResourceStateImpl implements
         writeXML(genXML(nodes));
     }
 
+    /**
+     * Persists the UUID generator state to file, with the given timestamp as the
+     * last timestamp of all nodes.
+     *
+     * @throws IllegalStateException if the state file cannot be replaced.
+     * @see org.apache.commons.id.uuid.state.State#store(java.util.Set, long)
+     */
+    public void store(Set nodes, long timestamp) {
+        try {
+            writeXML(genXML(nodes, timestamp));
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Cannot store the UUID state: " + ioe.getMessage(), ioe);
+        }
+    }
+
     /**
      * Returns an XML string of the node Set.
      *
@@ -100,37 +180,247 @@ public class ReadWriteFileStateImpl extends ReadOnlyResourceStateImpl implements
     }
 
     /**
-     * <p>Writes the XML String to the file system.</p>
+     * <p>Sets how often writes of the state file are forced to stable storage:
+     * <code>FSYNC_ALWAYS</code>, <code>FSYNC_NEVER</code>, or at most once every
+     * <code>millis</code> milliseconds. Writes skipping the fsync are still
+     * atomic; with an interval they are forced once it has elapsed, while with
+     * <code>FSYNC_NEVER</code> they may be lost if the system crashes.</p>
+     *
+     * @param millis the fsync interval in milliseconds, <code>FSYNC_ALWAYS</code> or
+     * <code>FSYNC_NEVER</code>.
+     * @throws IllegalArgumentException if <code>millis</code> is less than <code>FSYNC_NEVER</code>.
+     */
+    public synchronized void setFsyncInterval(long millis) {
+        if (millis < FSYNC_NEVER) {
+            throw new IllegalArgumentException("Invalid fsync interval " + millis);
+        }
+        fsyncInterval = millis;
+    }
+
+    /**
+     * <p>Returns how often writes of the state file are forced to stable storage.</p>
+     *
+     * @return the fsync interval in milliseconds, <code>FSYNC_ALWAYS</code> or
+     * <code>FSYNC_NEVER</code>.
+     */
+    public synchronized long getFsyncInterval() {
+        return fsyncInterval;
+    }
+
+    /**
+     * <p>Returns the number of successful writes of the state file.</p>
+     *
+     * @return the number of writes.
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * <p>Returns the number of writes of the state file that failed.</p>
+     *
+     * @return the number of failed writes.
+     */
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * <p>Returns the number of writes of the state file forced to stable storage.</p>
+     *
+     * @return the number of fsyncs.
+     */
+    public synchronized long getFsyncCount() {
+        return fsyncCount;
+    }
+
+    /**
+     * <p>Returns the duration of the last successful write, including any fsync.</p>
+     *
+     * @return the duration of the last write in nanoseconds.
+     */
+    public synchronized long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    /**
+     * <p>Returns the duration of the slowest successful write, including any fsync.</p>
+     *
+     * @return the duration of the slowest write in nanoseconds.
+     */
+    public synchronized long getMaxWriteNanos() {
+        return maxWriteNanos;
+    }
+
+    /**
+     * <p>Returns the total duration of the successful writes.</p>
+     *
+     * @return the duration of all writes in nanoseconds.
+     */
+    public synchronized long getTotalWriteNanos() {
+        return totalWriteNanos;
+    }
+
+    /**
+     * <p>Writes the XML String to the file system. The XML is written to a
+     * temporary file in the same directory, forced to stable storage according
+     * to the fsync interval, and renamed over the state file atomically, so a
+     * crash leaves either the old or the new state.</p>
      *
      * @param xml the xml string to write.
+     * @throws IOException if the state file exists but cannot be replaced.
      */
-    private void writeXML(String xml) {
+    private synchronized void writeXML(String xml) throws IOException {
         String resourceName = System.getProperty(CONFIG_FILENAME_KEY);
         if (resourceName == null) {
             return;
-        } else {
-            URL rUrl = ClassLoader.getSystemResource(resourceName);
-            if (rUrl != null) {
-                File file = new File(rUrl.getFile());
-                if (file != null && file.canWrite()) {
-                    FileWriter fw = null;
-                    try {
-                        fw = new FileWriter(file);
-                        fw.write(xml);
-                        fw.close();
-                    } catch (IOException ioe) {
-                        //@TODO log it?
-                    } finally {
-                        try {
-                            fw.close();
-                        } catch (IOException ioee) {
-                            ; //Nothing to do.
-                        }
-                        fw = null;
-                        file = null;
+        }
+        URL rUrl = ClassLoader.getSystemResource(resourceName);
+        if (rUrl == null) {
+            return;
+        }
+        File file = new File(rUrl.getFile());
+        long start = System.nanoTime();
+        try {
+            if (!file.canWrite()) {
+                throw new IOException(file + " is not writable");
+            }
+            boolean fsync = fsyncInterval == FSYNC_ALWAYS
+                || (fsyncInterval != FSYNC_NEVER && (start - lastFsyncNanos) / NANOS_PER_MILLI >= fsyncInterval);
+            File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+            try {
+                FileOutputStream out = new FileOutputStream(temp);
+                try {
+                    out.write(xml.getBytes("UTF-8"));
+                    if (fsync) {
+                        out.getFD().sync();
                     }
+                } finally {
+                    out.close();
+                }
+                Path target = file.toPath();
+                try {
+                    Files.move(temp.toPath(), target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException amnse) {
+                    Files.move(temp.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                temp.delete();
+            }
+            if (fsync) {
+                syncDirectory(file.getAbsoluteFile().getParentFile());
+                lastFsyncNanos = start;
+                fsyncCount++;
+                unsynced = null;
+            } else if (fsyncInterval != FSYNC_NEVER) {
+                unsynced = file;
+                scheduleSync(fsyncInterval - (start - lastFsyncNanos) / NANOS_PER_MILLI);
+            }
+        } catch (IOException ioe) {
+            failureCount++;
+            throw ioe;
+        }
+        long elapsed = System.nanoTime() - start;
+        writeCount++;
+        lastWriteNanos = elapsed;
+        totalWriteNanos += elapsed;
+        if (elapsed > maxWriteNanos) {
+            maxWriteNanos = elapsed;
+        }
+    }
+
+    /**
+     * <p>Schedules the fsync of a write that skipped it, unless one is scheduled.</p>
+     *
+     * @param delay the milliseconds to wait before forcing the write.
+     */
+    private synchronized void scheduleSync(long delay) {
+        if (syncScheduled) {
+            return;
+        }
+        syncScheduled = true;
+        synchronized (ReadWriteFileStateImpl.class) {
+            if (syncTimer == null) {
+                syncTimer = new Timer("commons-id-uuid-state-fsync", true);
+            }
+            syncTimer.schedule(new TimerTask() {
+                public void run() {
+                    syncPending();
                 }
+            }, Math.max(0, delay));
+        }
+    }
+
+    /**
+     * <p>Forces the last write to stable storage if it skipped the fsync. A
+     * failure is counted and the fsync retried after another interval.</p>
+     */
+    private synchronized void syncPending() {
+        syncScheduled = false;
+        File file = unsynced;
+        if (file == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            syncDirectory(file.getAbsoluteFile().getParentFile());
+            lastFsyncNanos = start;
+            fsyncCount++;
+            unsynced = null;
+        } catch (IOException ioe) {
+            failureCount++;
+            if (fsyncInterval > 0) {
+                scheduleSync(fsyncInterval);
+            }
+        }
+    }
+
+    /**
+     * <p>Forces a directory entry change to stable storage, where the platform
+     * allows directories to be opened.</p>
+     *
+     * @param dir the directory.
+     */
+    private static void syncDirectory(File dir) {
+        try {
+            FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException ioe) {
+            //Not supported on this platform, the rename is still atomic
+        }
+    }
+
+    /**
+     * <p>Returns the fsync interval configured by the <code>FSYNC_KEY</code> system property.</p>
+     *
+     * @return the configured fsync interval, <code>FSYNC_ALWAYS</code> by default.
+     */
+    private static long configuredFsyncInterval() {
+        String value = System.getProperty(FSYNC_KEY);
+        if (value == null || "always".equalsIgnoreCase(value)) {
+            return FSYNC_ALWAYS;
+        }
+        if ("never".equalsIgnoreCase(value)) {
+            return FSYNC_NEVER;
+        }
+        try {
+            long millis = Long.parseLong(value);
+            if (millis >= 0) {
+                return millis;
             }
+        } catch (NumberFormatException nfe) {
+            //Reported below
         }
+        throw new IllegalStateException("Invalid " + FSYNC_KEY + ": " + value);
     }
 }
@@ -78,6 +78,8 @@ public interface State extends Serializable {
      *
      * @param nodes a Collection of <code>Node</code>s to store.
      * @param timestamp the timestamp to write all <code>Node</code>s last timestamp as.
+     * @throws RuntimeException if the state could not be stored, in which case
+     * the timestamp must not be relied upon.
      */
     void store( Set nodes, long timestamp );
 
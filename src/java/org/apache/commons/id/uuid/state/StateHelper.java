@@ -21,12 +21,15 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Random;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.StringTokenizer;
 
 import org.apache.commons.id.DecoderException;
-import org.apache.commons.discovery.tools.DiscoverClass;
 import org.apache.commons.id.uuid.Bytes;
 import org.apache.commons.id.uuid.Constants;
 import org.apache.commons.id.uuid.clock.Clock;
@@ -37,6 +40,14 @@ import org.apache.commons.id.Hex;
 /**
  * <p><code>StateHelper</code> provides helper methods for the uuid state
  * implementations.</p>
+ * <p>It also locates the implementations of the <code>Clock</code>,
+ * <code>State</code> and <code>NodeManager</code> interfaces, see
+ * {@link #newInstance(Class, String)}: the class set with
+ * {@link #setImplementation(Class, Class)}, else the class named by the system
+ * property keyed by the interface name, else the first provider registered in
+ * <code>META-INF/services</code>, else the default class. Classes are resolved
+ * once and cached, so creating a <code>Node</code> does not search the class
+ * path for its <code>Clock</code>.</p>
  *
  * @author Commons-Id team
  * @version $Id: StateHelper.java 480488 2006-11-29 08:57:26Z bayard $
@@ -66,6 +77,15 @@ public final class StateHelper implements Constants {
     /** The maximum character length of a long */
     private static final short LONG_CHAR_LEN = 19;
 
+    /** The implementation classes set, by interface. */
+    private static final Map CONFIGURED = new HashMap();
+
+    /** The implementation classes found in META-INF/services or by default, by interface. */
+    private static final Map DISCOVERED = new HashMap();
+
+    /** The implementation classes named by system properties, by class name. */
+    private static final Map NAMED = new HashMap();
+
     /** Standard one page buffer size */
     private static final int BUF_PAGE_SZ = 1024;
 
@@ -168,39 +188,137 @@ public final class StateHelper implements Constants {
     }
 
     /**
-     * <p>Returns the Clock implementation using commons discovery.</p>
+     * <p>Returns a new instance of the Clock implementation in use.</p>
      *
-     * @return the Clock implementation using commons discovery.
+     * @return a new instance of the Clock implementation in use.
+     * @see #newInstance(Class, String)
      */
     public static Clock getClockImpl() {
-        Clock c = null;
+        return (Clock) newInstance(Clock.class, Clock.DEFAULT_CLOCK_IMPL);
+    }
+
+    /**
+     * <p>Returns a new instance of the <code>State</code> implementation in use.</p>
+     *
+     * @return a new instance of the <code>State</code> implementation in use.
+     * @see #newInstance(Class, String)
+     */
+    public static State getStateImpl() {
+        return (State) newInstance(State.class, State.DEFAULT_STATE_IMPL);
+    }
+
+    /**
+     * <p>Sets the implementation of an interface, so that it is neither read
+     * from system properties nor searched for.</p>
+     *
+     * @param type the interface.
+     * @param implementation the class implementing it, or null to look it up again.
+     * @throws IllegalArgumentException if the class does not implement the interface.
+     */
+    public static void setImplementation(Class type, Class implementation) {
+        if (implementation != null && !type.isAssignableFrom(implementation)) {
+            throw new IllegalArgumentException(implementation.getName() + " is not a " + type.getName());
+        }
+        synchronized (CONFIGURED) {
+            if (implementation == null) {
+                CONFIGURED.remove(type);
+            } else {
+                CONFIGURED.put(type, implementation);
+            }
+        }
+    }
+
+    /**
+     * <p>Returns a new instance of the implementation of an interface: the class
+     * set with <code>setImplementation</code>, else the class named by the system
+     * property keyed by the interface name, else the first provider of the
+     * interface registered in <code>META-INF/services</code>, else the default
+     * class. Classes are cached once resolved.</p>
+     *
+     * @param type the interface.
+     * @param defaultImpl the name of the default implementation class.
+     * @return a new instance of the implementation.
+     * @throws IllegalStateException if the implementation cannot be instantiated.
+     */
+    public static Object newInstance(Class type, String defaultImpl) {
+        Class implementation = getImplementation(type, defaultImpl);
         try {
-             DiscoverClass dc = new DiscoverClass();
-             c = (Clock) dc.newInstance(
-             Clock.class,
-             Clock.DEFAULT_CLOCK_IMPL);
+            return implementation.newInstance();
         } catch (Exception ex) {
-             // ignore as default implementation will be used.
+            throw new IllegalStateException("Cannot instantiate " + implementation.getName() + ": " + ex);
         }
-        return c;
     }
 
     /**
-     * <p>Returns the <code>State</code> implementation in use.</p>
+     * <p>Returns the implementation class of an interface.</p>
      *
-     * @return the <code>State</code> implementation in use.
+     * @param type the interface.
+     * @param defaultImpl the name of the default implementation class.
+     * @return the implementation class.
+     * @throws IllegalStateException if the class cannot be loaded.
      */
-    public static State getStateImpl() {
-        State s = null;
+    private static Class getImplementation(Class type, String defaultImpl) {
+        synchronized (CONFIGURED) {
+            Class implementation = (Class) CONFIGURED.get(type);
+            if (implementation != null) {
+                return implementation;
+            }
+            String name = System.getProperty(type.getName());
+            if (name != null) {
+                implementation = (Class) NAMED.get(name);
+                if (implementation == null) {
+                    implementation = loadClass(type, name);
+                    NAMED.put(name, implementation);
+                }
+                return implementation;
+            }
+            implementation = (Class) DISCOVERED.get(type);
+            if (implementation == null) {
+                try {
+                    Iterator providers = ServiceLoader.load(type).iterator();
+                    if (providers.hasNext()) {
+                        implementation = providers.next().getClass();
+                    }
+                } catch (ServiceConfigurationError sce) {
+                    // ignore as default implementation will be used.
+                }
+                if (implementation == null) {
+                    implementation = loadClass(type, defaultImpl);
+                }
+                DISCOVERED.put(type, implementation);
+            }
+            return implementation;
+        }
+    }
+
+    /**
+     * <p>Loads an implementation class of an interface.</p>
+     *
+     * @param type the interface.
+     * @param name the name of the implementation class.
+     * @return the implementation class.
+     * @throws IllegalStateException if the class cannot be loaded or does not
+     * implement the interface.
+     */
+    private static Class loadClass(Class type, String name) {
+        Class implementation;
         try {
-             DiscoverClass dc = new DiscoverClass();
-             s = (State) dc.newInstance(
-             State.class,
-             State.DEFAULT_STATE_IMPL);
-        } catch (Exception ex) {
-             // ignore as default implementation will be used.
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                loader = StateHelper.class.getClassLoader();
+            }
+            implementation = Class.forName(name, false, loader);
+        } catch (ClassNotFoundException cnfe) {
+            try {
+                implementation = Class.forName(name);
+            } catch (ClassNotFoundException ex) {
+                throw new IllegalStateException("Cannot load " + type.getName() + " implementation: " + name);
+            }
+        }
+        if (!type.isAssignableFrom(implementation)) {
+            throw new IllegalStateException(name + " is not a " + type.getName());
         }
-        return s;
+        return implementation;
     }
 
     /**
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id;
+
+import junit.framework.TestCase;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Tests the org.apache.commons.id.DigestUtils class.
+ *
+ * @author Commons-id team
+ * @version $Id$
+ */
+public class DigestUtilsTest extends TestCase {
+
+    public void testMd5Hex() {
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", DigestUtils.md5Hex(""));
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", DigestUtils.md5Hex("abc"));
+    }
+
+    public void testShaHex() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", DigestUtils.shaHex("abc"));
+    }
+
+    public void testThreadDigestIsReset() {
+        MessageDigest digest = DigestUtils.getThreadDigest("MD5");
+        digest.update("partial".getBytes());
+        // an abandoned update must not leak into the next use
+        MessageDigest again = DigestUtils.getThreadDigest("MD5");
+        assertSame(digest, again);
+        assertEquals("900150983cd24fb0d6963f7d28e17f72", DigestUtils.md5Hex("abc"));
+        assertSame(DigestUtils.getThreadDigest("SHA"), DigestUtils.getThreadDigest("SHA-1"));
+    }
+
+    public void testThreadDigestPerThread() throws Exception {
+        final MessageDigest[] other = new MessageDigest[1];
+        Thread thread = new Thread() {
+            public void run() {
+                other[0] = DigestUtils.getThreadDigest("MD5");
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(other[0], DigestUtils.getThreadDigest("MD5"));
+    }
+
+    public void testPreparedCopies() {
+        byte[] prefix = "prefix-".getBytes();
+        MessageDigest prepared = DigestUtils.prepare("SHA", prefix);
+
+        MessageDigest first = DigestUtils.copy(prepared);
+        first.update("one".getBytes());
+        MessageDigest second = DigestUtils.copy(prepared);
+        second.update("two".getBytes());
+
+        assertTrue(Arrays.equals(DigestUtils.sha("prefix-one".getBytes()), first.digest()));
+        assertTrue(Arrays.equals(DigestUtils.sha("prefix-two".getBytes()), second.digest()));
+        // the prepared digest itself is left untouched
+        prepared.update("one".getBytes());
+        assertTrue(Arrays.equals(DigestUtils.sha("prefix-one".getBytes()), prepared.digest()));
+    }
+}
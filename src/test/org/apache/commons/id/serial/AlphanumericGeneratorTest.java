@@ -244,4 +244,19 @@ public class AlphanumericGeneratorTest extends TestCase {
         }));
         return suite;
     }
+
+    public void testStringAlphanumericBatch() {
+        AlphanumericGenerator f = new AlphanumericGenerator(true, "08");
+        String[] batch = f.nextStringIdentifiers(3);
+        assertEquals(3, batch.length);
+        assertEquals("09", batch[0]);
+        assertEquals("0a", batch[1]);
+        assertEquals("0b", batch[2]);
+        assertEquals("0c", f.nextStringIdentifier());
+        try {
+            f.nextStringIdentifiers(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
 }
@@ -113,4 +113,45 @@ public class LongGeneratorTest extends TestCase {
         }));
         return suite;
     }
+
+    /** Test LongIdentifier batches */
+    public void testLongIncrementingBatch() {
+        LongGenerator f = new LongGenerator(true, 10);
+        assertEquals(new Long(10), f.nextLongIdentifier());
+        long[] batch = f.nextLongIdentifiers(3);
+        assertEquals(3, batch.length);
+        assertEquals(11, batch[0]);
+        assertEquals(12, batch[1]);
+        assertEquals(13, batch[2]);
+        assertEquals(0, f.nextLongIdentifiers(0).length);
+        assertEquals(new Long(14), f.nextLongIdentifier());
+
+        f = new LongGenerator(true, Long.MAX_VALUE);
+        batch = f.nextLongIdentifiers(2);
+        assertEquals(Long.MAX_VALUE, batch[0]);
+        assertEquals(Long.MIN_VALUE, batch[1]);
+
+        f = new LongGenerator(false, Long.MAX_VALUE - 2);
+        try {
+            f.nextLongIdentifiers(3);
+            fail("Thrown " + IllegalStateException.class.getName() + " expected");
+        } catch (final IllegalStateException e) {
+        }
+        batch = f.nextLongIdentifiers(2);
+        assertEquals(Long.MAX_VALUE - 1, batch[1]);
+    }
+
+    /** Test batches of a non wrapping LongGenerator counting up from a negative start */
+    public void testLongNegativeBatch() {
+        LongGenerator f = new LongGenerator(false, -10);
+        long[] batch = f.nextLongIdentifiers(5);
+        assertEquals(-10, batch[0]);
+        assertEquals(-6, batch[4]);
+        assertEquals(new Long(-5), f.nextLongIdentifier());
+
+        f = new LongGenerator(false, Long.MIN_VALUE);
+        batch = f.nextLongIdentifiers(2);
+        assertEquals(Long.MIN_VALUE, batch[0]);
+        assertEquals(Long.MIN_VALUE + 1, batch[1]);
+    }
 }
@@ -112,4 +112,31 @@ public class NumericGeneratorTest extends TestCase {
         }));
         return suite;
     }
+
+    /** Test NumericGenerator batches */
+    public void testStringNumericBatch() {
+        NumericGenerator f = new NumericGenerator(true, 99);
+        String[] batch = f.nextStringIdentifiers(2);
+        assertEquals(2, batch.length);
+        assertEquals("99", batch[0]);
+        assertEquals("100", batch[1]);
+        assertEquals("101", f.nextStringIdentifier());
+
+        f = new NumericGenerator(false, Long.MAX_VALUE - 1);
+        try {
+            f.nextStringIdentifiers(2);
+            fail("Thrown " + IllegalStateException.class.getName() + " expected");
+        } catch (final IllegalStateException e) {
+        }
+        assertEquals(Long.toString(Long.MAX_VALUE - 1), f.nextStringIdentifier());
+    }
+
+    /** Test batches of a non wrapping NumericGenerator counting up from a negative start */
+    public void testStringNumericNegativeBatch() {
+        NumericGenerator f = new NumericGenerator(false, -10);
+        String[] batch = f.nextStringIdentifiers(5);
+        assertEquals("-10", batch[0]);
+        assertEquals("-6", batch[4]);
+        assertEquals("-5", f.nextStringIdentifier());
+    }
 }
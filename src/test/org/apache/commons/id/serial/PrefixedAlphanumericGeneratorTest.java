@@ -140,4 +140,12 @@ public class PrefixedAlphanumericGeneratorTest extends TestCase {
             // expected
         }
     }
+
+    public void testBatch() {
+        PrefixedAlphanumericGenerator pag = new PrefixedAlphanumericGenerator("foo", true, 5);
+        String[] batch = pag.nextStringIdentifiers(2);
+        assertEquals("foo01", batch[0]);
+        assertEquals("foo02", batch[1]);
+        assertEquals("foo03", pag.nextStringIdentifier());
+    }
 }
@@ -149,4 +149,12 @@ public class PrefixedLeftPaddedNumericGeneratorTest extends TestCase {
             // expected
         }
     }
+
+    public void testBatch() {
+        PrefixedLeftPaddedNumericGenerator plpng = new PrefixedLeftPaddedNumericGenerator("foo", true, 6);
+        String[] batch = plpng.nextStringIdentifiers(2);
+        assertEquals("foo001", batch[0]);
+        assertEquals("foo002", batch[1]);
+        assertEquals("foo003", plpng.nextStringIdentifier());
+    }
 }
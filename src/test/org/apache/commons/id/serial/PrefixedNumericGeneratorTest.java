@@ -86,4 +86,12 @@ public class PrefixedNumericGeneratorTest extends TestCase {
             // expected
         }
     }
+
+    public void testBatch() {
+        PrefixedNumericGenerator png = new PrefixedNumericGenerator("foo", true, 9);
+        String[] batch = png.nextStringIdentifiers(2);
+        assertEquals("foo9", batch[0]);
+        assertEquals("foo10", batch[1]);
+        assertEquals("foo11", png.nextStringIdentifier());
+    }
 }
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit tests for {@link NameBasedGenerator}.
+ *
+ * @version $Revision$ $Date$
+ * @author Commons-Id team
+ */
+public class NameBasedGeneratorTest extends TestCase {
+
+    /** UUID assigned to the URL namespace */
+    private static final UUID NS = UUID.fromString("6ba7b810-9dad-11d1-80b4-00c04fd430c8");
+
+    /** Names covering one, two, three and four byte UTF-8 sequences and unpaired surrogates */
+    private static final String[] NAMES = {
+        "", "www.widgets.com", "caf\u00e9", "\u65e5\u672c\u8a9e", "\ud83d\ude00 smile",
+        "lone \ud83d high", "lone \ude00 low", "trailing \ud83d"};
+
+    /**
+     * Constructor for test
+     *
+     * @param name String name of the test
+     */
+    public NameBasedGeneratorTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Main application method
+     *
+     * @param args String arguments array
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /** @return Test suite for this class */
+    public static Test suite() {
+        TestSuite suite = new TestSuite(NameBasedGeneratorTest.class);
+        suite.setName("NameBasedGenerator Tests");
+        return suite;
+    }
+
+    /**
+     * Tests the UUID's match the IETF samples, version 5 for SHA-1, and otherwise
+     * <code>UUID.nameUUIDFromString</code>.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testKnownUUIDs() throws Exception {
+        NameBasedGenerator md5 = new NameBasedGenerator(NS, UUID.MD5_ENCODING);
+        assertEquals("3d813cbb-47fb-32ba-91df-831e1593ac29", md5.uuidFor("www.widgets.com").toString());
+        assertEquals(UUID.nameUUIDFromString("www.apache.org", NS, UUID.MD5_ENCODING),
+            md5.uuidFor(new StringBuffer("www.apache.org")));
+        NameBasedGenerator sha1 = new NameBasedGenerator(NS, UUID.SHA1_ENCODING);
+        assertEquals("886313e1-3b8a-5372-9b90-0c9aee199e5d", sha1.uuidFor("python.org").toString());
+        assertEquals("21f7f8de-8051-5b89-8680-0195ef798b6a", sha1.uuidFor("www.widgets.com").toString());
+        assertEquals(5, sha1.uuidFor("www.widgets.com").version());
+        // nameUUIDFromString stamps SHA-1 UUID's version 3
+        UUID legacy = UUID.nameUUIDFromString("www.apache.org", NS, UUID.SHA1_ENCODING);
+        UUID uuid = sha1.uuidFor(new StringBuffer("www.apache.org"));
+        assertEquals(legacy.getLeastSignificantBits(), uuid.getLeastSignificantBits());
+        assertEquals(legacy.getMostSignificantBits() & ~0xF000L, uuid.getMostSignificantBits() & ~0xF000L);
+        assertEquals(NS, sha1.getNamespace());
+        assertEquals(UUID.SHA1_ENCODING, sha1.getEncoding());
+        assertEquals(NameBasedGenerator.DEFAULT_CHARSET, sha1.getCharset());
+    }
+
+    /**
+     * Tests UTF-8 names are encoded as <code>String.getBytes</code> encodes them,
+     * including names longer than one chunk.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testUTF8Encoding() throws Exception {
+        NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.MD5_ENCODING);
+        StringBuffer longName = new StringBuffer();
+        for (int i = 0; i < 1000; i++) {
+            longName.append(NAMES[i % NAMES.length]);
+        }
+        String[] names = new String[NAMES.length + 1];
+        System.arraycopy(NAMES, 0, names, 0, NAMES.length);
+        names[NAMES.length] = longName.toString();
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = names[i].getBytes("UTF-8");
+            assertEquals(gen.uuidFor(bytes, 0, bytes.length), gen.uuidFor(names[i]));
+        }
+    }
+
+    /**
+     * Tests names are encoded with the generator's charset.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testCharsets() throws Exception {
+        String[] charsets = {"ISO-8859-1", "UTF-16"};
+        for (int c = 0; c < charsets.length; c++) {
+            NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.SHA1_ENCODING, Charset.forName(charsets[c]));
+            for (int i = 0; i < NAMES.length; i++) {
+                byte[] bytes = NAMES[i].getBytes(charsets[c]);
+                assertEquals(gen.uuidFor(bytes, 0, bytes.length), gen.uuidFor(NAMES[i]));
+            }
+        }
+    }
+
+    /**
+     * Tests names given as array ranges and buffers.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testByteNames() throws Exception {
+        NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.MD5_ENCODING);
+        byte[] padded = "--www.widgets.com--".getBytes("UTF-8");
+        UUID expected = gen.uuidFor("www.widgets.com");
+        assertEquals(expected, gen.uuidFor(padded, 2, padded.length - 4));
+
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 2, padded.length - 4);
+        assertEquals(expected, gen.uuidFor(buffer));
+        assertEquals(padded.length - 2, buffer.position());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(padded.length);
+        direct.put(padded).position(2).limit(padded.length - 2);
+        assertEquals(expected, gen.uuidFor(direct));
+    }
+
+    /**
+     * Tests invalid arguments are rejected.
+     */
+    public void testInvalidArguments() {
+        try {
+            new NameBasedGenerator(null, UUID.MD5_ENCODING);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        try {
+            new NameBasedGenerator(NS, "MD4");
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.MD5_ENCODING);
+        try {
+            gen.uuidFor(new byte[4], 2, 3);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests the bulk array methods derive the same UUID's as <code>uuidFor</code>.
+     */
+    public void testArrayBulk() {
+        NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.SHA1_ENCODING);
+        CharSequence[] names = new CharSequence[10000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "key-" + i + NAMES[i % NAMES.length];
+        }
+        UUID[] uuids = gen.uuidsFor(names);
+        assertEquals(names.length, uuids.length);
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(gen.uuidFor(names[i]), uuids[i]);
+        }
+
+        long[] most = new long[names.length];
+        long[] least = new long[names.length];
+        gen.uuidsFor(names, most, least, 10, 20);
+        assertEquals(0L, most[9]);
+        assertEquals(uuids[10], new UUID(most[10], least[10]));
+        assertEquals(uuids[29], new UUID(most[29], least[29]));
+        assertEquals(0L, least[30]);
+        try {
+            gen.uuidsFor(new CharSequence[5], new long[10], new long[10], 0, 10);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests the bulk iterator returns the UUID's in the order of the names, over several batches.
+     */
+    public void testIteratorBulk() {
+        NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.MD5_ENCODING);
+        List names = new ArrayList();
+        for (int i = 0; i < 40000; i++) {
+            names.add("key-" + i);
+        }
+        Iterator uuids = gen.uuidsFor(names.iterator());
+        for (int i = 0; i < names.size(); i++) {
+            assertTrue(uuids.hasNext());
+            assertEquals(gen.uuidFor((CharSequence) names.get(i)), uuids.next());
+        }
+        assertFalse(uuids.hasNext());
+        assertFalse(gen.uuidsFor(new ArrayList().iterator()).hasNext());
+    }
+
+    /**
+     * Tests the bulk channel method writes the UUID's of the lines in order.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testChannelBulk() throws Exception {
+        NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.SHA1_ENCODING);
+        StringBuffer longLine = new StringBuffer();
+        for (int i = 0; i < 300000; i++) {
+            longLine.append("long");
+        }
+        String[] lines = {"www.widgets.com", "", "caf\u00e9", longLine.toString(), "last"};
+        StringBuffer text = new StringBuffer();
+        for (int i = 0; i < lines.length; i++) {
+            text.append(lines[i]).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = gen.uuidsFor(
+            Channels.newChannel(new ByteArrayInputStream(text.toString().getBytes("UTF-8"))),
+            Channels.newChannel(out));
+        assertEquals(lines.length, count);
+        byte[] uuids = out.toByteArray();
+        assertEquals(lines.length * 16, uuids.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(gen.uuidFor(lines[i]), UUID.readFrom(uuids, i * 16));
+        }
+
+        // last line without terminator
+        out.reset();
+        count = gen.uuidsFor(
+            Channels.newChannel(new ByteArrayInputStream("a\nb".getBytes("UTF-8"))),
+            Channels.newChannel(out));
+        assertEquals(2, count);
+        assertEquals(gen.uuidFor("b"), UUID.readFrom(out.toByteArray(), 16));
+
+        // non-blocking channels are rejected rather than polled
+        Pipe pipe = Pipe.open();
+        try {
+            pipe.source().configureBlocking(false);
+            gen.uuidsFor(pipe.source(), Channels.newChannel(out));
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+        }
+    }
+
+    /**
+     * Tests the bulk methods run on a pool that is set.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testSetForkJoinPool() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            NameBasedGenerator.setForkJoinPool(pool);
+            NameBasedGenerator gen = new NameBasedGenerator(NS, UUID.MD5_ENCODING);
+            CharSequence[] names = new CharSequence[5000];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = String.valueOf(i);
+            }
+            UUID[] uuids = gen.uuidsFor(names);
+            assertEquals(gen.uuidFor("4999"), uuids[4999]);
+        } finally {
+            NameBasedGenerator.setForkJoinPool(null);
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid;
+
+import java.nio.charset.Charset;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit tests for {@link NameBasedUUIDCache}.
+ *
+ * @version $Revision$ $Date$
+ * @author Commons-Id team
+ */
+public class NameBasedUUIDCacheTest extends TestCase {
+
+    /** UUID assigned to the URL namespace */
+    private static final UUID NS = UUID.fromString("6ba7b810-9dad-11d1-80b4-00c04fd430c8");
+
+    /** UUID assigned to the ISO OID namespace */
+    private static final UUID NS_ALT = UUID.fromString("6ba7b812-9dad-11d1-80b4-00c04fd430c8");
+
+    /**
+     * Constructor for test
+     *
+     * @param name String name of the test
+     */
+    public NameBasedUUIDCacheTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Main application method
+     *
+     * @param args String arguments array
+     */
+    public static void main(String[] args) {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /** @return Test suite for this class */
+    public static Test suite() {
+        TestSuite suite = new TestSuite(NameBasedUUIDCacheTest.class);
+        suite.setName("NameBasedUUIDCache Tests");
+        return suite;
+    }
+
+    /**
+     * Tests cached UUID's equal the derived ones and lookups are counted.
+     */
+    public void testHitsAndMisses() {
+        NameBasedUUIDCache cache = new NameBasedUUIDCache(100);
+        UUID first = cache.uuidFor("www.widgets.com", NS, UUID.SHA1_ENCODING);
+        assertEquals(UUID.nameUUIDFromString("www.widgets.com", NS, UUID.SHA1_ENCODING), first);
+        assertSame(first, cache.uuidFor("www.widgets.com", NS, UUID.SHA1_ENCODING));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+
+        // namespace and encoding are part of the key
+        assertEquals(UUID.nameUUIDFromString("www.widgets.com", NS_ALT, UUID.SHA1_ENCODING),
+            cache.uuidFor("www.widgets.com", NS_ALT, UUID.SHA1_ENCODING));
+        assertEquals("3d813cbb-47fb-32ba-91df-831e1593ac29",
+            cache.uuidFor("www.widgets.com", NS, UUID.MD5_ENCODING).toString());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(3, cache.size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    /**
+     * Tests lookups through generators, keyed on their charset.
+     */
+    public void testGenerators() {
+        NameBasedUUIDCache cache = new NameBasedUUIDCache(100);
+        NameBasedGenerator utf8 = new NameBasedGenerator(NS, UUID.SHA1_ENCODING);
+        NameBasedGenerator utf16 = new NameBasedGenerator(NS, UUID.SHA1_ENCODING, Charset.forName("UTF-16"));
+        assertEquals(utf8.uuidFor("caf\u00e9"), cache.uuidFor(utf8, "caf\u00e9"));
+        assertEquals(utf16.uuidFor("caf\u00e9"), cache.uuidFor(utf16, new StringBuffer("caf\u00e9")));
+        assertEquals(utf8.uuidFor("caf\u00e9"), cache.uuidFor(utf8, new StringBuffer("caf\u00e9")));
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * Tests the cache stays bounded, evicting the least recently used UUID's.
+     */
+    public void testEviction() {
+        NameBasedUUIDCache cache = new NameBasedUUIDCache(1);
+        cache.uuidFor("a", NS, UUID.MD5_ENCODING);
+        cache.uuidFor("b", NS, UUID.MD5_ENCODING);
+        cache.uuidFor("a", NS, UUID.MD5_ENCODING);
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(3, cache.getMissCount());
+
+        cache = new NameBasedUUIDCache(1000);
+        for (int i = 0; i < 5000; i++) {
+            cache.uuidFor("key-" + i, NS, UUID.SHA1_ENCODING);
+        }
+        assertTrue(cache.size() <= cache.getMaximumSize());
+        assertEquals(5000 - cache.size(), cache.getEvictionCount());
+    }
+
+    /**
+     * Tests concurrent lookups return the derived UUID's.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testConcurrentLookups() throws Exception {
+        final NameBasedUUIDCache cache = new NameBasedUUIDCache(64);
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        String name = "key-" + (i % 100);
+                        if (!UUID.nameUUIDFromString(name, NS, UUID.SHA1_ENCODING).equals(
+                                cache.uuidFor(name, NS, UUID.SHA1_ENCODING))) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        assertFalse(failed[0]);
+        assertEquals(8000, cache.getHitCount() + cache.getMissCount());
+    }
+
+    /**
+     * Tests the maximum size must be positive.
+     */
+    public void testInvalidSize() {
+        try {
+            new NameBasedUUIDCache(0);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
@@ -17,10 +17,19 @@
 
 package org.apache.commons.id.uuid;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
 
+import org.apache.commons.id.uuid.clock.Clock;
+import org.apache.commons.id.uuid.clock.OverClockedException;
 import org.apache.commons.id.uuid.state.Node;
 import org.apache.commons.id.uuid.state.ReadOnlyResourceStateImpl;
+import org.apache.commons.id.uuid.state.State;
+import org.apache.commons.id.uuid.state.StateHelper;
 
 /**
  * Unit tests for {@link NodeManagerImpl}.
@@ -32,11 +41,15 @@ public class NodeManagerImplTest extends TestCase {
 
     /** Pre test value for ReadOnlyResourceStateImpl.CONFIG_FILE_KEY */
     private String currentConfigFile;
+
+    /** Pre test value for the State implementation */
+    private String currentStateImpl;
     
     protected void setUp() throws Exception {
         super.setUp();
         currentConfigFile = System.getProperty(
                 ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY);
+        currentStateImpl = System.getProperty(State.class.getName());
     }
 
     protected void tearDown() throws Exception {
@@ -45,9 +58,34 @@ public class NodeManagerImplTest extends TestCase {
                     ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY,
                     currentConfigFile);
         }
+        if (currentStateImpl != null) {
+            System.setProperty(State.class.getName(), currentStateImpl);
+        } else {
+            System.clearProperty(State.class.getName());
+        }
+        StateHelper.setImplementation(Clock.class, null);
         super.tearDown();
     }
 
+    /**
+     * Returns a manager of the nodes of uuid1.state, counting stores.
+     *
+     * @return an initialized manager.
+     */
+    private NodeManagerImpl countingManager() {
+        System.setProperty(ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY, "uuid1.state");
+        System.setProperty(State.class.getName(), CountingStateImpl.class.getName());
+        CountingStateImpl.stores = 0;
+        CountingStateImpl.reservations = 0;
+        CountingStateImpl.watermark = 0;
+        CountingStateImpl.storing = null;
+        CountingStateImpl.release = null;
+        CountingStateImpl.failing = false;
+        NodeManagerImpl nodeManager = new NodeManagerImpl();
+        nodeManager.init();
+        return nodeManager;
+    }
+
     public void testInit() throws Exception {
         System.setProperty(ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY,
                 "uuid1.state");  // sets up 2 different nodes
@@ -62,4 +100,341 @@ public class NodeManagerImplTest extends TestCase {
         assertEquals(node1, node2);
     }
 
+    public void testCurrentNodeDoesNotStore() throws Exception {
+        NodeManagerImpl nodeManager = countingManager();
+        assertEquals(Long.MAX_VALUE, nodeManager.getFlushInterval());
+        for (int i = 0; i < 1000; i++) {
+            nodeManager.currentNode().getUUIDTime();
+        }
+        assertEquals(0, CountingStateImpl.stores);
+    }
+
+    public void testFlushCoalesces() throws Exception {
+        NodeManagerImpl nodeManager = countingManager();
+        assertFalse(nodeManager.flush());
+        for (int i = 0; i < 100; i++) {
+            nodeManager.currentNode().getUUIDTime();
+        }
+        assertTrue(nodeManager.flush());
+        assertEquals(1, CountingStateImpl.stores);
+        assertFalse(nodeManager.flush());
+        nodeManager.nextAvailableNode().getUUIDTime();
+        assertTrue(nodeManager.flush());
+        assertEquals(2, CountingStateImpl.stores);
+    }
+
+    public void testBackgroundFlusher() throws Exception {
+        NodeManagerImpl nodeManager = countingManager();
+        nodeManager.setFlushInterval(10);
+        assertEquals(100, nodeManager.getReservation());
+        // the first timestamp is only issued once a watermark is stored
+        nodeManager.currentNode().getUUIDTime();
+        assertEquals(1, CountingStateImpl.reservations);
+        for (int i = 0; i < 500 && CountingStateImpl.reservations < 3; i++) {
+            nodeManager.currentNode().getUUIDTime();
+            Thread.sleep(5);
+        }
+        assertTrue(CountingStateImpl.reservations >= 3);
+        assertTrue(CountingStateImpl.watermark > nodeManager.currentNode().getLastTimestamp());
+        assertEquals(0, CountingStateImpl.stores);
+
+        nodeManager.shutdown();
+        assertEquals(1, CountingStateImpl.stores);
+        int reservations = CountingStateImpl.reservations;
+        Thread.sleep(50);
+        assertEquals(reservations, CountingStateImpl.reservations);
+    }
+
+    public void testSetFlushIntervalDoesNotStore() throws Exception {
+        NodeManagerImpl nodeManager = countingManager();
+        nodeManager.setFlushInterval(60000);
+        Thread.sleep(50);
+        assertEquals(0, CountingStateImpl.reservations);
+        // the running flusher waits for the new interval
+        nodeManager.setFlushInterval(10);
+        for (int i = 0; i < 500 && CountingStateImpl.reservations == 0; i++) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, CountingStateImpl.reservations);
+        nodeManager.shutdown();
+    }
+
+    public void testReservation() throws Exception {
+        NodeManagerImpl nodeManager = countingManager();
+        assertEquals(Long.MAX_VALUE, nodeManager.getReservation());
+        nodeManager.setReservation(60000);
+        nodeManager.setFlushInterval(60000);
+        assertEquals(60000, nodeManager.getReservation());
+        Node node = nodeManager.currentNode();
+        long first = node.getUUIDTime();
+        assertEquals(1, CountingStateImpl.reservations);
+        // the watermark is a reservation ahead of the issued timestamps
+        long reserved = CountingStateImpl.watermark - first;
+        assertTrue(reserved > 59000 * 10000L);
+        assertTrue(reserved <= 60000 * 10000L);
+        for (int i = 0; i < 10000; i++) {
+            nodeManager.currentNode().getUUIDTime();
+        }
+        assertEquals(1, CountingStateImpl.reservations);
+        nodeManager.shutdown();
+
+        try {
+            nodeManager.setReservation(NodeManagerImpl.MAX_RESERVATION + 1);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testFailedReservation() throws Exception {
+        StateHelper.setImplementation(Clock.class, SetClock.class);
+        long window = 1000 * Clock.INTERVALS_PER_MILLI;
+        SetClock.time = (System.currentTimeMillis() + Clock.GREGORIAN_CHANGE_OFFSET) * Clock.INTERVALS_PER_MILLI;
+        CountingStateImpl.reservations = 0;
+        CountingStateImpl.failing = false;
+        // new nodes reading the set clock, the loaded ones are shared between tests
+        final Set nodes = new HashSet();
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-5A")));
+        NodeManagerImpl nodeManager = new NodeManagerImpl(new CountingStateImpl() {
+            public void load() {
+                // Nothing to load
+            }
+            public Set getNodes() {
+                return nodes;
+            }
+        });
+        nodeManager.init();
+        // failing before the flusher starts, which waits a full interval anyway
+        CountingStateImpl.failing = true;
+        nodeManager.setReservation(1000);
+        nodeManager.setFlushInterval(60000);
+        // no timestamp is issued without a stored watermark
+        try {
+            nodeManager.currentNode();
+            fail("Expecting IllegalStateException");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        CountingStateImpl.failing = false;
+        Node node = nodeManager.currentNode();
+        node.getUUIDTime();
+        assertEquals(1, CountingStateImpl.reservations);
+        long watermark = CountingStateImpl.watermark;
+
+        // timestamps below the stored watermark are issued while renewing fails
+        SetClock.time = watermark - window / 8;
+        node.getUUIDTime();
+        CountingStateImpl.failing = true;
+        assertSame(node, nodeManager.currentNode());
+        assertEquals(1, CountingStateImpl.reservations);
+        CountingStateImpl.failing = false;
+        assertSame(node, nodeManager.currentNode());
+        assertEquals(2, CountingStateImpl.reservations);
+        assertTrue(CountingStateImpl.watermark > watermark);
+
+        // not once the stored watermark is reached
+        SetClock.time = CountingStateImpl.watermark;
+        node.getUUIDTime();
+        CountingStateImpl.failing = true;
+        try {
+            nodeManager.currentNode();
+            fail("Expecting IllegalStateException");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        CountingStateImpl.failing = false;
+        nodeManager.shutdown();
+    }
+
+    public void testStripes() throws Exception {
+        NodeManagerImpl nodeManager = countingManager();
+        assertEquals(0, nodeManager.getStripes());
+        nodeManager.setStripes(4);
+        assertEquals(4, nodeManager.getStripes());
+        final NodeManagerImpl manager = nodeManager;
+        final Node[] nodes = new Node[4];
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    nodes[index] = manager.currentNode();
+                    // the thread keeps its node
+                    if (manager.currentNode() != nodes[index]) {
+                        nodes[index] = null;
+                    }
+                }
+            };
+            threads[i].start();
+            threads[i].join();
+        }
+        Set distinct = new HashSet();
+        for (int i = 0; i < nodes.length; i++) {
+            assertNotNull(nodes[i]);
+            distinct.add(nodes[i]);
+        }
+        assertEquals(4, distinct.size());
+        // the loaded nodes are striped first, then random ones
+        assertTrue(distinct.contains(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-50"))));
+        assertTrue(distinct.contains(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-55"))));
+
+        // only the calling thread moves on
+        Node node = nodeManager.currentNode();
+        Node next = nodeManager.nextAvailableNode();
+        assertFalse(node.equals(next));
+        assertSame(next, nodeManager.currentNode());
+        Thread other = new Thread() {
+            public void run() {
+                nodes[0] = manager.currentNode();
+            }
+        };
+        other.start();
+        other.join();
+        assertTrue(distinct.contains(nodes[0]));
+
+        nodeManager.setStripes(0);
+        assertEquals(0, nodeManager.getStripes());
+        assertEquals(0x02, nodeManager.currentNode().getNodeIdentifier()[0]);
+        try {
+            nodeManager.setStripes(NodeManagerImpl.MAX_STRIPES + 1);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testRandomStripeDoesNotRenew() throws Exception {
+        final NodeManagerImpl nodeManager = countingManager();
+        nodeManager.setStripes(3);
+        nodeManager.setReservation(1);
+        nodeManager.setFlushInterval(60000);
+        Set stored = new HashSet();
+        stored.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-50")));
+        stored.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-55")));
+        Node node = nodeManager.currentNode();
+        while (!stored.contains(node)) {
+            node = nodeManager.nextAvailableNode();
+        }
+        node.getUUIDTime();
+        assertEquals(1, CountingStateImpl.reservations);
+        // the stored node stays idle while the thread moves to the random stripe
+        node = nodeManager.nextAvailableNode();
+        while (stored.contains(node)) {
+            node = nodeManager.nextAvailableNode();
+        }
+        final Node random = node;
+        Thread.sleep(5);
+
+        // a flush holding the flush lock must not stall the random stripe
+        CountingStateImpl.storing = new CountDownLatch(1);
+        CountingStateImpl.release = new CountDownLatch(1);
+        Thread flush = new Thread() {
+            public void run() {
+                try {
+                    nodeManager.flush();
+                } catch (Exception e) {
+                    // reported by the assertions below
+                }
+            }
+        };
+        final boolean[] done = new boolean[1];
+        Thread busy = new Thread() {
+            public void run() {
+                while (nodeManager.nextAvailableNode() != random) {
+                    // move to the random stripe
+                }
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        nodeManager.currentNode().getUUIDTime();
+                    }
+                    done[0] = true;
+                } catch (OverClockedException oce) {
+                    // reported by the assertions below
+                }
+            }
+        };
+        try {
+            flush.start();
+            assertTrue(CountingStateImpl.storing.await(5, TimeUnit.SECONDS));
+            busy.start();
+            busy.join(5000);
+            assertTrue(done[0]);
+        } finally {
+            CountingStateImpl.release.countDown();
+            flush.join();
+            busy.join();
+        }
+        assertEquals(1, CountingStateImpl.stores);
+        assertEquals(1, CountingStateImpl.reservations);
+        nodeManager.shutdown();
+    }
+
+    public void testInvalidFlushInterval() {
+        try {
+            new NodeManagerImpl().setFlushInterval(0);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * State counting the stores of the nodes.
+     */
+    public static class CountingStateImpl extends ReadOnlyResourceStateImpl {
+        /** Number of stores */
+        static volatile int stores;
+
+        /** Number of stores of a watermark */
+        static volatile int reservations;
+
+        /** The last watermark stored */
+        static volatile long watermark;
+
+        /** Set to fail the stores of a watermark */
+        static volatile boolean failing;
+
+        /** Counted down once a store of the nodes starts, null when not waited for */
+        static volatile CountDownLatch storing;
+
+        /** Awaited by a store of the nodes before it returns, null when not waited for */
+        static volatile CountDownLatch release;
+
+        public void store(Set nodes) {
+            stores++;
+            CountDownLatch started = storing;
+            CountDownLatch waitFor = release;
+            if (started != null && waitFor != null) {
+                started.countDown();
+                try {
+                    waitFor.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        public void store(Set nodes, long timestamp) {
+            if (failing) {
+                throw new IllegalStateException("Failing store");
+            }
+            reservations++;
+            watermark = timestamp;
+        }
+    }
+
+    /**
+     * A clock returning the time it is set to.
+     */
+    public static class SetClock implements Clock {
+        /** The time returned */
+        static volatile long time;
+
+        /**
+         * @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime()
+         */
+        public long getUUIDTime() {
+            return time;
+        }
+    }
 }
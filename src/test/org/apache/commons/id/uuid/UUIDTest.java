@@ -27,6 +27,10 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Unit tests for {@link UUID}.
@@ -267,6 +271,39 @@ public class UUIDTest extends TestCase {
         }
     }
 
+    /**
+     * Test fromString decodes every field and rejects misplaced separators and non hex characters
+     *
+     *  @throws Exception an exception while testing
+     */
+    public void testFromStringFields() throws Exception {
+        UUID uuid = UUID.fromString("01234567-89aB-cDeF-0123-456789AbCdEf");
+        assertEquals(0x0123456789abcdefL, uuid.getMostSignificantBits());
+        assertEquals(0x0123456789abcdefL, uuid.getLeastSignificantBits());
+        assertEquals(uuid, UUID.fromString("urn:uuid:" + uuid));
+
+        String valid = "b4f00409-cef8-4822-802c-deb20704c365";
+        for (int i = 0; i < valid.length(); i++) {
+            char replacement = valid.charAt(i) == '-' ? 'a' : '-';
+            String bad = valid.substring(0, i) + replacement + valid.substring(i + 1);
+            try {
+                UUID.fromString(bad);
+                fail("Expecting UUIDFormatException -- " + bad);
+            } catch (UUIDFormatException iea) {
+                //Expected
+            }
+        }
+        String[] badChars = {"g", "G", "/", ":", "@", "`", "\u0661", "\uff10"};
+        for (int i = 0; i < badChars.length; i++) {
+            try {
+                UUID.fromString(badChars[i] + valid.substring(1));
+                fail("Expecting UUIDFormatException -- invalid hex " + badChars[i]);
+            } catch (UUIDFormatException iea) {
+                //Expected
+            }
+        }
+    }
+
 
     /**
      * Test the static nameUUIDFromString(String name, UUID namespaceUUID) method.
@@ -327,7 +364,10 @@ public class UUIDTest extends TestCase {
     	//Assert equals different UUID instance from same name, namespace
     	UUID test4 = UUID.nameUUIDFromString(name, ns, UUID.SHA1_ENCODING);
     	assertTrue(test4.equals(test1));
-		    
+    	
+    	//Truncated SHA-1 of the namespace and name, with the version three bits set
+    	UUID known = UUID.nameUUIDFromString("www.widgets.com", ns, UUID.SHA1_ENCODING);
+    	assertEquals("21f7f8de-8051-3b89-8680-0195ef798b6a", known.toString());
     }
 
     
@@ -345,6 +385,135 @@ public class UUIDTest extends TestCase {
             "00000000-7dec-11d0-a765-00a0c91e6bf6");
     }
 
+    /**
+     * Test formatting into a char array and an Appendable
+     *
+     *  @throws Exception an exception while testing
+     */
+    public void testFormatTo() throws Exception {
+        String[] values = {
+            "00000000-0000-0000-0000-000000000000",
+            "f81d4fae-7dec-11d0-a765-00a0c91e6bf6",
+            "ffffffff-ffff-ffff-ffff-ffffffffffff",
+            "01234567-89ab-cdef-0123-456789abcdef"};
+        for (int i = 0; i < values.length; i++) {
+            UUID uuid = new UUID(values[i]);
+            char[] chars = new char[40];
+            assertEquals(38, uuid.formatTo(chars, 2));
+            assertEquals(values[i], new String(chars, 2, 36));
+
+            StringBuffer buf = new StringBuffer("id=");
+            uuid.formatTo(buf);
+            assertEquals("id=" + values[i], buf.toString());
+        }
+        try {
+            new UUID().formatTo(new char[40], 5);
+            fail("Expecting IllegalArgumentException -- no room for 36 chars");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
+
+    /**
+     * <p>Test reading and writing byte arrays at an offset in each binary layout.</p>
+     *
+     * @throws Exception a testing Exception.
+     */
+    public void testByteArrayLayouts() throws Exception {
+        UUID uuid = new UUID("00112233-4455-6677-8899-aabbccddeeff");
+        String[] expected = {
+            "00112233445566778899aabbccddeeff",
+            "ffeeddccbbaa99887766554433221100",
+            "33221100554477668899aabbccddeeff"};
+        int[] layouts = {
+            Constants.LAYOUT_BIG_ENDIAN,
+            Constants.LAYOUT_LITTLE_ENDIAN,
+            Constants.LAYOUT_MIXED_ENDIAN};
+        for (int i = 0; i < layouts.length; i++) {
+            byte[] frame = new byte[20];
+            uuid.writeTo(frame, 3, layouts[i]);
+            byte[] written = new byte[16];
+            System.arraycopy(frame, 3, written, 0, 16);
+            assertEquals(expected[i], new String(Hex.encodeHex(written)));
+            assertEquals(0, frame[2]);
+            assertEquals(0, frame[19]);
+            assertEquals(uuid, UUID.readFrom(frame, 3, layouts[i]));
+        }
+        byte[] frame = new byte[16];
+        uuid.writeTo(frame, 0);
+        assertTrue(java.util.Arrays.equals(uuid.getRawBytes(), frame));
+        assertEquals(uuid, UUID.readFrom(frame, 0));
+
+        try {
+            uuid.writeTo(new byte[20], 5);
+            fail("Expecting IllegalArgumentException -- no room for 16 bytes");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+        try {
+            UUID.readFrom(new byte[20], -1);
+            fail("Expecting IllegalArgumentException -- negative offset");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+        try {
+            uuid.writeTo(new byte[16], 0, 7);
+            fail("Expecting IllegalArgumentException -- unknown layout");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
+
+    /**
+     * <p>Test reading and writing buffers, independent of the byte order set on them.</p>
+     *
+     * @throws Exception a testing Exception.
+     */
+    public void testByteBufferLayouts() throws Exception {
+        UUID uuid = new UUID("f81d4fae-7dec-11d0-a765-00a0c91e6bf6");
+        ByteBuffer[] buffers = {
+            ByteBuffer.allocate(40),
+            ByteBuffer.allocateDirect(40),
+            ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN),
+            ByteBuffer.allocateDirect(40).order(ByteOrder.LITTLE_ENDIAN)};
+        for (int i = 0; i < buffers.length; i++) {
+            ByteBuffer buf = buffers[i];
+            ByteOrder order = buf.order();
+            buf.put((byte) 1);
+            uuid.writeTo(buf);
+            uuid.writeTo(buf, Constants.LAYOUT_MIXED_ENDIAN);
+            assertEquals(33, buf.position());
+            assertEquals(order, buf.order());
+
+            byte[] raw = new byte[16];
+            buf.position(1);
+            buf.get(raw);
+            assertTrue(java.util.Arrays.equals(uuid.getRawBytes(), raw));
+            buf.get(raw);
+            assertEquals("ae4f1df8ec7dd011a76500a0c91e6bf6", new String(Hex.encodeHex(raw)));
+
+            buf.position(1);
+            assertEquals(uuid, UUID.readFrom(buf));
+            assertEquals(uuid, UUID.readFrom(buf, Constants.LAYOUT_MIXED_ENDIAN));
+            assertEquals(33, buf.position());
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        buf.position(5);
+        try {
+            uuid.writeTo(buf);
+            fail("Expecting BufferOverflowException");
+        } catch (BufferOverflowException boe) {
+            assertEquals(5, buf.position());
+        }
+        try {
+            UUID.readFrom(buf);
+            fail("Expecting BufferUnderflowException");
+        } catch (BufferUnderflowException bue) {
+            assertEquals(5, buf.position());
+        }
+    }
+
     /**
      * Test the toUrn method
      *
@@ -371,6 +540,48 @@ public class UUIDTest extends TestCase {
         assertEquals(-1, baseline.compareTo(more));
     }
 
+    /**
+     * <p>Test compareTo orders by signed raw bytes across the byte sign boundary.</p>
+     *
+     * @throws Exception a testing Exception.
+     */
+    public void testCompareToSignedBytes() throws Exception {
+        UUID low =  new UUID("7fffffff-ffff-ffff-ffff-ffffffffffff");
+        UUID high = new UUID("80000000-0000-0000-0000-000000000000");
+        assertEquals(Bytes.compareTo(low.getRawBytes(), high.getRawBytes()), low.compareTo(high));
+        assertEquals(Bytes.compareTo(high.getRawBytes(), low.getRawBytes()), high.compareTo(low));
+        low =  new UUID("00000000-0000-0000-0000-00000000007f");
+        high = new UUID("00000000-0000-0000-0000-000000000080");
+        assertEquals(Bytes.compareTo(low.getRawBytes(), high.getRawBytes()), low.compareTo(high));
+    }
+
+    /**
+     * <p>Test the hash code matches hashing the raw bytes.</p>
+     *
+     * @throws Exception a testing Exception.
+     */
+    public void testHashCode() throws Exception {
+        UUID uuid = new UUID("b4f00409-cef8-4822-802c-deb20704c365");
+        byte[] raw = uuid.getRawBytes();
+        int expected = 17;
+        for (int i = 0; i < raw.length; i++) {
+            expected = expected * 37 + raw[i];
+        }
+        assertEquals(expected, uuid.hashCode());
+    }
+
+    /**
+     * <p>Test the most and least significant bits accessors.</p>
+     *
+     * @throws Exception a testing Exception.
+     */
+    public void testSignificantBits() throws Exception {
+        UUID uuid = new UUID("b4f00409-cef8-4822-802c-deb20704c365");
+        assertEquals(0xb4f00409cef84822L, uuid.getMostSignificantBits());
+        assertEquals(0x802cdeb20704c365L, uuid.getLeastSignificantBits());
+        assertEquals(uuid, new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+    }
+
     /**
      * <p>Test the clockSequence() method.</p>
      * @throws Exception a testing Exception.
@@ -429,6 +640,26 @@ public class UUIDTest extends TestCase {
         assertEquals(val, test.timestamp());
     }
 
+    /**
+     * <p>Test the time-based fields of a version 6 UUID against the version 1 UUID with the same fields.</p>
+     *
+     * @throws Exception a testing Exception.
+     */
+    public void testTimeOrderedFields() throws Exception {
+        UUID v1 = new UUID("c232ab00-9414-11ec-b3c8-9f6bdeced846");
+        UUID v6 = new UUID("1ec9414c-232a-6b00-b3c8-9f6bdeced846");
+        assertEquals(UUID.VERSION_SIX, v6.version());
+        assertEquals(v1.timestamp(), v6.timestamp());
+        assertEquals(v1.clockSequence(), v6.clockSequence());
+        assertEquals(v1.node(), v6.node());
+        try {
+            new UUID("017f22e2-79b0-7cc3-98c4-dc0c0c07398f").timestamp();
+            fail("Expecting UnsupportedOperationException -- version 7 has no UUID timestamp");
+        } catch (UnsupportedOperationException uoe) {
+            //Expected
+        }
+    }
+
     /**
      * <p>Test the node method.</p>
      *
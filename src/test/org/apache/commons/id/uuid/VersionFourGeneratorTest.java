@@ -48,4 +48,96 @@ public class VersionFourGeneratorTest extends TestCase {
         assertTrue(set.add(generator.nextIdentifier(true)));
         assertTrue(set.add(generator.nextIdentifier(true)));
     }
+
+    public void testCanGenerateUUIDsWithPerThreadRandomizers() throws Exception {
+        VersionFourGenerator.setPerThreadRandom(true);
+        try {
+            final VersionFourGenerator generator = new VersionFourGenerator();
+            final UUID[][] uuids = new UUID[4][500];
+            Thread[] clients = new Thread[uuids.length];
+            for (int i = 0; i < clients.length; i++) {
+                final UUID[] clientUUIDs = uuids[i];
+                final boolean secure = i % 2 == 0;
+                clients[i] = new Thread() {
+                    public void run() {
+                        for (int j = 0; j < clientUUIDs.length; j++) {
+                            clientUUIDs[j] = (UUID) generator.nextIdentifier(secure);
+                        }
+                    }
+                };
+                clients[i].start();
+            }
+            Set set = new HashSet();
+            for (int i = 0; i < clients.length; i++) {
+                clients[i].join();
+                for (int j = 0; j < uuids[i].length; j++) {
+                    assertEquals(UUID.VERSION_FOUR, uuids[i][j].version());
+                    assertEquals(UUID.VARIANT_IETF_DRAFT, uuids[i][j].variant());
+                    assertTrue(set.add(uuids[i][j]));
+                }
+            }
+        } finally {
+            VersionFourGenerator.setPerThreadRandom(false);
+        }
+    }
+
+    public void testCanGenerateUUIDsWithBufferedSecureRandomizer() throws Exception {
+        VersionFourGenerator.setSecureBufferSize(64);
+        VersionFourGenerator.setSecureReseedInterval(128);
+        try {
+            Set set = new HashSet();
+            VersionFourGenerator generator = new VersionFourGenerator();
+            // spans several refills and reseeds
+            for (int i = 0; i < 100; i++) {
+                UUID uuid = (UUID) generator.nextIdentifier(true);
+                assertEquals(UUID.VERSION_FOUR, uuid.version());
+                assertEquals(UUID.VARIANT_IETF_DRAFT, uuid.variant());
+                assertTrue(set.add(uuid));
+            }
+        } finally {
+            VersionFourGenerator.setSecureBufferSize(0);
+            VersionFourGenerator.setSecureReseedInterval(0);
+        }
+    }
+
+    public void testSecureBufferSizeMustBeMultipleOfUUIDLength() {
+        try {
+            VersionFourGenerator.setSecureBufferSize(100);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+        try {
+            VersionFourGenerator.setSecureReseedInterval(-1);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
+
+    public void testCanGenerateUUIDBatches() {
+        VersionFourGenerator generator = new VersionFourGenerator();
+        Set set = new HashSet();
+        UUID[] uuids = generator.nextUUIDs(300);
+        UUID[] secureUUIDs = generator.nextUUIDs(300, true);
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(UUID.VERSION_FOUR, uuids[i].version());
+            assertEquals(UUID.VARIANT_IETF_DRAFT, secureUUIDs[i].variant());
+            assertTrue(set.add(uuids[i]));
+            assertTrue(set.add(secureUUIDs[i]));
+        }
+
+        long[] msb = new long[5];
+        long[] lsb = new long[5];
+        generator.nextUUIDs(msb, lsb, 1, 3);
+        assertEquals(0L, msb[0]);
+        assertEquals(0L, lsb[4]);
+        assertEquals(UUID.VERSION_FOUR, new UUID(msb[3], lsb[3]).version());
+        try {
+            generator.nextUUIDs(msb, lsb, 3, 3);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
 }
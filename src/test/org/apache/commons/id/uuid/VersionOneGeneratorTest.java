@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.id.uuid;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.id.uuid.clock.Clock;
+import org.apache.commons.id.uuid.clock.NonThrowingClock;
+import org.apache.commons.id.uuid.clock.OverClockedException;
+import org.apache.commons.id.uuid.state.Node;
+import org.apache.commons.id.uuid.state.ReadOnlyResourceStateImpl;
+import org.apache.commons.id.uuid.state.State;
+import org.apache.commons.id.uuid.state.StateHelper;
+
+/**
+ * Unit tests for {@link VersionOneGenerator}.
+ *
+ * @version $Revision$ $Date$
+ * @author Commons-id team
+ */
+public class VersionOneGeneratorTest extends TestCase {
+
+    /** Pre test value for ReadOnlyResourceStateImpl.CONFIG_FILE_KEY */
+    private String currentConfigFile;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        currentConfigFile = System.getProperty(
+                ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY);
+        System.setProperty(ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY,
+                "uuid1.state");
+    }
+
+    protected void tearDown() throws Exception {
+        if (currentConfigFile != null) {
+            System.setProperty(
+                    ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY,
+                    currentConfigFile);
+        }
+        StateHelper.setImplementation(Clock.class, null);
+        super.tearDown();
+    }
+
+    /**
+     * Returns a generator of two new nodes reading an {@link OverClockingClock}.
+     *
+     * @param strategy the overflow strategy.
+     * @return a new generator.
+     */
+    private VersionOneGenerator overClockingGenerator(int strategy) {
+        StateHelper.setImplementation(Clock.class, OverClockingClock.class);
+        OverClockingClock.time = (System.currentTimeMillis() + Clock.GREGORIAN_CHANGE_OFFSET) * Clock.INTERVALS_PER_MILLI;
+        OverClockingClock.overClocked.set(0);
+        Set nodes = new HashSet();
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-5A")));
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-5B")));
+        VersionOneGenerator generator = VersionOneGenerator.newInstance(new NodeManagerImpl(new FixedState(nodes)));
+        generator.setOverflowStrategy(strategy);
+        return generator;
+    }
+
+    /**
+     * Asserts the number of times each overflow strategy was applied.
+     *
+     * @param generator the generator.
+     * @param counts the expected count of each strategy.
+     */
+    private void assertOverflowCounts(VersionOneGenerator generator, long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            assertEquals(counts[i], generator.getOverflowCount(i));
+        }
+    }
+
+    public void testNextUUID() throws Exception {
+        UUID uuid = (UUID) VersionOneGenerator.getInstance().nextIdentifier();
+        assertEquals(UUID.VERSION_ONE, uuid.version());
+        assertEquals(UUID.VARIANT_IETF_DRAFT, uuid.variant());
+        assertTrue(uuid.timestamp() < VersionOneGenerator.getInstance().nextUUID().timestamp());
+    }
+
+    public void testNextUUIDs() throws Exception {
+        VersionOneGenerator generator = VersionOneGenerator.getInstance();
+        UUID last = generator.nextUUID();
+        UUID[] uuids = generator.nextUUIDs(2500);
+        Set set = new HashSet();
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(UUID.VERSION_ONE, uuids[i].version());
+            assertEquals(UUID.VARIANT_IETF_DRAFT, uuids[i].variant());
+            assertTrue(set.add(uuids[i]));
+            if (uuids[i].node() == last.node()) {
+                assertTrue(last.timestamp() < uuids[i].timestamp());
+            }
+            last = uuids[i];
+        }
+    }
+
+    public void testNextUUIDsIntoArrays() throws Exception {
+        long[] msb = new long[4];
+        long[] lsb = new long[4];
+        VersionOneGenerator.getInstance().nextUUIDs(msb, lsb, 1, 2);
+        assertEquals(0L, msb[0]);
+        assertEquals(0L, lsb[3]);
+        UUID first = new UUID(msb[1], lsb[1]);
+        UUID second = new UUID(msb[2], lsb[2]);
+        assertEquals(UUID.VERSION_ONE, second.version());
+        assertTrue(first.timestamp() < second.timestamp());
+        try {
+            VersionOneGenerator.getInstance().nextUUIDs(msb, lsb, -1, 2);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
+
+    public void testOverflowStrategies() throws Exception {
+        VersionOneGenerator generator = VersionOneGenerator.getInstance();
+        int strategy = generator.getOverflowStrategy();
+        try {
+            int[] strategies = {VersionOneGenerator.OVERFLOW_SPIN, VersionOneGenerator.OVERFLOW_PARK,
+                    VersionOneGenerator.OVERFLOW_BORROW, VersionOneGenerator.OVERFLOW_SWITCH_NODE};
+            for (int s = 0; s < strategies.length; s++) {
+                generator.setOverflowStrategy(strategies[s]);
+                assertEquals(strategies[s], generator.getOverflowStrategy());
+                Set set = new HashSet();
+                for (int i = 0; i < 30000; i++) {
+                    assertTrue(set.add(generator.nextUUID()));
+                }
+                UUID[] uuids = generator.nextUUIDs(30000);
+                for (int i = 0; i < uuids.length; i++) {
+                    assertTrue(set.add(uuids[i]));
+                }
+            }
+        } finally {
+            generator.setOverflowStrategy(strategy);
+        }
+        try {
+            generator.setOverflowStrategy(4);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+        try {
+            generator.getOverflowCount(-1);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
+
+    public void testSwitchNodeOnOverflow() throws Exception {
+        VersionOneGenerator generator = overClockingGenerator(VersionOneGenerator.OVERFLOW_SWITCH_NODE);
+        UUID first = generator.nextUUID();
+        OverClockingClock.overClocked.set(1);
+        UUID second = generator.nextUUID();
+        assertFalse(first.node() == second.node());
+        assertOverflowCounts(generator, new long[] {1, 0, 0, 0});
+    }
+
+    public void testSpinOnOverflow() throws Exception {
+        VersionOneGenerator generator = overClockingGenerator(VersionOneGenerator.OVERFLOW_SPIN);
+        UUID first = generator.nextUUID();
+        OverClockingClock.overClocked.set(3);
+        UUID second = generator.nextUUID();
+        assertEquals(first.node(), second.node());
+        assertTrue(first.timestamp() < second.timestamp());
+        // counted once per UUID however long it spins
+        assertOverflowCounts(generator, new long[] {0, 1, 0, 0});
+    }
+
+    public void testParkOnOverflow() throws Exception {
+        VersionOneGenerator generator = overClockingGenerator(VersionOneGenerator.OVERFLOW_PARK);
+        UUID first = generator.nextUUID();
+        OverClockingClock.overClocked.set(3);
+        UUID second = generator.nextUUID();
+        assertEquals(first.node(), second.node());
+        assertTrue(first.timestamp() < second.timestamp());
+        assertOverflowCounts(generator, new long[] {0, 0, 1, 0});
+    }
+
+    public void testBorrowOnOverflow() throws Exception {
+        VersionOneGenerator generator = overClockingGenerator(VersionOneGenerator.OVERFLOW_BORROW);
+        generator.setBorrowLead(2);
+        UUID first = generator.nextUUID();
+        // the clock is over clocked, the node borrows from its last reading
+        OverClockingClock.overClocked.set(2);
+        UUID second = generator.nextUUID();
+        assertEquals(first.node(), second.node());
+        assertTrue(first.timestamp() < second.timestamp());
+        assertOverflowCounts(generator, new long[] {0, 0, 0, 1});
+
+        // the clock stands still, the node borrows up to the lead and then switches
+        for (int i = 2; i < 20000; i++) {
+            assertEquals(first.node(), generator.nextUUID().node());
+        }
+        assertOverflowCounts(generator, new long[] {0, 0, 0, 10001});
+        assertFalse(first.node() == generator.nextUUID().node());
+        assertOverflowCounts(generator, new long[] {1, 0, 0, 10002});
+    }
+
+    public void testNextUUIDsRenewReservation() throws Exception {
+        StateHelper.setImplementation(Clock.class, OverClockingClock.class);
+        // a clock ahead of the system clock, which the first watermark is stored from
+        OverClockingClock.time = (System.currentTimeMillis() + Clock.GREGORIAN_CHANGE_OFFSET + 10000)
+            * Clock.INTERVALS_PER_MILLI;
+        OverClockingClock.overClocked.set(0);
+        Set nodes = new HashSet();
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-5A")));
+        final long[] watermark = new long[2];
+        NodeManagerImpl manager = new NodeManagerImpl(new FixedState(nodes) {
+            public void store(Set nodeSet, long timestamp) {
+                watermark[0] = timestamp;
+                watermark[1]++;
+            }
+        });
+        manager.setReservation(1);
+        manager.setFlushInterval(60000);
+        try {
+            UUID[] uuids = VersionOneGenerator.newInstance(manager).nextUUIDs(9500);
+            // renewed as the ranges approached the watermark, which stays ahead of them
+            assertTrue(watermark[1] > 2);
+            assertTrue(uuids[uuids.length - 1].timestamp() < watermark[0]);
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    public void testBorrowLead() throws Exception {
+        VersionOneGenerator generator = VersionOneGenerator.getInstance();
+        assertEquals(VersionOneGenerator.DEFAULT_BORROW_LEAD, generator.getBorrowLead());
+        try {
+            generator.setBorrowLead(1);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
+
+    public void testNewInstance() throws Exception {
+        Set nodes = new HashSet();
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-5A")));
+        VersionOneGenerator generator = VersionOneGenerator.newInstance(new NodeManagerImpl(new FixedState(nodes)));
+        assertNotSame(VersionOneGenerator.getInstance(), generator);
+        UUID uuid = generator.nextUUID();
+        assertEquals(UUID.VERSION_ONE, uuid.version());
+        assertEquals(0x02004C4F4F5AL, uuid.node());
+        assertTrue(uuid.timestamp() < generator.nextUUID().timestamp());
+        try {
+            VersionOneGenerator.newInstance(null);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            //Expected
+        }
+    }
+
+    /**
+     * State holding the given nodes, storing nothing.
+     */
+    private static class FixedState implements State {
+        /** The nodes */
+        private final Set nodes;
+
+        /**
+         * Constructor.
+         *
+         * @param nodeSet the nodes.
+         */
+        FixedState(Set nodeSet) {
+            nodes = nodeSet;
+        }
+
+        public void load() {
+            // Nothing to load
+        }
+
+        public Set getNodes() {
+            return nodes;
+        }
+
+        public void store(Set nodeSet) {
+            // Nothing to store
+        }
+
+        public void store(Set nodeSet, long timestamp) {
+            // Nothing to store
+        }
+
+        public long getSynchInterval() {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A clock standing still, over clocked for a set number of readings.
+     */
+    public static class OverClockingClock implements NonThrowingClock {
+        /** The time returned */
+        static volatile long time;
+
+        /** The number of readings left reporting over clocked */
+        static final AtomicInteger overClocked = new AtomicInteger();
+
+        /**
+         * @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime()
+         */
+        public long getUUIDTime() throws OverClockedException {
+            long t = tryGetUUIDTime();
+            if (t == OVER_CLOCKED) {
+                throw new OverClockedException();
+            }
+            return t;
+        }
+
+        /**
+         * @see org.apache.commons.id.uuid.clock.NonThrowingClock#tryGetUUIDTime()
+         */
+        public long tryGetUUIDTime() {
+            int left = overClocked.get();
+            while (left > 0) {
+                if (overClocked.compareAndSet(left, left - 1)) {
+                    return OVER_CLOCKED;
+                }
+                left = overClocked.get();
+            }
+            return time;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.id.uuid;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link VersionSevenGenerator}.
+ *
+ * @version $Revision$ $Date$
+ * @author Commons-id team
+ */
+public class VersionSevenGeneratorTest extends TestCase {
+
+    public void testVersionAndVariant() throws Exception {
+        UUID uuid = (UUID) new VersionSevenGenerator(false).nextIdentifier();
+        assertEquals(UUID.VERSION_SEVEN, uuid.version());
+        assertEquals(UUID.VARIANT_IETF_DRAFT, uuid.variant());
+        assertEquals(UUID.VERSION_SEVEN, UUID.unixTimeOrderedUUID().version());
+        assertTrue(VersionSevenGenerator.getInstance().isMonotonic());
+    }
+
+    public void testTimestamp() throws Exception {
+        long before = System.currentTimeMillis();
+        UUID uuid = new VersionSevenGenerator().nextUUID();
+        long after = System.currentTimeMillis();
+        long millis = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(before <= millis);
+        assertTrue(millis <= after);
+    }
+
+    public void testMonotonicSortsInGenerationOrder() throws Exception {
+        VersionSevenGenerator generator = new VersionSevenGenerator(true);
+        UUID last = generator.nextUUID();
+        for (int i = 0; i < 10000; i++) {
+            UUID next = generator.nextUUID();
+            assertTrue(last.toString().compareTo(next.toString()) < 0);
+            last = next;
+        }
+    }
+
+    public void testNonMonotonicIsUnique() throws Exception {
+        Set set = new HashSet();
+        VersionSevenGenerator generator = new VersionSevenGenerator(false);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(set.add(generator.nextIdentifier()));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.commons.id.uuid;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.id.uuid.state.ReadOnlyResourceStateImpl;
+
+/**
+ * Unit tests for {@link VersionSixGenerator}.
+ *
+ * @version $Revision$ $Date$
+ * @author Commons-id team
+ */
+public class VersionSixGeneratorTest extends TestCase {
+
+    /** Pre test value for ReadOnlyResourceStateImpl.CONFIG_FILE_KEY */
+    private String currentConfigFile;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        currentConfigFile = System.getProperty(
+                ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY);
+        System.setProperty(ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY,
+                "uuid1.state");
+    }
+
+    protected void tearDown() throws Exception {
+        if (currentConfigFile != null) {
+            System.setProperty(
+                    ReadOnlyResourceStateImpl.CONFIG_FILENAME_KEY,
+                    currentConfigFile);
+        }
+        super.tearDown();
+    }
+
+    public void testVersionAndVariant() throws Exception {
+        UUID uuid = (UUID) VersionSixGenerator.getInstance().nextIdentifier();
+        assertEquals(UUID.VERSION_SIX, uuid.version());
+        assertEquals(UUID.VARIANT_IETF_DRAFT, uuid.variant());
+        assertEquals(UUID.VERSION_SIX, UUID.timeOrderedUUID().version());
+    }
+
+    public void testSortsInGenerationOrder() throws Exception {
+        VersionSixGenerator generator = VersionSixGenerator.getInstance();
+        UUID last = generator.nextUUID();
+        for (int i = 0; i < 1000; i++) {
+            UUID next = generator.nextUUID();
+            assertTrue(last.toString().compareTo(next.toString()) < 0);
+            assertTrue(last.timestamp() < next.timestamp());
+            last = next;
+        }
+    }
+
+    public void testSharesStateWithVersionOne() throws Exception {
+        UUID v1 = VersionOneGenerator.getInstance().nextUUID();
+        UUID v6 = VersionSixGenerator.getInstance().nextUUID();
+        assertEquals(UUID.VERSION_ONE, v1.version());
+        assertTrue(v1.timestamp() < v6.timestamp());
+        assertEquals(v1.node(), v6.node());
+        assertEquals(v1.clockSequence(), v6.clockSequence());
+    }
+}
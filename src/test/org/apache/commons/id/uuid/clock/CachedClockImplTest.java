@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CachedClockImpl}.
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public class CachedClockImplTest extends TestCase {
+
+    protected void tearDown() throws Exception {
+        CachedClockImpl.setUpdateInterval(CachedClockImpl.DEFAULT_UPDATE_INTERVAL);
+        super.tearDown();
+    }
+
+    /**
+     * Tests time stamps increase and stay close to the system clock.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testTimes() throws Exception {
+        Clock c = new CachedClockImpl();
+        assertTrue(CachedClockImpl.isRunning());
+        long last = 0;
+        for (int i = 0; i < 50; i++) {
+            Thread.sleep(2);
+            for (int j = 0; j < 100; j++) {
+                long baseTime = System.currentTimeMillis();
+                long time = c.getUUIDTime();
+                assertTrue("Time stamps must increase", time > last);
+                assertTrue("Generated timestamp too large",
+                        time < (baseTime + Clock.GREGORIAN_CHANGE_OFFSET + 1000) * Clock.INTERVALS_PER_MILLI);
+                assertTrue("Generated timestamp too small",
+                        time > (baseTime + Clock.GREGORIAN_CHANGE_OFFSET - 1000) * Clock.INTERVALS_PER_MILLI);
+                last = time;
+            }
+        }
+    }
+
+    /**
+     * Tests the clock keeps working after the update thread is shut down, and
+     * a new instance restarts it.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testShutdown() throws Exception {
+        Clock c = new CachedClockImpl();
+        long before = c.getUUIDTime();
+        CachedClockImpl.shutdown();
+        assertFalse(CachedClockImpl.isRunning());
+        long time = c.getUUIDTime();
+        assertTrue(time > before);
+        long now = (System.currentTimeMillis() + Clock.GREGORIAN_CHANGE_OFFSET) * Clock.INTERVALS_PER_MILLI;
+        assertTrue(time <= now + Clock.INTERVALS_PER_MILLI);
+        new CachedClockImpl();
+        assertTrue(CachedClockImpl.isRunning());
+    }
+
+    /**
+     * Tests the update interval must be positive.
+     */
+    public void testUpdateInterval() {
+        CachedClockImpl.setUpdateInterval(5);
+        assertEquals(5, CachedClockImpl.getUpdateInterval());
+        try {
+            CachedClockImpl.setUpdateInterval(0);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests more than 10,000 time stamps in a cached millisecond over clock.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testOverClocked() throws Exception {
+        CachedClockImpl.setUpdateInterval(60000);
+        CachedClockImpl.shutdown();
+        Clock c = new CachedClockImpl();
+        try {
+            // the updater may publish a new millisecond once after starting
+            for (int i = 0; i < 2 * Clock.INTERVALS_PER_MILLI; i++) {
+                c.getUUIDTime();
+            }
+            fail("Expecting OverClockedException");
+        } catch (OverClockedException oce) {
+            // expected
+        } finally {
+            CachedClockImpl.shutdown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link MonotonicClockImpl}.
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public class MonotonicClockImplTest extends TestCase {
+
+    /** A millisecond in 100ns intervals */
+    private static final long MILLI = Clock.INTERVALS_PER_MILLI;
+
+    protected void tearDown() throws Exception {
+        MonotonicClockImpl.setListener(null);
+        super.tearDown();
+    }
+
+    /**
+     * Tests times keep increasing while the wrapped clock is behind, within the lead limit.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testStepBackwards() throws Exception {
+        SetClock wrapped = new SetClock(1000000 * MILLI);
+        MonotonicClockImpl c = new MonotonicClockImpl(wrapped, 10);
+        assertEquals(10, c.getMaxLead());
+        long last = c.getUUIDTime();
+        assertEquals(1000000 * MILLI, last);
+        wrapped.time -= 5 * MILLI;
+        for (int i = 0; i < 100; i++) {
+            long time = c.getUUIDTime();
+            assertEquals(last + 1, time);
+            last = time;
+            wrapped.time += 100;
+        }
+        // caught up
+        wrapped.time = last + MILLI;
+        assertEquals(last + MILLI, c.getUUIDTime());
+    }
+
+    /**
+     * Tests a step beyond the lead limit is followed once and reported.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testLeadLimit() throws Exception {
+        final long[] reported = new long[3];
+        MonotonicClockImpl.setListener(new MonotonicClockImpl.LeadLimitListener() {
+            public void leadLimitReached(MonotonicClockImpl clock, long lastTime, long clockTime) {
+                reported[0]++;
+                reported[1] = lastTime;
+                reported[2] = clockTime;
+            }
+        });
+        long count = MonotonicClockImpl.getLeadLimitCount();
+        SetClock wrapped = new SetClock(1000000 * MILLI);
+        MonotonicClockImpl c = new MonotonicClockImpl(wrapped, 10);
+        long last = c.getUUIDTime();
+        wrapped.time -= 60000 * MILLI;
+        assertEquals(wrapped.time, c.getUUIDTime());
+        assertEquals(1, reported[0]);
+        assertEquals(last, reported[1]);
+        assertEquals(wrapped.time, reported[2]);
+        assertEquals(count + 1, MonotonicClockImpl.getLeadLimitCount());
+        assertEquals(wrapped.time + 1, c.getUUIDTime());
+        assertEquals(1, reported[0]);
+    }
+
+    /**
+     * Tests an over clocked wrapped clock is reported, also while leading it.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testOverClockedDelegate() throws Exception {
+        SetClock wrapped = new SetClock(1000000 * MILLI);
+        MonotonicClockImpl c = new MonotonicClockImpl(wrapped, 10);
+        long last = c.getUUIDTime();
+        wrapped.overClocked = true;
+        assertEquals(NonThrowingClock.OVER_CLOCKED, c.tryGetUUIDTime());
+        try {
+            c.getUUIDTime();
+            fail("Expecting OverClockedException");
+        } catch (OverClockedException oce) {
+            // expected
+        }
+
+        // stepped back, the lead is given on readings only
+        wrapped.overClocked = false;
+        wrapped.time -= MILLI;
+        assertEquals(last + 1, c.getUUIDTime());
+        wrapped.overClocked = true;
+        assertEquals(NonThrowingClock.OVER_CLOCKED, c.tryGetUUIDTime());
+        wrapped.overClocked = false;
+        assertEquals(last + 2, c.getUUIDTime());
+    }
+
+    /**
+     * Tests the default wrapped clock and invalid arguments.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testConstructors() throws Exception {
+        MonotonicClockImpl c = new MonotonicClockImpl();
+        assertEquals(MonotonicClockImpl.DEFAULT_MAX_LEAD, c.getMaxLead());
+        long baseTime = (System.currentTimeMillis() + Clock.GREGORIAN_CHANGE_OFFSET) * MILLI;
+        assertTrue(Math.abs(c.getUUIDTime() - baseTime) < 1000 * MILLI);
+        String delegate = System.getProperty(MonotonicClockImpl.DELEGATE_KEY);
+        try {
+            System.setProperty(MonotonicClockImpl.DELEGATE_KEY, NanoClockImpl.class.getName());
+            assertTrue(Math.abs(new MonotonicClockImpl().getUUIDTime() - baseTime) < 1000 * MILLI);
+            System.setProperty(MonotonicClockImpl.DELEGATE_KEY, "org.apache.commons.id.uuid.clock.NoSuchClock");
+            try {
+                new MonotonicClockImpl();
+                fail("Expecting IllegalStateException");
+            } catch (IllegalStateException ise) {
+                // expected
+            }
+        } finally {
+            if (delegate == null) {
+                System.clearProperty(MonotonicClockImpl.DELEGATE_KEY);
+            } else {
+                System.setProperty(MonotonicClockImpl.DELEGATE_KEY, delegate);
+            }
+        }
+        try {
+            new MonotonicClockImpl(null, 10);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        try {
+            new MonotonicClockImpl(new SystemClockImpl(), 0);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * A clock returning the time it is set to.
+     */
+    private static class SetClock implements Clock {
+        /** The time returned */
+        long time;
+
+        /** Whether the clock throws OverClockedException */
+        boolean overClocked;
+
+        /**
+         * Constructor.
+         *
+         * @param start the time returned.
+         */
+        SetClock(long start) {
+            time = start;
+        }
+
+        /**
+         * @see org.apache.commons.id.uuid.clock.Clock#getUUIDTime()
+         */
+        public long getUUIDTime() throws OverClockedException {
+            if (overClocked) {
+                throw new OverClockedException();
+            }
+            return time;
+        }
+    }
+}
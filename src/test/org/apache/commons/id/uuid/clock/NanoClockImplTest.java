@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link NanoClockImpl}.
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public class NanoClockImplTest extends TestCase {
+
+    /** A millisecond in 100ns intervals */
+    private static final long MILLI = Clock.INTERVALS_PER_MILLI;
+
+    /**
+     * Tests time stamps strictly increase and stay close to the system clock.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testTimes() throws Exception {
+        NanoClockImpl c = new NanoClockImpl();
+        c.setReanchorInterval(5);
+        long last = 0;
+        for (int i = 0; i < 50; i++) {
+            Thread.sleep(2);
+            for (int j = 0; j < 100; j++) {
+                long baseTime = System.currentTimeMillis();
+                long time = c.getUUIDTime();
+                assertTrue("Time stamps must increase", time > last);
+                assertTrue("Generated timestamp too large",
+                        time < (baseTime + Clock.GREGORIAN_CHANGE_OFFSET + 1000) * MILLI);
+                assertTrue("Generated timestamp too small",
+                        time > (baseTime + Clock.GREGORIAN_CHANGE_OFFSET - 1000) * MILLI);
+                last = time;
+            }
+        }
+    }
+
+    /**
+     * Tests bursts are limited by the elapsed time, not 10,000 per millisecond.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testBurst() throws Exception {
+        NanoClockImpl c = new NanoClockImpl();
+        long first = c.getUUIDTime();
+        int overClocks = 0;
+        for (int i = 0; i < 3 * MILLI; i++) {
+            try {
+                c.getUUIDTime();
+            } catch (OverClockedException oce) {
+                overClocks++;
+            }
+        }
+        assertTrue(overClocks < 3 * MILLI);
+        assertTrue(c.getUUIDTime() > first);
+    }
+
+    /**
+     * Tests drift from the system clock is corrected gradually, and steps at once.
+     */
+    public void testReanchor() {
+        NanoClockImpl.Anchor anchor = new NanoClockImpl.Anchor(1000000 * MILLI, 0);
+        long nanos = 1000000000L;
+        long time = 1000000 * MILLI + 1000 * MILLI;
+        assertEquals(time, anchor.time(nanos));
+
+        // within the resolution of the system clock
+        assertEquals(time, NanoClockImpl.reanchor(anchor, nanos, time + MILLI / 2).time);
+        // bounded corrections
+        assertEquals(time + NanoClockImpl.MAX_CORRECTION,
+                NanoClockImpl.reanchor(anchor, nanos, time + 20 * MILLI).time);
+        assertEquals(time - NanoClockImpl.MAX_CORRECTION,
+                NanoClockImpl.reanchor(anchor, nanos, time - 20 * MILLI).time);
+        assertEquals(nanos, NanoClockImpl.reanchor(anchor, nanos, time).nanos);
+        // the system clock was set
+        long step = (NanoClockImpl.STEP_THRESHOLD + 1) * MILLI;
+        assertEquals(time - step, NanoClockImpl.reanchor(anchor, nanos, time - step).time);
+    }
+
+    /**
+     * Tests the re-anchor interval must be positive.
+     */
+    public void testReanchorInterval() {
+        NanoClockImpl c = new NanoClockImpl();
+        assertEquals(NanoClockImpl.DEFAULT_REANCHOR_INTERVAL, c.getReanchorInterval());
+        c.setReanchorInterval(10);
+        assertEquals(10, c.getReanchorInterval());
+        try {
+            c.setReanchorInterval(0);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.clock;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link TickCounter}.
+ *
+ * @author Commons-Id team
+ * @version $Revision$ $Date$
+ */
+public class TickCounterTest extends TestCase {
+
+    /** A millisecond in 100ns intervals */
+    private static final long MILLI = Clock.INTERVALS_PER_MILLI;
+
+    /**
+     * Tests ticks are counted up to a millisecond ahead of the current time.
+     */
+    public void testNext() {
+        TickCounter ticks = new TickCounter();
+        long now = 1000 * MILLI;
+        assertEquals(now, ticks.next(now));
+        assertEquals(now + 1, ticks.next(now));
+        assertEquals(now + 5, ticks.next(now + 5));
+        for (int i = 6; i < MILLI - 1; i++) {
+            assertEquals(now + i, ticks.next(now));
+        }
+        assertEquals(NonThrowingClock.OVER_CLOCKED, ticks.next(now));
+        // a clock set backwards is followed
+        assertEquals(now - 5000 * MILLI, ticks.next(now - 5000 * MILLI));
+    }
+
+    /**
+     * Tests an over clocked clock throws.
+     *
+     * @throws Exception a testing exception.
+     */
+    public void testGetUUIDTime() throws Exception {
+        final long[] time = {1000 * MILLI};
+        NonThrowingClock clock = new NonThrowingClock() {
+            public long getUUIDTime() throws OverClockedException {
+                return TickCounter.getUUIDTime(this);
+            }
+            public long tryGetUUIDTime() {
+                return time[0];
+            }
+        };
+        assertEquals(1000 * MILLI, clock.getUUIDTime());
+        time[0] = NonThrowingClock.OVER_CLOCKED;
+        try {
+            clock.getUUIDTime();
+            fail("Expecting OverClockedException");
+        } catch (OverClockedException oce) {
+            // expected
+        }
+    }
+}
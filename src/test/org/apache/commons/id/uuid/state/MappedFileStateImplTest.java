@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.id.uuid.state;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.id.test.AssertSerialization;
+
+/**
+ * Unit tests for {@link MappedFileStateImpl}.
+ *
+ * @version $Revision$ $Date$
+ * @author Commons-Id team
+ */
+public class MappedFileStateImplTest extends TestCase {
+
+    /** Pre test value for MappedFileStateImpl.FILENAME_KEY */
+    private String currentFile;
+
+    /** The state file of the test */
+    private File file;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        currentFile = System.getProperty(MappedFileStateImpl.FILENAME_KEY);
+        file = File.createTempFile("uuid", ".state");
+        file.deleteOnExit();
+        System.setProperty(MappedFileStateImpl.FILENAME_KEY, file.getPath());
+    }
+
+    protected void tearDown() throws Exception {
+        if (currentFile != null) {
+            System.setProperty(MappedFileStateImpl.FILENAME_KEY, currentFile);
+        } else {
+            System.clearProperty(MappedFileStateImpl.FILENAME_KEY);
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Returns a set of two nodes.
+     *
+     * @return the nodes.
+     */
+    private Set twoNodes() {
+        Set nodes = new HashSet();
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-50"), 1000L, (short) 7));
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-55"), 2000L, (short) 9));
+        return nodes;
+    }
+
+    /**
+     * Returns the node with the given identifier.
+     *
+     * @param nodes the nodes to search.
+     * @param id the node identifier.
+     * @return the node.
+     */
+    private Node find(Set nodes, String id) {
+        byte[] bytes = StateHelper.decodeMACAddress(id);
+        Iterator it = nodes.iterator();
+        while (it.hasNext()) {
+            Node node = (Node) it.next();
+            if (node.equals(bytes)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <p>Tests a created file loads the nodes.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testCreateAndLoad() throws Exception {
+        MappedFileStateImpl.create(file, twoNodes(), 3000);
+        assertEquals(32 + 2 * 24, file.length());
+        MappedFileStateImpl impl = new MappedFileStateImpl();
+        impl.load();
+        assertEquals(3000, impl.getSynchInterval());
+        assertEquals(2, impl.getNodes().size());
+        Node node = find(impl.getNodes(), "02-00-4C-4F-4F-55");
+        assertEquals(2000L, node.getLastTimestamp());
+        assertEquals(9, node.getClockSequence());
+    }
+
+    /**
+     * <p>Tests stores are written in place and read back.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testStore() throws Exception {
+        MappedFileStateImpl.create(file, twoNodes(), 3000);
+        MappedFileStateImpl impl = new MappedFileStateImpl();
+        impl.load();
+        Node node = find(impl.getNodes(), "02-00-4C-4F-4F-50");
+        long last = node.getUUIDTime();
+        impl.store(impl.getNodes());
+
+        MappedFileStateImpl reloaded = new MappedFileStateImpl();
+        reloaded.load();
+        assertEquals(last, find(reloaded.getNodes(), "02-00-4C-4F-4F-50").getLastTimestamp());
+        assertEquals(2000L, find(reloaded.getNodes(), "02-00-4C-4F-4F-55").getLastTimestamp());
+
+        impl.setForce(false);
+        assertFalse(impl.isForce());
+        impl.store(impl.getNodes(), last + 5000);
+        reloaded = new MappedFileStateImpl();
+        reloaded.load();
+        assertEquals(last + 5000, find(reloaded.getNodes(), "02-00-4C-4F-4F-50").getLastTimestamp());
+        assertEquals(last + 5000, find(reloaded.getNodes(), "02-00-4C-4F-4F-55").getLastTimestamp());
+        assertEquals(9, find(reloaded.getNodes(), "02-00-4C-4F-4F-55").getClockSequence());
+    }
+
+    /**
+     * <p>Tests a deserialized state stores and closes, and leases once loaded.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testSerialization() throws Exception {
+        MappedFileStateImpl.create(file, twoNodes(), 3000);
+        MappedFileStateImpl impl = new MappedFileStateImpl();
+        impl.setLeaseCount(1);
+        MappedFileStateImpl copy = (MappedFileStateImpl) AssertSerialization.assertSerializable(impl);
+        copy.store(twoNodes(), 9000L);
+        copy.close();
+
+        copy.load();
+        assertEquals(1, copy.getNodes().size());
+        copy.store(copy.getNodes(), 9000L);
+        copy.close();
+        MappedFileStateImpl reloaded = new MappedFileStateImpl();
+        reloaded.load();
+        Node leased = (Node) copy.getNodes().iterator().next();
+        String id = StateHelper.encodeMACAddress(leased.getNodeIdentifier());
+        assertEquals(9000L, find(reloaded.getNodes(), id).getLastTimestamp());
+        reloaded.close();
+    }
+
+    /**
+     * <p>Tests a record failing its checksum loads with a new clock sequence.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testCorruptRecord() throws Exception {
+        Set nodes = new HashSet();
+        nodes.add(new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-50"), 1000L, (short) 7));
+        MappedFileStateImpl.create(file, nodes, 3000);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(32 + 8);
+            raf.writeLong(123456L);
+        } finally {
+            raf.close();
+        }
+        MappedFileStateImpl impl = new MappedFileStateImpl();
+        impl.load();
+        Node node = find(impl.getNodes(), "02-00-4C-4F-4F-50");
+        assertEquals(0L, node.getLastTimestamp());
+    }
+
+    /**
+     * <p>Tests files that are not state files are rejected.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testInvalidFile() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(new byte[40]);
+        } finally {
+            raf.close();
+        }
+        try {
+            new MappedFileStateImpl().load();
+            fail("Expecting IllegalStateException");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+    }
+
+    /**
+     * <p>Tests each instance leases node slots no other instance holds.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testLeasing() throws Exception {
+        MappedFileStateImpl.create(file, 3, 3000);
+        MappedFileStateImpl first = new MappedFileStateImpl();
+        first.setLeaseCount(1);
+        MappedFileStateImpl second = new MappedFileStateImpl();
+        second.setLeaseCount(1);
+        MappedFileStateImpl third = new MappedFileStateImpl();
+        third.setLeaseCount(2);
+        MappedFileStateImpl fourth = new MappedFileStateImpl();
+        fourth.setLeaseCount(1);
+        try {
+            first.load();
+            second.load();
+            third.load();
+            assertEquals(1, first.getNodes().size());
+            assertEquals(1, second.getNodes().size());
+            assertEquals(1, third.getNodes().size());
+            Set all = new HashSet(first.getNodes());
+            all.addAll(second.getNodes());
+            all.addAll(third.getNodes());
+            assertEquals(3, all.size());
+
+            try {
+                fourth.load();
+                fail("Expecting IllegalStateException");
+            } catch (IllegalStateException ise) {
+                //expected
+            }
+
+            Node node = (Node) first.getNodes().iterator().next();
+            first.close();
+            fourth.load();
+            assertEquals(1, fourth.getNodes().size());
+            assertTrue(fourth.getNodes().contains(node));
+        } finally {
+            first.close();
+            second.close();
+            third.close();
+            fourth.close();
+        }
+    }
+
+    /**
+     * <p>Tests the lease count is read from the system property.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testLeaseCountProperty() throws Exception {
+        String current = System.getProperty(MappedFileStateImpl.LEASE_KEY);
+        try {
+            System.clearProperty(MappedFileStateImpl.LEASE_KEY);
+            assertEquals(0, new MappedFileStateImpl().getLeaseCount());
+            System.setProperty(MappedFileStateImpl.LEASE_KEY, "2");
+            assertEquals(2, new MappedFileStateImpl().getLeaseCount());
+            System.setProperty(MappedFileStateImpl.LEASE_KEY, "two");
+            try {
+                new MappedFileStateImpl().getLeaseCount();
+                fail("Expecting IllegalStateException");
+            } catch (IllegalStateException ise) {
+                //expected
+            }
+            try {
+                new MappedFileStateImpl().setLeaseCount(-1);
+                fail("Expecting IllegalArgumentException");
+            } catch (IllegalArgumentException iae) {
+                //expected
+            }
+        } finally {
+            if (current != null) {
+                System.setProperty(MappedFileStateImpl.LEASE_KEY, current);
+            } else {
+                System.clearProperty(MappedFileStateImpl.LEASE_KEY);
+            }
+        }
+    }
+
+    /**
+     * <p>Tests the conversion of the XML format.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testConvert() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+            + "<!DOCTYPE uuidstate [\n"
+            + "   <!ELEMENT uuidstate (node*)>\n"
+            + "   <!ELEMENT node EMPTY>\n"
+            + "   <!ATTLIST node id ID #REQUIRED>\n"
+            + "   <!ATTLIST node clocksequence CDATA #IMPLIED>\n"
+            + "   <!ATTLIST node lasttimestamp CDATA #IMPLIED>\n"
+            + "]>\n"
+            + "<uuidstate synchInterval=\"3000\">\n"
+            + "     <node id=\"02-00-4C-4F-4F-50\" />\n"
+            + "     <node id=\"02-00-4C-4F-4F-55\" clocksequence=\"9\" timestamp=\"2000\" />\n"
+            + "</uuidstate>";
+        MappedFileStateImpl.convert(new ByteArrayInputStream(xml.getBytes("UTF-8")), file);
+        MappedFileStateImpl impl = new MappedFileStateImpl();
+        impl.load();
+        assertEquals(3000, impl.getSynchInterval());
+        assertEquals(2, impl.getNodes().size());
+        assertNotNull(find(impl.getNodes(), "02-00-4C-4F-4F-50"));
+        Node node = find(impl.getNodes(), "02-00-4C-4F-4F-55");
+        assertEquals(2000L, node.getLastTimestamp());
+        assertEquals(9, node.getClockSequence());
+    }
+}
@@ -21,6 +21,10 @@ import junit.framework.TestCase;
 
 import java.util.Arrays;
 
+import org.apache.commons.id.uuid.clock.Clock;
+import org.apache.commons.id.uuid.clock.NonThrowingClock;
+import org.apache.commons.id.uuid.clock.OverClockedException;
+
 /**
  * Unit tests for {@link Node}.
  *
@@ -129,4 +133,99 @@ public class NodeTest extends TestCase {
         long last = test.getUUIDTime();
         assertEquals(last, test.getLastTimestamp());
     }
+
+    /**
+     * Test that concurrent callers are issued unique, increasing times.
+     *
+     * @throws Exception a test exception.
+     */
+    public void testConcurrentUUIDTime() throws Exception {
+        final Node test = new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-50"));
+        final short clockSeq = test.getClockSequence();
+        final int iterations = 20000;
+        final long[][] times = new long[4][iterations];
+        Thread[] clients = new Thread[times.length];
+        for (int i = 0; i < clients.length; i++) {
+            final long[] clientTimes = times[i];
+            clients[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < iterations;) {
+                        try {
+                            clientTimes[j] = test.getUUIDTime();
+                            j++;
+                        } catch (OverClockedException oce) {
+                            //Try again
+                        }
+                    }
+                }
+            };
+            clients[i].start();
+        }
+        for (int i = 0; i < clients.length; i++) {
+            clients[i].join();
+        }
+        long[] all = new long[times.length * iterations];
+        for (int i = 0; i < times.length; i++) {
+            for (int j = 1; j < iterations; j++) {
+                assertTrue(times[i][j - 1] < times[i][j]);
+            }
+            System.arraycopy(times[i], 0, all, i * iterations, iterations);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertTrue("Duplicate time " + all[i], all[i - 1] != all[i]);
+        }
+        assertEquals(clockSeq, test.getClockSequence());
+        assertEquals(all[all.length - 1], test.getLastTimestamp());
+    }
+
+    /**
+     * <p>Test a node resumes after a watermark ahead of the clock, keeping its clock sequence.</p>
+     *
+     * @throws Exception a test exception.
+     */
+    public void testResumeAfter() throws Exception {
+        Node node = new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-50"));
+        short sequence = node.getClockSequence();
+        long watermark = node.getUUIDTime() + 60000 * Clock.INTERVALS_PER_MILLI;
+        node.resumeAfter(watermark);
+        assertEquals(watermark + 1, node.getUUIDTime());
+        assertEquals(watermark + 2, node.getUUIDTimes((int) Clock.INTERVALS_PER_MILLI));
+        assertEquals(watermark + 2 + Clock.INTERVALS_PER_MILLI, node.getUUIDTime());
+        assertEquals(sequence, node.getClockSequence());
+
+        // a watermark the clock passed has no effect
+        Node other = new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-55"));
+        long past = other.getUUIDTime();
+        other.resumeAfter(past - 60000 * Clock.INTERVALS_PER_MILLI);
+        assertTrue(other.getUUIDTime() > past);
+    }
+
+    /**
+     * <p>Test over clocking is returned, and times are borrowed within the lead.</p>
+     */
+    public void testTryGetUUIDTimes() {
+        Node node = new Node(StateHelper.decodeMACAddress("02-00-4C-4F-4F-50"));
+        int count = (int) Clock.INTERVALS_PER_MILLI;
+        long first = node.tryGetUUIDTimes(count, 30 * Clock.INTERVALS_PER_MILLI);
+        long time = first;
+        for (int i = 1; i < 20; i++) {
+            time = node.tryGetUUIDTimes(count, 30 * Clock.INTERVALS_PER_MILLI);
+            assertTrue(time >= first + i * Clock.INTERVALS_PER_MILLI);
+        }
+        // twenty milliseconds were borrowed ahead of the clock
+        assertEquals(NonThrowingClock.OVER_CLOCKED, node.tryGetUUIDTimes(count, Clock.INTERVALS_PER_MILLI));
+        try {
+            node.getUUIDTimes(count);
+            fail("Expecting OverClockedException");
+        } catch (OverClockedException oce) {
+            // expected
+        }
+        try {
+            node.tryGetUUIDTimes(1, Clock.INTERVALS_PER_MILLI - 1);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
 }
@@ -17,6 +17,11 @@
 
 package org.apache.commons.id.uuid.state;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import junit.framework.TestCase;
 
 /**
@@ -53,4 +58,123 @@ public class ReadWriteFileStateImplTest extends TestCase {
         impl.store(impl.getNodes());
     }
 
+    /**
+     * <p>Tests the state file is replaced with the stored state, leaving no temporary file.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testAtomicStore() throws Exception {
+        System.setProperty(ReadWriteFileStateImpl.CONFIG_FILENAME_KEY, "uuid1.state");
+        ReadWriteFileStateImpl impl = new ReadWriteFileStateImpl();
+        impl.load();
+        File file = new File(ClassLoader.getSystemResource("uuid1.state").getFile());
+        int files = file.getParentFile().list().length;
+
+        impl.setFsyncInterval(ReadWriteFileStateImpl.FSYNC_ALWAYS);
+        impl.store(impl.getNodes(), 1234567890L);
+        assertTrue(read(file).indexOf("timestamp=\"1234567890\"") != -1);
+        assertEquals(files, file.getParentFile().list().length);
+        assertEquals(1, impl.getWriteCount());
+        assertEquals(1, impl.getFsyncCount());
+        assertEquals(0, impl.getFailureCount());
+        assertTrue(impl.getLastWriteNanos() > 0);
+        assertTrue(impl.getMaxWriteNanos() >= impl.getLastWriteNanos());
+        assertEquals(impl.getLastWriteNanos(), impl.getTotalWriteNanos());
+
+        impl.setFsyncInterval(ReadWriteFileStateImpl.FSYNC_NEVER);
+        impl.store(impl.getNodes());
+        assertEquals(2, impl.getWriteCount());
+        assertEquals(1, impl.getFsyncCount());
+
+        impl.setFsyncInterval(60000);
+        impl.store(impl.getNodes());
+        assertEquals(1, impl.getFsyncCount());
+    }
+
+    /**
+     * <p>Tests a write skipping the fsync is forced once the interval elapses.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testDeferredFsync() throws Exception {
+        System.setProperty(ReadWriteFileStateImpl.CONFIG_FILENAME_KEY, "uuid1.state");
+        ReadWriteFileStateImpl impl = new ReadWriteFileStateImpl();
+        impl.load();
+        impl.setFsyncInterval(500);
+        impl.store(impl.getNodes());
+        assertEquals(1, impl.getFsyncCount());
+        impl.store(impl.getNodes(), 1234567890L);
+        impl.store(impl.getNodes(), 1234567891L);
+        assertEquals(3, impl.getWriteCount());
+        for (int i = 0; i < 200 && impl.getFsyncCount() < 2; i++) {
+            Thread.sleep(10);
+        }
+        // the two writes within the interval are forced by one fsync
+        assertEquals(2, impl.getFsyncCount());
+        Thread.sleep(100);
+        assertEquals(2, impl.getFsyncCount());
+    }
+
+    /**
+     * <p>Tests failed writes are counted and reported.</p>
+     * @throws Exception a testing Exception.
+     */
+    public void testFailedStore() throws Exception {
+        System.setProperty(ReadWriteFileStateImpl.CONFIG_FILENAME_KEY, "uuid1.state");
+        ReadWriteFileStateImpl impl = new ReadWriteFileStateImpl();
+        impl.load();
+        File file = new File(ClassLoader.getSystemResource("uuid1.state").getFile());
+        if (!file.setWritable(false) || file.canWrite()) {
+            return; // cannot make the file read only, as when run as root
+        }
+        try {
+            try {
+                impl.store(impl.getNodes());
+                fail("Expecting IOException");
+            } catch (IOException ioe) {
+                // expected
+            }
+            try {
+                impl.store(impl.getNodes(), 1L);
+                fail("Expecting IllegalStateException");
+            } catch (IllegalStateException ise) {
+                assertTrue(ise.getCause() instanceof IOException);
+            }
+            assertEquals(2, impl.getFailureCount());
+            assertEquals(0, impl.getWriteCount());
+        } finally {
+            file.setWritable(true);
+        }
+    }
+
+    /**
+     * <p>Tests invalid fsync intervals are rejected.</p>
+     */
+    public void testInvalidFsyncInterval() {
+        try {
+            new ReadWriteFileStateImpl().setFsyncInterval(-2);
+            fail("Expecting IllegalArgumentException");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    /**
+     * Returns the content of a file.
+     *
+     * @param file the file to read.
+     * @return the content of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private String read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+            return new String(bytes, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
 }
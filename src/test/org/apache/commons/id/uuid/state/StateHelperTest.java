@@ -20,6 +20,7 @@ package org.apache.commons.id.uuid.state;
 import junit.framework.TestCase;
 
 import org.apache.commons.id.uuid.clock.Clock;
+import org.apache.commons.id.uuid.clock.NanoClockImpl;
 import org.apache.commons.id.uuid.clock.SystemClockImpl;
 import org.apache.commons.id.uuid.clock.ThreadClockImpl;
 
@@ -92,6 +93,8 @@ public class StateHelperTest extends TestCase {
             // Make sure to put it back.
             if (currentClockImpl != null) {
                 System.setProperty(StateHelper.UUID_CLOCK_IMPL_PROPERTY_KEY, currentClockImpl);
+            } else {
+                System.clearProperty(StateHelper.UUID_CLOCK_IMPL_PROPERTY_KEY);
             }
         }
     }
@@ -117,11 +120,74 @@ public class StateHelperTest extends TestCase {
         } finally {
             // Make sure to put it back.
             if (currentStateImpl != null) {
-                System.setProperty(StateHelper.UUID_CLOCK_IMPL_PROPERTY_KEY, currentStateImpl);
+                System.setProperty(StateHelper.UUID_STATE_IMPL_PROPERTY_KEY, currentStateImpl);
+            } else {
+                System.clearProperty(StateHelper.UUID_STATE_IMPL_PROPERTY_KEY);
             }
         }
     }
 
+    /** Test implementations set explicitly are used before system properties */
+    public void testSetImplementation() {
+        String currentClockImpl = System.getProperty(StateHelper.UUID_CLOCK_IMPL_PROPERTY_KEY);
+        try {
+            System.setProperty(StateHelper.UUID_CLOCK_IMPL_PROPERTY_KEY, SystemClockImpl.class.getName());
+            StateHelper.setImplementation(Clock.class, NanoClockImpl.class);
+            assertTrue(StateHelper.getClockImpl() instanceof NanoClockImpl);
+            StateHelper.setImplementation(Clock.class, null);
+            assertTrue(StateHelper.getClockImpl() instanceof SystemClockImpl);
+            // a new instance each time
+            assertNotSame(StateHelper.getClockImpl(), StateHelper.getClockImpl());
+            try {
+                StateHelper.setImplementation(Clock.class, InMemoryStateImpl.class);
+                fail("Expecting IllegalArgumentException");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        } finally {
+            StateHelper.setImplementation(Clock.class, null);
+            if (currentClockImpl != null) {
+                System.setProperty(StateHelper.UUID_CLOCK_IMPL_PROPERTY_KEY, currentClockImpl);
+            } else {
+                System.clearProperty(StateHelper.UUID_CLOCK_IMPL_PROPERTY_KEY);
+            }
+        }
+    }
+
+    /** Test the default implementation is used when none is configured */
+    public void testNewInstance() {
+        Object o = StateHelper.newInstance(Runnable.class, DefaultRunnable.class.getName());
+        assertTrue(o instanceof DefaultRunnable);
+        try {
+            StateHelper.newInstance(Comparable.class, "org.apache.commons.id.uuid.state.NoSuchClass");
+            fail("Expecting IllegalStateException");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        String key = Cloneable.class.getName();
+        try {
+            System.setProperty(key, StateHelperTest.class.getName());
+            StateHelper.newInstance(Cloneable.class, DefaultRunnable.class.getName());
+            fail("Expecting IllegalStateException");
+        } catch (IllegalStateException ise) {
+            // expected, not Cloneable
+        } finally {
+            System.clearProperty(key);
+        }
+    }
+
+    /**
+     * Default implementation used by testNewInstance.
+     */
+    public static class DefaultRunnable implements Runnable {
+        /**
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            // Nothing to do
+        }
+    }
+
     /** Test the decodeMACAddress method. */
     public void testDecodeMACAddress() {
         // Test MAC address 02-00-4C-4F-4F-50